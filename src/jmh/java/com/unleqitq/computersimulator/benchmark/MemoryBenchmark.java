@@ -0,0 +1,124 @@
+package com.unleqitq.computersimulator.benchmark;
+
+import com.unleqitq.computersimulator.components.Memory;
+import com.unleqitq.computersimulator.components.memory.MemoryBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single memory accesses as done by memory operands and stack pushes.
+ * <p>
+ * {@code bytesQword} and {@code varHandleQword} compare the two ways of reading a qword from a
+ * byte array directly, the {@code memory*} benchmarks include the bounds check, the mapped
+ * region check and the page stamps of {@link Memory} for each backend.
+ * The addresses are random and unaligned, so the accesses are not optimized into a sequential
+ * copy.
+ * </p>
+ * <p>
+ * Run with {@code mvn -P benchmark package && java -jar target/benchmarks.jar MemoryBenchmark}
+ * </p>
+ * <p>
+ * Measured on JDK 21.0.1 with a single CPU (ns/op, average of 5 iterations, both backend runs
+ * of the byte array benchmarks, which do not use the backend):
+ * {@code bytesQword} 8.0 ± 1.0 and 6.5 ± 3.8, {@code varHandleQword} 3.8 ± 0.9 and 3.5 ± 0.3,
+ * {@code memoryReadQword} 6.0 ± 2.7 (heap) and 8.6 ± 7.0 (direct),
+ * {@code memoryWriteQword} 12.1 ± 1.8 (heap) and 14.5 ± 5.2 (direct).
+ * </p>
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+@State (Scope.Thread)
+public class MemoryBenchmark {
+	
+	private static final int SIZE = 1 << 20;
+	
+	private static final int ADDRESSES = 1 << 12;
+	
+	private static final VarHandle LONG =
+		MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	@Param ({"HEAP", "DIRECT"})
+	public MemoryBackend.Type type;
+	
+	private Memory memory;
+	
+	private byte[] data;
+	
+	private final int[] addresses = new int[ADDRESSES];
+	
+	private int next;
+	
+	@Setup (Level.Trial)
+	public void setup() {
+		memory = new Memory(type.create(SIZE));
+		data = new byte[SIZE];
+		Random random = new Random(42);
+		random.nextBytes(data);
+		memory.write(0, 0, data);
+		for (int i = 0; i < ADDRESSES; i++) {
+			addresses[i] = random.nextInt(SIZE - 8);
+		}
+	}
+	
+	private int nextAddress() {
+		return addresses[next++ & (ADDRESSES - 1)];
+	}
+	
+	/**
+	 * The previous implementation, one load per byte
+	 */
+	@Benchmark
+	public long bytesQword() {
+		int i = nextAddress();
+		return (data[i] & 0xFFL) | ((data[i + 1] & 0xFFL) << 8) |
+			((data[i + 2] & 0xFFL) << 16) | ((data[i + 3] & 0xFFL) << 24) |
+			((data[i + 4] & 0xFFL) << 32) | ((data[i + 5] & 0xFFL) << 40) |
+			((data[i + 6] & 0xFFL) << 48) | ((data[i + 7] & 0xFFL) << 56);
+	}
+	
+	@Benchmark
+	public long varHandleQword() {
+		return (long) LONG.get(data, nextAddress());
+	}
+	
+	@Benchmark
+	public long memoryReadQword() {
+		return memory.readQword(nextAddress());
+	}
+	
+	@Benchmark
+	public void memoryWriteQword() {
+		int address = nextAddress();
+		memory.writeQword(address, address);
+	}
+	
+	@Benchmark
+	public long memoryReadDword() {
+		return memory.readDword(nextAddress());
+	}
+	
+	@Benchmark
+	public long memoryReadWord() {
+		return memory.readWord(nextAddress());
+	}
+	
+}
@@ -1,22 +1,39 @@
 package com.unleqitq.computersimulator;
 
+import com.unleqitq.computersimulator.components.CacheSimulator;
 import com.unleqitq.computersimulator.components.DeviceAccessor;
 import com.unleqitq.computersimulator.components.Memory;
+import com.unleqitq.computersimulator.components.Mmu;
 import com.unleqitq.computersimulator.components.Registers;
 import com.unleqitq.computersimulator.components.StackWrapper;
+import com.unleqitq.computersimulator.components.memory.MappedFileMemoryBackend;
+import com.unleqitq.computersimulator.components.memory.MemoryBackend;
+import com.unleqitq.computersimulator.components.memory.SharedRegion;
+import com.unleqitq.computersimulator.devices.BlitterDevice;
+import com.unleqitq.computersimulator.devices.ConsoleDevice;
+import com.unleqitq.computersimulator.devices.DiskDevice;
+import com.unleqitq.computersimulator.devices.DmaDevice;
+import com.unleqitq.computersimulator.devices.FrameRecorder;
+import com.unleqitq.computersimulator.devices.KeyboardDevice;
+import com.unleqitq.computersimulator.devices.ScreenDevice;
 import com.unleqitq.computersimulator.devices.SystemDevice;
 import com.unleqitq.computersimulator.instruction.Instruction;
 import com.unleqitq.computersimulator.instruction.InstructionAssembler;
 import com.unleqitq.computersimulator.instruction.InstructionContext;
 import com.unleqitq.computersimulator.instruction.InstructionDef;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -37,6 +54,16 @@ public class ComputerSimulator {
 		}
 	}
 	
+	/**
+	 * The interrupt raised by a write to a read-only region
+	 */
+	public static final byte PROTECTION_FAULT = 13;
+	
+	/**
+	 * The interrupt raised by an access the page tables do not allow
+	 */
+	public static final byte PAGE_FAULT = 14;
+	
 	@Setter
 	private boolean debugPrint = false;
 	
@@ -46,26 +73,119 @@ public class ComputerSimulator {
 	@NotNull
 	private final Memory memory;
 	
+	/**
+	 * Translates the addresses while paging is enabled, null if the specs do not allow paging
+	 */
+	@Nullable
+	private final Mmu mmu;
+	
+	/**
+	 * The modelled caches, null if the specs have none
+	 */
+	@Nullable
+	private final CacheSimulator cache;
+	
 	@NotNull
 	private final Registers registers;
 	
+	/**
+	 * The registers before the current instruction while paging is enabled,
+	 * restored when the instruction page faults so it is restarted from the same state
+	 */
+	@Getter (AccessLevel.NONE)
+	@NotNull
+	private final long[] savedRegisters = new long[Registers.Register.values().length];
+	
 	@NotNull
 	private final StackWrapper stack;
 	
 	@NotNull
 	private final DeviceAccessor devices;
 	
+	@NotNull
+	private final ConsoleDevice console;
+	
+	@NotNull
+	private final ScreenDevice screen;
+	
+	@NotNull
+	private final KeyboardDevice keyboard;
+	
 	private boolean interrupted = false;
 	private byte interruptCode = 0;
 	
+	/**
+	 * Set by a page fault no listener handled, the program stops as retrying would fault forever
+	 */
+	private boolean halted = false;
+	
+	/**
+	 * The (linear) address of the access that caused the last fault
+	 */
+	private long faultAddress = 0;
+	
+	/**
+	 * The access ({@link Mmu#READ}, {@link Mmu#WRITE} or {@link Mmu#EXECUTE}) that caused the last
+	 * page fault
+	 */
+	private long faultAccess = 0;
+	
 	private long stepCount = 0;
 	
 	public ComputerSimulator(@NotNull ComputerSpecs specs) {
-		this.memory = new Memory(specs.memorySize());
+		this.memory = new Memory(createMemoryBackend(specs));
+		memory.setWriteTrap((memory, address, size) -> fault(PROTECTION_FAULT, address));
+		specs.sharedRegions().forEach(memory::mapShared);
+		this.mmu = specs.paging() ? new Mmu(memory, specs.tlbSize()) : null;
+		this.cache = specs.cacheLevels().isEmpty() ? null : new CacheSimulator(specs.cacheLevels());
+		memory.setCache(cache);
 		this.registers = new Registers();
 		this.stack = new StackWrapper(memory, registers);
+		stack.history().setEnabled(specs.stackHistory());
 		this.devices = new DeviceAccessor();
 		devices.addDevice(SystemDevice.DEFAULT_PORT, new SystemDevice(this));
+		this.keyboard = new KeyboardDevice(memory);
+		devices.addDevice(KeyboardDevice.DEFAULT_PORT, keyboard);
+		devices.addDevice(DmaDevice.DEFAULT_PORT, new DmaDevice(this));
+		if (specs.consoleOutput() != null) {
+			try {
+				this.console = new ConsoleDevice(memory, new FileOutputStream(specs.consoleOutput()), true,
+					ConsoleDevice.DEFAULT_BUFFER_SIZE);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not open console output: " + specs.consoleOutput(), e);
+			}
+		}
+		else {
+			this.console = new ConsoleDevice(memory);
+		}
+		devices.addDevice(ConsoleDevice.DEFAULT_PORT, console);
+		this.screen = new ScreenDevice(memory, specs.screenWidth(), specs.screenHeight());
+		devices.addDevice(ScreenDevice.DEFAULT_PORT, screen);
+		devices.addDevice(BlitterDevice.DEFAULT_PORT, new BlitterDevice(memory, screen));
+		if (specs.diskImage() != null) {
+			try {
+				devices.addDevice(DiskDevice.DEFAULT_PORT,
+					new DiskDevice(memory, specs.diskImage(), specs.diskSize()));
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not open disk image: " + specs.diskImage(), e);
+			}
+		}
+	}
+	
+	@NotNull
+	private static MemoryBackend createMemoryBackend(@NotNull ComputerSpecs specs) {
+		if (specs.memoryImage() == null) {
+			return specs.memoryType().create(specs.memorySize());
+		}
+		try {
+			return new MappedFileMemoryBackend(specs.memoryImage(), specs.memorySize(),
+				specs.memoryImageMode());
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Could not map memory image: " + specs.memoryImage(), e);
+		}
 	}
 	
 	/**
@@ -81,29 +201,87 @@ public class ComputerSimulator {
 	}
 	
 	public void interrupted(byte code) {
-		if (code != 0) {
-			for (InterruptionListener listener : interruptionListeners) {
-				if (listener.onInterrupt(this, code)) {
-					return;
-				}
-			}
+		if (code != 0 && handled(code)) {
+			return;
 		}
 		this.interrupted = true;
 		this.interruptCode = code;
+		if (code == 0) {
+			console.flush();
+		}
+	}
+	
+	/**
+	 * Raises the interrupt of a fault, the address can be read from the system device
+	 */
+	public void fault(byte code, long address) {
+		faultAddress = address;
+		interrupted(code);
+	}
+	
+	/**
+	 * @return whether a listener handled the interrupt
+	 */
+	private boolean handled(byte code) {
+		for (InterruptionListener listener : interruptionListeners) {
+			if (listener.onInterrupt(this, code)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Raises a page fault, the faulting instruction is executed again on the next step.
+	 * If no listener handles the fault the program halts instead
+	 */
+	private void pageFault(@NotNull Mmu.PageFault e) {
+		faultAccess = e.access();
+		fault(PAGE_FAULT, e.address());
+		if (interrupted && interruptCode == PAGE_FAULT) {
+			System.err.println("Unhandled " + e.getMessage() + ", halting");
+			halted = true;
+		}
+	}
+	
+	/**
+	 * Enables or disables the translation of the addresses
+	 *
+	 * @throws IllegalStateException if the specs do not allow paging
+	 */
+	public void setPaging(boolean enabled) {
+		if (mmu == null) {
+			throw new IllegalStateException("Paging is not supported by this computer");
+		}
+		if (enabled) {
+			mmu.flush();
+		}
+		memory.setMmu(enabled ? mmu : null);
 	}
 	
+	public boolean isPaging() {
+		return memory.getMmu() != null;
+	}
+	
+	/**
+	 * @return whether the program exited or halted on an unhandled page fault
+	 */
 	public boolean isExiting() {
-		return interrupted && interruptCode == 0;
+		return interrupted && interruptCode == 0 || halted;
 	}
 	
 	public void resetInterrupt() {
 		interrupted = false;
 		interruptCode = 0;
+		halted = false;
 	}
 	
 	public void step() {
 		InstructionContext ctx;
 		Instruction instruction;
+		if (cache != null) {
+			cache.setInstructionPointer(registers.readRegister(Registers.Register.RIP));
+		}
 		try {
 			ctx = new InstructionContext(this);
 			InstructionDef def = InstructionDef.byOpcode(ctx.opcode());
@@ -115,6 +293,10 @@ public class ComputerSimulator {
 			}
 			instruction = def.load(ctx);
 		}
+		catch (Mmu.PageFault e) {
+			pageFault(e);
+			return;
+		}
 		catch (Exception e) {
 			System.err.println("Error loading instruction: " + e.getMessage());
 			registers.writeRegister(Registers.Register.RIP,
@@ -125,6 +307,11 @@ public class ComputerSimulator {
 			System.out.println(instruction.toAssembly());
 		}
 		
+		boolean restartable = memory.getMmu() != null;
+		if (restartable) {
+			registers.save(savedRegisters);
+		}
+		
 		// Instruction pointer is incremented before executing the instruction
 		registers.writeRegister(Registers.Register.RIP,
 			registers.readRegister(Registers.Register.RIP) + ctx.instructionSize());
@@ -136,6 +323,18 @@ public class ComputerSimulator {
 				System.out.println();
 			}
 		}
+		catch (Mmu.PageFault e) {
+			// Restarted with the registers from before the instruction,
+			// the memory writes before the faulting access are not undone
+			if (restartable) {
+				registers.restore(savedRegisters);
+			}
+			else {
+				registers.writeRegister(Registers.Register.RIP, ctx.instructionPointer());
+			}
+			pageFault(e);
+			return;
+		}
 		catch (Exception e) {
 			System.err.println("Error executing instruction: " + e.getMessage());
 		}
@@ -148,10 +347,51 @@ public class ComputerSimulator {
 		}
 	}
 	
+	/**
+	 * Steps until the program exits, for simulators running on their own thread
+	 */
+	public void runUntilExit() {
+		while (!isExiting()) {
+			step();
+		}
+		console.flush();
+	}
+	
+	/**
+	 * Runs until the program exits, calling the callback after every step
+	 */
+	public void runUntilExit(@NotNull Runnable afterStep) {
+		while (!isExiting()) {
+			step();
+			afterStep.run();
+		}
+		console.flush();
+	}
+	
 	@Nullable
 	public Instruction getInstruction(long address) {
-		InstructionContext ctx =
-			new InstructionContext(this, address, registers.readRegister(Registers.Register.CS));
+		return getInstruction(address, registers.readRegister(Registers.Register.CS));
+	}
+	
+	@Nullable
+	public Instruction getInstruction(long address, long codeSegment) {
+		InstructionContext ctx = new InstructionContext(this, address, codeSegment);
+		InstructionDef def = InstructionDef.byOpcode(ctx.opcode());
+		if (def == null) {
+			return null;
+		}
+		return def.load(ctx);
+	}
+	
+	/**
+	 * Decodes an instruction for the views, like {@link #getInstruction(long, long)} but without
+	 * affecting the TLB and the caches, so it may be called from any thread
+	 *
+	 * @throws Mmu.PageFault if paging is enabled and the page is not executable
+	 */
+	@Nullable
+	public Instruction peekInstruction(long address, long codeSegment) {
+		InstructionContext ctx = new InstructionContext(this, address, codeSegment, true);
 		InstructionDef def = InstructionDef.byOpcode(ctx.opcode());
 		if (def == null) {
 			return null;
@@ -172,12 +412,30 @@ public class ComputerSimulator {
 		registers.writeRegister(Registers.Register.RBP, memory.getSize() - 1);
 		registers.writeRegister(Registers.Register.FLAGS, 0);
 		resetInterrupt();
+		if (mmu != null) {
+			setPaging(false);
+			mmu.setRoot(0);
+			mmu.resetStatistics();
+		}
+		if (cache != null) {
+			cache.clear();
+		}
 		
 		resetStepCount();
 		stack.resetHistory();
 	}
 	
+	/**
+	 * Writes a program into the memory
+	 *
+	 * @throws IllegalStateException if the memory is a read-only image, which has to contain the
+	 *                               program already
+	 */
 	public void loadProgram(long address, @NotNull byte[] program) {
+		if (memory.isReadOnly()) {
+			throw new IllegalStateException(
+				"Cannot load a program into a read-only memory image, the image has to contain it");
+		}
 		long segment = registers.readRegister(Registers.Register.CS);
 		memory.write(address, segment, program);
 	}
@@ -194,19 +452,108 @@ public class ComputerSimulator {
 		stepCount = 0;
 	}
 	
-	public static void main(String[] args) {
+	/**
+	 * Flushes and closes the devices holding host resources (console output, disk image)
+	 * and writes a mapped memory image
+	 */
+	public void close() {
+		if (memory.getBackend() instanceof Closeable closeable) {
+			try {
+				closeable.close();
+			}
+			catch (IOException e) {
+				System.err.println("Error closing memory: " + e.getMessage());
+			}
+		}
+		for (DeviceAccessor.IDevice device : devices.getDevices().values()) {
+			if (device instanceof Closeable closeable) {
+				try {
+					closeable.close();
+				}
+				catch (IOException e) {
+					System.err.println("Error closing device " + device.getDeviceName() + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs the program headless
+	 * <p>
+	 * Arguments: {@code [--record <directory|file.raw>] [--record-interval <frames>]
+	 * [--record-steps <steps>]} to capture the frames of the screen as PNG files or a raw frame
+	 * sequence (see {@link FrameRecorder}), by default also every million steps without a completed
+	 * frame so programs only drawing pixels are recorded too (0 turns that off),
+	 * {@code [--cache]} to model the caches of {@link CacheSimulator#typical()} and print their
+	 * statistics on exit, {@code [--rom]} to map the program as a shared read-only region instead
+	 * of loading it into the memory.
+	 * </p>
+	 */
+	public static void main(String[] args) throws IOException {
+		File recordOutput = null;
+		int recordInterval = 1;
+		long recordSteps = 1_000_000;
+		boolean cache = false;
+		boolean rom = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--record" -> recordOutput = new File(args[++i]);
+				case "--record-interval" -> recordInterval = Integer.parseInt(args[++i]);
+				case "--record-steps" -> recordSteps = Long.parseLong(args[++i]);
+				case "--cache" -> cache = true;
+				case "--rom" -> rom = true;
+				default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+			}
+		}
+		
 		ComputerSimulator simulator =
-			new ComputerSimulator(ComputerSpecs.builder().memorySize(1 << 12).build()).debugPrint(true);
+			new ComputerSimulator(ComputerSpecs.builder().memorySize(1 << 12).stackHistory(false)
+				.cacheLevels(cache ? CacheSimulator.typical() : List.of()).build())
+				.debugPrint(recordOutput == null);
 		simulator.initialize();
 		
 		String code = loadCode("/code.qasm");
 		long address = simulator.getInstructionPointer();
-		byte[] program = InstructionAssembler.assemble(code, address, DEFAULT_INCLUDE_PATHS);
-		
-		simulator.loadProgram(address, program);
-		while (!simulator.isExiting()) {
-			simulator.step();
+		if (rom) {
+			simulator.memory().mapShared(address, assembleShared("code.qasm", code, address));
+		}
+		else {
+			simulator.loadProgram(address, InstructionAssembler.assemble(code, address,
+				DEFAULT_INCLUDE_PATHS));
+		}
+		FrameRecorder recorder = recordOutput == null ? null :
+			new FrameRecorder(simulator.screen(), FrameRecorder.Format.of(recordOutput), recordOutput,
+				recordInterval, recordSteps);
+		if (recorder == null) {
+			simulator.runUntilExit();
 		}
+		else {
+			simulator.runUntilExit(recorder::stepped);
+		}
+		if (recorder != null) {
+			// The last frame, even if the program never completed one
+			recorder.capture();
+			recorder.close();
+		}
+		if (simulator.cache() != null) {
+			System.out.print(simulator.cache().report());
+		}
+		simulator.close();
+	}
+	
+	/**
+	 * Assembles a program into a region to share between simulators, see
+	 * {@link ComputerSpecs#sharedRegions()}. Writes of the program to its own bytes fault
+	 *
+	 * @param name    The name shown in the views
+	 * @param code    The code
+	 * @param address The address the region is mapped to
+	 */
+	@NotNull
+	public static SharedRegion assembleShared(@NotNull String name, @NotNull String code,
+		long address) {
+		return SharedRegion.of(name,
+			InstructionAssembler.assemble(code, address, DEFAULT_INCLUDE_PATHS));
 	}
 	
 	@NotNull
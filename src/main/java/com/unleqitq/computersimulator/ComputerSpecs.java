@@ -1,8 +1,18 @@
 package com.unleqitq.computersimulator;
 
+import com.unleqitq.computersimulator.components.CacheSimulator;
+import com.unleqitq.computersimulator.components.memory.MappedFileMemoryBackend;
+import com.unleqitq.computersimulator.components.memory.MemoryBackend;
+import com.unleqitq.computersimulator.components.memory.SharedRegion;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
 
 @Accessors (fluent = true)
 @Getter
@@ -12,6 +22,94 @@ public class ComputerSpecs {
 	/**
 	 * The size of the memory in bytes.
 	 */
-	private final int memorySize;
+	private final long memorySize;
+	
+	/**
+	 * How the memory is stored, the heap is limited to below 2 GiB,
+	 * use sparse memory for large address spaces of which only a small part is used.
+	 */
+	@Builder.Default
+	@NotNull
+	private final MemoryBackend.Type memoryType = MemoryBackend.Type.HEAP;
+	
+	/**
+	 * The file mapped as the memory, or null for none. Replaces the memory type,
+	 * a memory size of 0 uses the size of the file.
+	 */
+	@Nullable
+	private final File memoryImage;
+	
+	/**
+	 * What happens to writes to the memory image.
+	 */
+	@Builder.Default
+	@NotNull
+	private final MappedFileMemoryBackend.Mode memoryImageMode =
+		MappedFileMemoryBackend.Mode.READ_WRITE;
+	
+	/**
+	 * Whether the program can enable paging through the system device, see {@link
+	 * com.unleqitq.computersimulator.components.Mmu}. Without paging the accesses are not translated
+	 * at all. Paging does not isolate programs, the program can also turn it off again.
+	 */
+	private final boolean paging;
+	
+	/**
+	 * The number of entries of the TLB caching the translations, a power of two.
+	 */
+	@Builder.Default
+	private final int tlbSize = 64;
+	
+	/**
+	 * The levels of the modelled caches counting the hits and misses of the processor, first level
+	 * first (see {@link CacheSimulator#typical()}). Empty for no caches, which costs nothing.
+	 */
+	@Builder.Default
+	@NotNull
+	private final List<CacheSimulator.LevelConfig> cacheLevels = List.of();
+	
+	/**
+	 * Read-only regions mapped into the memory by their (linear) address, e.g. the code of a
+	 * program run by many instances (see {@link ComputerSimulator#assembleShared}). The same regions
+	 * can be passed to any number of simulators, their bytes are not copied.
+	 */
+	@Builder.Default
+	@NotNull
+	private final Map<Long, SharedRegion> sharedRegions = Map.of();
+	
+	/**
+	 * The image file of the disk, or null for no disk.
+	 */
+	@Nullable
+	private final File diskImage;
+	
+	/**
+	 * The size of the disk in bytes, 0 to use the size of the image file.
+	 */
+	private final long diskSize;
+	
+	/**
+	 * The file the console writes to, or null for the standard output.
+	 */
+	@Nullable
+	private final File consoleOutput;
+	
+	/**
+	 * Whether pushes are recorded for the stack view, can be turned off when running headless.
+	 */
+	@Builder.Default
+	private final boolean stackHistory = true;
+	
+	/**
+	 * The initial width of the screen in pixels.
+	 */
+	@Builder.Default
+	private final int screenWidth = 20;
+	
+	/**
+	 * The initial height of the screen in pixels.
+	 */
+	@Builder.Default
+	private final int screenHeight = 20;
 	
 }
@@ -2,6 +2,7 @@ package com.unleqitq.computersimulator;
 
 import com.formdev.flatlaf.intellijthemes.FlatDarkPurpleIJTheme;
 import com.unleqitq.computersimulator.instruction.InstructionAssembler;
+import com.unleqitq.computersimulator.utils.LatencyHistogram;
 import com.unleqitq.computersimulator.window.*;
 import org.jetbrains.annotations.NotNull;
 
@@ -12,6 +13,18 @@ import java.io.InputStream;
 
 public class ComputerWindow {
 	
+	/**
+	 * The interval of the UI refresh in milliseconds (about 60 Hz)
+	 */
+	public static final int UPDATE_INTERVAL = 16;
+	
+	/**
+	 * The time the window class was loaded (at the start of {@link #main(String[])}),
+	 * see {@link System#nanoTime()} and {@link System#currentTimeMillis()}
+	 */
+	public static final long LAUNCH_NANOS = System.nanoTime();
+	public static final long LAUNCH_MILLIS = System.currentTimeMillis();
+	
 	@NotNull
 	public final JFrame frame;
 	
@@ -24,6 +37,35 @@ public class ComputerWindow {
 	@NotNull
 	public final ComputerSimulator computer;
 	
+	/**
+	 * Runs the computer, all modifications from the UI have to be submitted to it
+	 */
+	@NotNull
+	public final SimulationRunner runner;
+	
+	/**
+	 * The state of the computer shown by the views, read from the snapshot on every update
+	 */
+	@NotNull
+	public final SimulationSnapshot.Values state;
+	
+	/**
+	 * Calls {@link #update()} on the EDT
+	 */
+	@NotNull
+	public final Timer updateTimer;
+	
+	/**
+	 * The time of every UI refresh
+	 */
+	@NotNull
+	public final LatencyHistogram frameTimes = new LatencyHistogram();
+	
+	/**
+	 * The time the window was shown and the simulation started, 0 before {@link #start()}
+	 */
+	public long startedNanos = 0;
+	
 	@NotNull
 	public final ControlMenuBar controlMenuBar;
 	
@@ -41,17 +83,26 @@ public class ComputerWindow {
 	public final MemoryView memoryView;
 	@NotNull
 	public final ScreenView screenView;
+	/**
+	 * Hidden at startup, created when first shown
+	 */
 	@NotNull
-	public final ProgramView programView;
+	public final LazyView<ProgramView> programView;
 	@NotNull
 	public final InfoView infoView;
 	@NotNull
 	public final StackView stackView;
+	/**
+	 * Hidden at startup, created when first shown (the keyboard device exists regardless)
+	 */
 	@NotNull
-	public final KeyboardInputView keyboardInputView;
+	public final LazyView<KeyboardInputView> keyboardInputView;
 	
 	public ComputerWindow(@NotNull ComputerSimulator computer) {
 		this.computer = computer;
+		this.runner = new SimulationRunner(computer);
+		this.state = new SimulationSnapshot.Values();
+		runner.snapshot().read(state);
 		this.visualSettings = new VisualSettings();
 		
 		frame = new JFrame("Computer Simulator");
@@ -70,10 +121,11 @@ public class ComputerWindow {
 		instructionsView = new InstructionsView(this);
 		screenView = new ScreenView(this);
 		memoryView = new MemoryView(this);
-		programView = new ProgramView(this);
+		programView = new LazyView<>(this, ProgramView::new, view -> view.internalFrame, view -> {});
 		infoView = new InfoView(this);
 		stackView = new StackView(this);
-		keyboardInputView = new KeyboardInputView(this);
+		keyboardInputView = new LazyView<>(this, KeyboardInputView::new, view -> view.internalFrame,
+			KeyboardInputView::update);
 		
 		rootPanel.add(controlsBar.toolBar, BorderLayout.NORTH);
 		rootPanel.add(desktopPane, BorderLayout.CENTER);
@@ -85,15 +137,8 @@ public class ComputerWindow {
 		desktopPane.add(instructionsView.internalFrame);
 		desktopPane.add(screenView.internalFrame);
 		desktopPane.add(memoryView.internalFrame);
-		desktopPane.add(programView.internalFrame);
 		desktopPane.add(infoView.internalFrame);
 		desktopPane.add(stackView.internalFrame);
-		desktopPane.add(keyboardInputView.internalFrame);
-		
-		{
-			programView.internalFrame.hide();
-			keyboardInputView.internalFrame.hide();
-		}
 		
 		frame.setContentPane(rootPanel);
 		frame.setVisible(true);
@@ -104,11 +149,22 @@ public class ComputerWindow {
 			// Interrupt code 3 is a breakpoint
 			final byte BREAKPOINT = (byte) 3;
 			if (code == BREAKPOINT) {
-				controlsBar.running = false;
+				runner.setRunning(false);
 				return true;
 			}
 			return false;
 		});
+		
+		updateTimer = new Timer(UPDATE_INTERVAL, e -> update());
+	}
+	
+	/**
+	 * Starts the simulation thread and the UI refresh
+	 */
+	public void start() {
+		startedNanos = System.nanoTime();
+		runner.start();
+		updateTimer.start();
 	}
 	
 	public void update() {
@@ -116,6 +172,8 @@ public class ComputerWindow {
 	}
 	
 	public void update(boolean all) {
+		long start = System.nanoTime();
+		runner.snapshot().read(state);
 		controlsBar.update();
 		registersView.update();
 		if (all) instructionsView.reload();
@@ -126,6 +184,7 @@ public class ComputerWindow {
 		infoView.update();
 		stackView.update();
 		keyboardInputView.update();
+		frameTimes.record(System.nanoTime() - start);
 	}
 	
 	public static class VisualSettings {
@@ -217,40 +276,18 @@ public class ComputerWindow {
 				JOptionPane.showMessageDialog(window.frame, message, "Error assembling program",
 					JOptionPane.ERROR_MESSAGE);
 			}
-			if (program != null) computer.loadProgram(rip, program);
-		}
-		
-		window.update(true);
-		
-		while (true) {
-			if (window.controlsBar.running) {
-				long start = System.nanoTime();
-				for (int i = 0; i < window.controlsBar.spt; i++) {
-					computer.step();
-					if (computer.isExiting() || !window.controlsBar.running) {
-						break;
-					}
-				}
-				window.update();
-				long end = System.nanoTime();
-				long elapsed = end - start;
-				long sleep = 1000000000 / window.controlsBar.tps - elapsed;
-				if (sleep > 0) {
-					try {
-						Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
-					}
-					catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-				if (computer.isExiting()) {
-					window.controlsBar.running = false;
-				}
-			}
-			else {
-				Thread.yield();
+			if (program != null && computer.memory().isReadOnly()) {
+				JOptionPane.showMessageDialog(window.frame,
+					"The memory is a read-only image, the image has to contain the program",
+					"Error loading program", JOptionPane.ERROR_MESSAGE);
 			}
+			else if (program != null) computer.loadProgram(rip, program);
 		}
+		
+		SwingUtilities.invokeLater(() -> {
+			window.update(true);
+			window.start();
+		});
 	}
 	
 	@NotNull
@@ -0,0 +1,168 @@
+package com.unleqitq.computersimulator;
+
+import com.unleqitq.computersimulator.utils.LatencyHistogram;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a simulator on its own thread.
+ * <p>
+ * Everything that modifies the simulator from another thread (the UI) is submitted as a command,
+ * the commands are executed by the simulation thread between two batches of steps.
+ * After every batch and every command the state is published to the {@link SimulationSnapshot}.
+ * </p>
+ */
+@Accessors (fluent = true)
+public class SimulationRunner {
+	
+	@Getter
+	@NotNull
+	private final ComputerSimulator computer;
+	
+	@Getter
+	@NotNull
+	private final SimulationSnapshot snapshot = new SimulationSnapshot();
+	
+	@NotNull
+	private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+	
+	@NotNull
+	private final Thread thread;
+	
+	@Getter
+	private volatile boolean running = false;
+	
+	@Getter
+	@NotNull
+	private final SpeedGovernor governor = new SpeedGovernor(1000);
+	
+	/**
+	 * The time of every batch of steps
+	 */
+	@Getter
+	@NotNull
+	private final LatencyHistogram batchLatency = new LatencyHistogram();
+	
+	/**
+	 * The time (see {@link System#nanoTime()}) the first step was executed, 0 before
+	 */
+	@Getter
+	private volatile long firstStepNanos = 0;
+	
+	public SimulationRunner(@NotNull ComputerSimulator computer) {
+		this.computer = computer;
+		this.thread = new Thread(this::run, "Simulation");
+		this.thread.setDaemon(true);
+		snapshot.publish(computer, false);
+	}
+	
+	public void start() {
+		thread.start();
+	}
+	
+	/**
+	 * @return the id of the simulation thread
+	 */
+	public long threadId() {
+		return thread.threadId();
+	}
+	
+	/**
+	 * Executes a command on the simulation thread before the next batch
+	 */
+	public void submit(@NotNull Runnable command) {
+		commands.add(command);
+		LockSupport.unpark(thread);
+	}
+	
+	public void setRunning(boolean running) {
+		this.running = running;
+		LockSupport.unpark(thread);
+	}
+	
+	/**
+	 * Sets the target speed, the schedule restarts so a change takes effect immediately
+	 *
+	 * @param targetIps The instructions per second or {@link SpeedGovernor#UNLIMITED}
+	 */
+	public void setTargetIps(long targetIps) {
+		submit(() -> {
+			governor.setTargetIps(targetIps);
+			governor.resume(System.nanoTime());
+		});
+	}
+	
+	private void run() {
+		boolean wasRunning = false;
+		while (true) {
+			if (runCommands()) {
+				snapshot.publish(computer, running);
+			}
+			if (!running) {
+				if (wasRunning) {
+					governor.pause();
+					wasRunning = false;
+				}
+				// Woken up by submit or setRunning
+				LockSupport.park(this);
+				continue;
+			}
+			if (!wasRunning) {
+				governor.resume(System.nanoTime());
+				wasRunning = true;
+			}
+			long remaining = governor.nextBatchTime() - System.nanoTime();
+			if (remaining > 0) {
+				// Woken up early by submit or setRunning
+				LockSupport.parkNanos(this, remaining);
+				continue;
+			}
+			long start = System.nanoTime();
+			if (firstStepNanos == 0) {
+				firstStepNanos = start;
+			}
+			int steps = governor.batchSize();
+			int executed = 0;
+			while (executed < steps) {
+				computer.step();
+				executed++;
+				if (computer.isExiting() || !running) {
+					break;
+				}
+			}
+			long end = System.nanoTime();
+			governor.batchDone(executed, end - start, end);
+			batchLatency.record(end - start);
+			if (computer.isExiting()) {
+				running = false;
+				computer.console().flush();
+			}
+			snapshot.publish(computer, running);
+		}
+	}
+	
+	/**
+	 * @return true if any command was executed
+	 */
+	private boolean runCommands() {
+		boolean executed = false;
+		Runnable command;
+		while ((command = commands.poll()) != null) {
+			try {
+				command.run();
+			}
+			catch (Exception e) {
+				System.err.println("Error executing command: " + e.getMessage());
+				e.printStackTrace();
+			}
+			executed = true;
+		}
+		return executed;
+	}
+	
+}
@@ -0,0 +1,104 @@
+package com.unleqitq.computersimulator;
+
+import com.unleqitq.computersimulator.components.Registers;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of a simulator published by the simulation thread for the UI, guarded by a seqlock.
+ * <p>
+ * The writer makes the sequence odd, writes the values and makes it even again.
+ * Readers copy the values and retry if the sequence was odd or changed meanwhile,
+ * so the writer never waits for a reader.
+ * </p>
+ */
+public class SimulationSnapshot {
+	
+	@NotNull
+	private final AtomicLong sequence = new AtomicLong();
+	
+	@NotNull
+	private final long[] registers = new long[Registers.Register.values().length];
+	private long stepCount;
+	private boolean interrupted;
+	private byte interruptCode;
+	private boolean running;
+	private long memoryStamp;
+	private int stackModCount;
+	
+	/**
+	 * Publishes the current state, only called by the simulation thread
+	 */
+	public void publish(@NotNull ComputerSimulator computer, boolean running) {
+		long s = sequence.get();
+		sequence.set(s + 1);
+		VarHandle.storeStoreFence();
+		System.arraycopy(computer.registers().getRegisters(), 0, registers, 0, registers.length);
+		stepCount = computer.stepCount();
+		interrupted = computer.interrupted();
+		interruptCode = computer.interruptCode();
+		this.running = running;
+		memoryStamp = computer.memory().getStamp();
+		stackModCount = computer.stack().history().getModCount();
+		sequence.setRelease(s + 2);
+	}
+	
+	/**
+	 * Copies the last published state
+	 *
+	 * @param values The values to copy to
+	 */
+	public void read(@NotNull Values values) {
+		while (true) {
+			long s = sequence.getAcquire();
+			if ((s & 1) != 0) {
+				Thread.onSpinWait();
+				continue;
+			}
+			System.arraycopy(registers, 0, values.registers, 0, registers.length);
+			values.stepCount = stepCount;
+			values.interrupted = interrupted;
+			values.interruptCode = interruptCode;
+			values.running = running;
+			values.memoryStamp = memoryStamp;
+			values.stackModCount = stackModCount;
+			VarHandle.loadLoadFence();
+			if (sequence.get() == s) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * A consistent copy of the published state, owned by one reader
+	 */
+	@Accessors (fluent = true)
+	@Getter
+	public static final class Values {
+		
+		@Getter (AccessLevel.NONE)
+		@NotNull
+		private final long[] registers = new long[Registers.Register.values().length];
+		private long stepCount;
+		private boolean interrupted;
+		private byte interruptCode;
+		private boolean running;
+		private long memoryStamp;
+		private int stackModCount;
+		
+		public long register(@NotNull Registers.Register register) {
+			return registers[register.getValue()];
+		}
+		
+		public boolean flag(@NotNull Registers.Flag flag) {
+			return flag.isSet(register(Registers.Register.FLAGS));
+		}
+		
+	}
+	
+}
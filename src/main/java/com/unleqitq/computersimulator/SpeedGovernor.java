@@ -0,0 +1,158 @@
+package com.unleqitq.computersimulator;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * Paces the simulation to a target number of instructions per second, or runs it unlimited.
+ * <p>
+ * The steps are executed in batches, between two batches the state is published and commands are
+ * executed. The batch size is adapted to the measured speed so a batch takes about
+ * {@link #BATCH_NANOS}, the UI sees new state at the same rate whatever the speed.
+ * When limited, the start of every batch is scheduled from the target, so rounding and short
+ * delays do not add up.
+ * </p>
+ * <p>
+ * Only used by the simulation thread, the getters may also be called from other threads.
+ * </p>
+ */
+@Accessors (fluent = true)
+public class SpeedGovernor {
+	
+	/**
+	 * The target for running as fast as possible
+	 */
+	public static final long UNLIMITED = 0;
+	
+	/**
+	 * The time a batch should take, well below the refresh interval of the UI
+	 */
+	public static final long BATCH_NANOS = 2_000_000L;
+	
+	/**
+	 * The maximum time the schedule may lag behind, the rest is dropped instead of run at once
+	 */
+	private static final long MAX_LAG_NANOS = 50_000_000L;
+	
+	/**
+	 * The time over which the measured speed is averaged
+	 */
+	private static final long MEASURE_NANOS = 500_000_000L;
+	
+	private static final int MAX_BATCH = 1 << 24;
+	
+	/**
+	 * The target instructions per second or {@link #UNLIMITED}
+	 */
+	@Getter
+	private volatile long targetIps;
+	
+	/**
+	 * The measured instructions per second while running
+	 */
+	@Getter
+	private volatile double measuredIps = 0;
+	
+	/**
+	 * The average time of a step in nanoseconds, measured over the recent batches
+	 */
+	private double nanosPerStep = 1000;
+	
+	/**
+	 * The time the next batch is scheduled for
+	 */
+	private long nextBatchTime;
+	
+	private long measureStart;
+	private long measureSteps;
+	
+	public SpeedGovernor(long targetIps) {
+		this.targetIps = Math.max(UNLIMITED, targetIps);
+		resume(System.nanoTime());
+	}
+	
+	public void setTargetIps(long targetIps) {
+		this.targetIps = Math.max(UNLIMITED, targetIps);
+	}
+	
+	/**
+	 * Restarts the schedule and the measurement, called when the simulation starts running
+	 * or the target changes
+	 */
+	public void resume(long now) {
+		nextBatchTime = now;
+		measureStart = now;
+		measureSteps = 0;
+	}
+	
+	/**
+	 * Called when the simulation stops running
+	 */
+	public void pause() {
+		measuredIps = 0;
+	}
+	
+	/**
+	 * @return the number of steps of the next batch
+	 */
+	public int batchSize() {
+		long target = targetIps;
+		double steps = BATCH_NANOS / nanosPerStep;
+		if (target != UNLIMITED) {
+			// A batch never covers more than its share of the target
+			steps = Math.min(steps, (double) target * BATCH_NANOS / 1_000_000_000L);
+		}
+		return (int) Math.max(1, Math.min(MAX_BATCH, steps));
+	}
+	
+	/**
+	 * Records a finished batch
+	 *
+	 * @param steps The number of executed steps
+	 * @param nanos The time the steps took
+	 * @param now   The current time
+	 */
+	public void batchDone(int steps, long nanos, long now) {
+		if (steps > 0) {
+			// Exponential moving average, so a single slow batch does not shrink the next ones much
+			nanosPerStep = nanosPerStep * 0.75 + Math.max(1.0, (double) nanos / steps) * 0.25;
+		}
+		
+		long target = targetIps;
+		if (target == UNLIMITED) {
+			nextBatchTime = now;
+		}
+		else {
+			nextBatchTime += steps * 1_000_000_000L / target;
+			if (now - nextBatchTime > MAX_LAG_NANOS) {
+				nextBatchTime = now;
+			}
+		}
+		
+		measureSteps += steps;
+		long elapsed = now - measureStart;
+		if (elapsed >= MEASURE_NANOS) {
+			measuredIps = measureSteps * 1e9 / elapsed;
+			measureStart = now;
+			measureSteps = 0;
+		}
+	}
+	
+	/**
+	 * @return the time (see {@link System#nanoTime()}) the next batch should start at
+	 */
+	public long nextBatchTime() {
+		return nextBatchTime;
+	}
+	
+	/**
+	 * Formats a number of instructions per second for display
+	 */
+	public static String format(double ips) {
+		if (ips >= 1e9) return "%.2f GIPS".formatted(ips / 1e9);
+		if (ips >= 1e6) return "%.2f MIPS".formatted(ips / 1e6);
+		if (ips >= 1e3) return "%.2f KIPS".formatted(ips / 1e3);
+		return "%.0f IPS".formatted(ips);
+	}
+	
+}
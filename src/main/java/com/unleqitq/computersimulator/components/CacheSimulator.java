@@ -0,0 +1,487 @@
+package com.unleqitq.computersimulator.components;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Models a hierarchy of set associative caches in front of the memory to count hits and misses,
+ * the data stays in the memory.
+ * <p>
+ * Every access of the processor (after the translation of the {@link Mmu}) is looked up line by
+ * line in the first level, a miss is looked up in the next level and so on. Lines written back
+ * by a write back level and writes through a write through level are writes to the next level.
+ * The bulk accesses of the devices bypass the caches like DMA does.
+ * </p>
+ * <p>
+ * The misses are also counted per instruction address, {@link #topMisses} lists the instructions
+ * causing the most misses of a level.
+ * </p>
+ * <p>
+ * Only the processor accesses the caches, the views read the instructions through
+ * {@link Memory#peekByte} and friends, which skip them.
+ * </p>
+ */
+@Accessors (fluent = true)
+public class CacheSimulator {
+	
+	@Getter
+	@NotNull
+	private final List<Level> levels;
+	
+	/**
+	 * The reads and writes reaching the memory behind the last level, in lines
+	 */
+	@Getter
+	private long memoryReads = 0;
+	@Getter
+	private long memoryWrites = 0;
+	
+	/**
+	 * The address of the current instruction, the misses are counted for it
+	 */
+	private long instructionPointer;
+	
+	/**
+	 * The misses per level by instruction address
+	 */
+	@NotNull
+	private final MissTable missesByInstruction;
+	
+	public CacheSimulator(@NotNull List<LevelConfig> configs) {
+		if (configs.isEmpty()) {
+			throw new IllegalArgumentException("A cache needs at least one level");
+		}
+		this.levels = configs.stream().map(Level::new).toList();
+		this.missesByInstruction = new MissTable(levels.size());
+	}
+	
+	/**
+	 * A 32 KiB 8 way L1 and a 256 KiB 8 way L2 with 64 byte lines, both LRU and write back
+	 */
+	@NotNull
+	public static List<LevelConfig> typical() {
+		return List.of(
+			new LevelConfig("L1", 32 << 10, 64, 8, Replacement.LRU, WritePolicy.WRITE_BACK),
+			new LevelConfig("L2", 256 << 10, 64, 8, Replacement.LRU, WritePolicy.WRITE_BACK));
+	}
+	
+	/**
+	 * Sets the instruction the following accesses belong to
+	 */
+	public void setInstructionPointer(long instructionPointer) {
+		this.instructionPointer = instructionPointer;
+	}
+	
+	/**
+	 * Looks up an access in the caches
+	 *
+	 * @param index  The physical index of the first byte
+	 * @param length The number of bytes
+	 * @param access The kind of the access
+	 */
+	public void access(long index, int length, @NotNull Access access) {
+		Level first = levels.get(0);
+		long line = index >>> first.lineShift;
+		long last = (index + length - 1) >>> first.lineShift;
+		for (; line <= last; line++) {
+			access(0, line << first.lineShift, access);
+		}
+	}
+	
+	/**
+	 * Looks up the line containing an index in a level, misses continue in the next level
+	 */
+	private void access(int levelIndex, long index, @NotNull Access access) {
+		if (levelIndex == levels.size()) {
+			if (access == Access.WRITE) {
+				memoryWrites++;
+			}
+			else {
+				memoryReads++;
+			}
+			return;
+		}
+		Level level = levels.get(levelIndex);
+		boolean write = access == Access.WRITE;
+		int way = level.find(index);
+		if (way >= 0) {
+			level.hits[access.ordinal()]++;
+			level.touch(way, false);
+			if (write) {
+				if (level.config.writePolicy() == WritePolicy.WRITE_BACK) {
+					level.dirty[way] = true;
+				}
+				else {
+					access(levelIndex + 1, index, Access.WRITE);
+				}
+			}
+			return;
+		}
+		level.misses[access.ordinal()]++;
+		missesByInstruction.increment(instructionPointer, levelIndex);
+		if (write && level.config.writePolicy() == WritePolicy.WRITE_THROUGH) {
+			// No write allocate
+			access(levelIndex + 1, index, Access.WRITE);
+			return;
+		}
+		access(levelIndex + 1, index, write ? Access.READ : access);
+		way = level.victim(index);
+		if (level.dirty[way]) {
+			level.writeBacks++;
+			access(levelIndex + 1, level.lines[way] << level.lineShift, Access.WRITE);
+		}
+		level.lines[way] = index >>> level.lineShift;
+		level.dirty[way] = write;
+		level.touch(way, true);
+	}
+	
+	/**
+	 * @param levelIndex The index of the level
+	 * @param count      The maximum number of instructions
+	 * @return the instructions with the most misses in the level, most misses first.
+	 * Only called by the simulation thread, which may grow the table
+	 */
+	@NotNull
+	public List<InstructionMisses> topMisses(int levelIndex, int count) {
+		return missesByInstruction.misses(levelIndex)
+			.sorted(Comparator.comparingLong(InstructionMisses::misses).reversed())
+			.limit(count)
+			.toList();
+	}
+	
+	/**
+	 * Invalidates all lines without writing them back and resets the statistics
+	 */
+	public void clear() {
+		for (Level level : levels) {
+			level.clear();
+		}
+		memoryReads = 0;
+		memoryWrites = 0;
+		missesByInstruction.clear();
+	}
+	
+	/**
+	 * @return the statistics of every level and the instructions with the most misses
+	 */
+	@NotNull
+	public String report() {
+		StringBuilder report = new StringBuilder();
+		for (int i = 0; i < levels.size(); i++) {
+			Level level = levels.get(i);
+			report.append(("%s (%s): %.2f %% hits, %d misses (read %d, write %d, fetch %d), " +
+				"%d write backs%n").formatted(level.config.name(), level.config, 100 * level.hitRate(),
+				level.misses(), level.misses(Access.READ), level.misses(Access.WRITE),
+				level.misses(Access.FETCH), level.writeBacks()));
+			for (InstructionMisses misses : topMisses(i, 5)) {
+				report.append("  0x%X: %d misses%n".formatted(misses.instructionPointer(),
+					misses.misses()));
+			}
+		}
+		report.append("Memory: %d line reads, %d line writes%n".formatted(memoryReads, memoryWrites));
+		return report.toString();
+	}
+	
+	/**
+	 * One level of the hierarchy
+	 */
+	public static final class Level {
+		
+		@Getter
+		@NotNull
+		private final LevelConfig config;
+		
+		private final int lineShift;
+		
+		private final int ways;
+		
+		private final long setMask;
+		
+		/**
+		 * The line number (index >>> lineShift) cached in each way of each set, -1 for none
+		 */
+		@NotNull
+		private final long[] lines;
+		
+		@NotNull
+		private final boolean[] dirty;
+		
+		/**
+		 * The time of the last use (LRU) or of the fill (FIFO) of each way
+		 */
+		@NotNull
+		private final long[] used;
+		
+		private long clock = 0;
+		
+		@NotNull
+		private final SplittableRandom random = new SplittableRandom(0);
+		
+		// Counted per access kind
+		@NotNull
+		private final long[] hits = new long[Access.values().length];
+		@NotNull
+		private final long[] misses = new long[Access.values().length];
+		
+		@Getter
+		private long writeBacks = 0;
+		
+		private Level(@NotNull LevelConfig config) {
+			this.config = config;
+			this.lineShift = Integer.numberOfTrailingZeros(config.lineSize());
+			this.ways = config.ways();
+			int sets = config.size() / (config.lineSize() * config.ways());
+			this.setMask = sets - 1;
+			this.lines = new long[sets * ways];
+			this.dirty = new boolean[sets * ways];
+			this.used = new long[sets * ways];
+			Arrays.fill(lines, -1);
+		}
+		
+		/**
+		 * @return the way caching the line containing the index, or -1
+		 */
+		private int find(long index) {
+			long line = index >>> lineShift;
+			int base = (int) (line & setMask) * ways;
+			for (int way = base; way < base + ways; way++) {
+				if (lines[way] == line) {
+					return way;
+				}
+			}
+			return -1;
+		}
+		
+		/**
+		 * @return the way to fill with the line containing the index, an empty way if there is one
+		 */
+		private int victim(long index) {
+			int base = (int) ((index >>> lineShift) & setMask) * ways;
+			int victim = base;
+			for (int way = base; way < base + ways; way++) {
+				if (lines[way] == -1) {
+					return way;
+				}
+				if (used[way] < used[victim]) {
+					victim = way;
+				}
+			}
+			return config.replacement() == Replacement.RANDOM ? base + random.nextInt(ways) : victim;
+		}
+		
+		private void touch(int way, boolean filled) {
+			if (filled || config.replacement() == Replacement.LRU) {
+				used[way] = ++clock;
+			}
+		}
+		
+		private void clear() {
+			Arrays.fill(lines, -1);
+			Arrays.fill(dirty, false);
+			Arrays.fill(used, 0);
+			clock = 0;
+			Arrays.fill(hits, 0);
+			Arrays.fill(misses, 0);
+			writeBacks = 0;
+		}
+		
+		public long hits(@NotNull Access access) {
+			return hits[access.ordinal()];
+		}
+		
+		public long misses(@NotNull Access access) {
+			return misses[access.ordinal()];
+		}
+		
+		public long hits() {
+			return Arrays.stream(hits).sum();
+		}
+		
+		public long misses() {
+			return Arrays.stream(misses).sum();
+		}
+		
+		/**
+		 * @return the share of the lookups that hit, 0 before the first lookup
+		 */
+		public double hitRate() {
+			long hits = hits();
+			long total = hits + misses();
+			return total == 0 ? 0 : (double) hits / total;
+		}
+		
+	}
+	
+	/**
+	 * Counts the misses per level by instruction address in open addressing arrays,
+	 * so counting a miss does not allocate unless the table grows
+	 */
+	private static final class MissTable {
+		
+		private final int levelCount;
+		
+		@NotNull
+		private long[] keys;
+		
+		@NotNull
+		private boolean[] used;
+		
+		/**
+		 * The misses of the levels of each slot, {@code levelCount} entries per slot
+		 */
+		@NotNull
+		private long[] counts;
+		
+		private int size = 0;
+		
+		private MissTable(int levelCount) {
+			this.levelCount = levelCount;
+			allocate(256);
+		}
+		
+		private void allocate(int capacity) {
+			keys = new long[capacity];
+			used = new boolean[capacity];
+			counts = new long[capacity * levelCount];
+		}
+		
+		private void increment(long instructionPointer, int levelIndex) {
+			// Looked up first, growing replaces the counts array
+			int slot = slot(instructionPointer);
+			counts[slot * levelCount + levelIndex]++;
+		}
+		
+		/**
+		 * @return the slot of the address, added if it is missing
+		 */
+		private int slot(long instructionPointer) {
+			int mask = keys.length - 1;
+			int slot = (int) ((instructionPointer * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+			while (used[slot]) {
+				if (keys[slot] == instructionPointer) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			// Kept at most half full
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+				return slot(instructionPointer);
+			}
+			used[slot] = true;
+			keys[slot] = instructionPointer;
+			size++;
+			return slot;
+		}
+		
+		private void grow() {
+			long[] oldKeys = keys;
+			boolean[] oldUsed = used;
+			long[] oldCounts = counts;
+			allocate(oldKeys.length * 2);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldUsed[i]) {
+					System.arraycopy(oldCounts, i * levelCount, counts, slot(oldKeys[i]) * levelCount,
+						levelCount);
+				}
+			}
+		}
+		
+		/**
+		 * @return the instructions with misses in the level
+		 */
+		@NotNull
+		private Stream<InstructionMisses> misses(int levelIndex) {
+			return IntStream.range(0, keys.length)
+				.filter(slot -> used[slot] && counts[slot * levelCount + levelIndex] > 0)
+				.mapToObj(slot -> new InstructionMisses(keys[slot], counts[slot * levelCount + levelIndex]));
+		}
+		
+		private void clear() {
+			Arrays.fill(used, false);
+			Arrays.fill(counts, 0);
+			size = 0;
+		}
+		
+	}
+	
+	/**
+	 * The configuration of a level
+	 *
+	 * @param name        The name shown in the statistics
+	 * @param size        The capacity in bytes
+	 * @param lineSize    The size of a line in bytes, a power of two
+	 * @param ways        The number of lines per set
+	 * @param replacement Which line of a full set is replaced
+	 * @param writePolicy What happens on writes
+	 * @throws IllegalArgumentException if the number of sets is not a power of two
+	 */
+	public record LevelConfig(@NotNull String name, int size, int lineSize, int ways,
+		@NotNull Replacement replacement, @NotNull WritePolicy writePolicy) {
+		
+		public LevelConfig {
+			if (lineSize <= 0 || Integer.bitCount(lineSize) != 1 || ways <= 0 ||
+				size % (lineSize * ways) != 0 || Integer.bitCount(size / (lineSize * ways)) != 1) {
+				throw new IllegalArgumentException(
+					"Invalid cache %s: %d bytes, %d byte lines, %d ways".formatted(name, size, lineSize,
+						ways));
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return "%d KiB, %d B lines, %d ways, %s, %s".formatted(size >> 10, lineSize, ways,
+				replacement, writePolicy);
+		}
+		
+	}
+	
+	/**
+	 * @param instructionPointer The address of the instruction
+	 * @param misses             The misses caused by the instruction
+	 */
+	public record InstructionMisses(long instructionPointer, long misses) {}
+	
+	public enum Access {
+		READ,
+		WRITE,
+		/**
+		 * The read of an instruction
+		 */
+		FETCH,
+	}
+	
+	public enum Replacement {
+		/**
+		 * The least recently used line
+		 */
+		LRU,
+		/**
+		 * The line filled first
+		 */
+		FIFO,
+		RANDOM,
+	}
+	
+	public enum WritePolicy {
+		/**
+		 * Writes only mark the line dirty, it is written to the next level when it is replaced.
+		 * Write misses fill the line
+		 */
+		WRITE_BACK,
+		/**
+		 * Writes are passed to the next level, write misses do not fill the line
+		 */
+		WRITE_THROUGH,
+	}
+	
+}
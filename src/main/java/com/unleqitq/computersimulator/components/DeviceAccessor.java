@@ -1,20 +1,37 @@
 package com.unleqitq.computersimulator.components;
 
+import com.unleqitq.computersimulator.ValueSize;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class DeviceAccessor {
 	
+	private static final int INITIAL_CAPACITY = 16;
+	
+	/**
+	 * The ports of the bound devices, stored in an open addressing table (linear probing)
+	 * so lookups don't have to box the port
+	 */
+	@NotNull
+	private long[] ports;
+	
+	/**
+	 * The devices, stored at the same index as their port (null for empty slots)
+	 */
 	@NotNull
-	private final Map<Long, IDevice> devices;
+	private IDevice[] slots;
+	
+	private int count;
 	
 	public DeviceAccessor() {
-		this.devices = new HashMap<>();
+		this.ports = new long[INITIAL_CAPACITY];
+		this.slots = new IDevice[INITIAL_CAPACITY];
+		this.count = 0;
 	}
 	
 	public void addDevice(long port, @NotNull IDevice device) {
@@ -24,42 +41,53 @@ public class DeviceAccessor {
 			}
 			throw new IllegalArgumentException("Port " + port + " is already in use");
 		}
-		if (this.devices.containsValue(device)) {
-			System.err.printf("Device %s is already bound to a port%n", device.getDeviceName());
-			System.err.printf("Trying to bind to %x, already bound to %x%n",
-				port,
-				this.devices.entrySet()
-					.stream()
-					.filter(entry -> entry.getValue() == device)
-					.findFirst()
-					.orElseThrow()
-					.getKey());
-		}
-		this.devices.put(port, device);
+		for (int i = 0; i < slots.length; i++) {
+			if (slots[i] == device) {
+				System.err.printf("Device %s is already bound to a port%n", device.getDeviceName());
+				System.err.printf("Trying to bind to %x, already bound to %x%n", port, ports[i]);
+				break;
+			}
+		}
+		this.put(port, device);
 		device.setBoundPort(port);
 	}
 	
 	@Nullable
 	public IDevice getDevice(long port) {
-		return this.devices.get(port);
+		int mask = slots.length - 1;
+		for (int i = indexFor(port, mask); ; i = (i + 1) & mask) {
+			IDevice device = slots[i];
+			if (device == null || ports[i] == port) {
+				return device;
+			}
+		}
 	}
 	
+	/**
+	 * @return a snapshot of the bound devices, ordered by their position in the lookup table
+	 */
 	@NotNull
 	public Map<Long, IDevice> getDevices() {
-		return Collections.unmodifiableMap(this.devices);
+		Map<Long, IDevice> devices = new LinkedHashMap<>();
+		for (int i = 0; i < slots.length; i++) {
+			if (slots[i] != null) {
+				devices.put(ports[i], slots[i]);
+			}
+		}
+		return Collections.unmodifiableMap(devices);
 	}
 	
 	public boolean removeDevice(long port) {
-		if (!this.hasDevice(port)) {
+		IDevice device = this.remove(port);
+		if (device == null) {
 			return false;
 		}
-		IDevice device = this.devices.remove(port);
 		device.setUnbound();
 		return true;
 	}
 	
 	public boolean hasDevice(long port) {
-		return this.devices.containsKey(port);
+		return this.getDevice(port) != null;
 	}
 	
 	public boolean reroute(long from, long to) {
@@ -76,13 +104,78 @@ public class DeviceAccessor {
 			return false;
 		}
 		
-		IDevice device = devices.remove(from);
-		devices.put(to, device);
+		IDevice device = this.remove(from);
+		this.put(to, device);
 		device.setBoundPort(to);
 		
 		return true;
 	}
 	
+	private static int indexFor(long port, int mask) {
+		long hash = port * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+	
+	private void put(long port, @NotNull IDevice device) {
+		if ((count + 1) * 2 > slots.length) {
+			resize(slots.length * 2);
+		}
+		int mask = slots.length - 1;
+		int i = indexFor(port, mask);
+		while (slots[i] != null) {
+			i = (i + 1) & mask;
+		}
+		ports[i] = port;
+		slots[i] = device;
+		count++;
+	}
+	
+	@Nullable
+	private IDevice remove(long port) {
+		int mask = slots.length - 1;
+		int i = indexFor(port, mask);
+		while (slots[i] != null && ports[i] != port) {
+			i = (i + 1) & mask;
+		}
+		IDevice device = slots[i];
+		if (device == null) {
+			return null;
+		}
+		slots[i] = null;
+		count--;
+		
+		// Shift the following entries of the probe sequence back, so lookups don't stop at the gap
+		for (int j = (i + 1) & mask; slots[j] != null; j = (j + 1) & mask) {
+			int home = indexFor(ports[j], mask);
+			// Move the entry if its home slot is not cyclically within (i, j]
+			if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+				ports[i] = ports[j];
+				slots[i] = slots[j];
+				slots[j] = null;
+				i = j;
+			}
+		}
+		return device;
+	}
+	
+	private void resize(int capacity) {
+		long[] oldPorts = ports;
+		IDevice[] oldSlots = slots;
+		ports = new long[capacity];
+		slots = new IDevice[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldSlots.length; i++) {
+			if (oldSlots[i] != null) {
+				int j = indexFor(oldPorts[i], mask);
+				while (slots[j] != null) {
+					j = (j + 1) & mask;
+				}
+				ports[j] = oldPorts[i];
+				slots[j] = oldSlots[i];
+			}
+		}
+	}
+	
 	public interface IDevice {
 		
 		@NotNull
@@ -92,6 +185,30 @@ public class DeviceAccessor {
 		
 		void write(long address, long data);
 		
+		/**
+		 * Called for reads from a memory region the device is mapped to (see {@link Memory#mapDevice}).
+		 * By default the region reads as 0, the views never call this
+		 *
+		 * @param offset The offset of the access from the start of the region
+		 * @param size   The size of the access
+		 * @return the value, excess bits are discarded
+		 */
+		default long readMapped(long offset, @NotNull ValueSize size) {
+			return 0;
+		}
+		
+		/**
+		 * Called for writes to a memory region the device is mapped to (see {@link Memory#mapDevice}),
+		 * by default the write is discarded
+		 *
+		 * @param offset The offset of the access from the start of the region
+		 * @param size   The size of the access
+		 * @param value  The value, truncated to the size
+		 */
+		default void writeMapped(long offset, @NotNull ValueSize size, long value) {
+			// Do nothing
+		}
+		
 		default void setBoundPort(long port) {
 			// Do nothing
 		}
@@ -102,6 +219,36 @@ public class DeviceAccessor {
 		
 	}
 	
+	/**
+	 * Optional extension for devices that can take or provide whole buffers in one operation
+	 * (used by the DMA controller)
+	 */
+	public interface IBulkDevice extends IDevice {
+		
+		/**
+		 * Reads a block of bytes from the device
+		 *
+		 * @param address The device address of the first byte
+		 * @param buffer  The buffer to read into
+		 * @param offset  The offset in the buffer
+		 * @param length  The maximum number of bytes to read
+		 * @return the number of bytes read
+		 */
+		int readBlock(long address, @NotNull byte[] buffer, int offset, int length);
+		
+		/**
+		 * Writes a block of bytes to the device
+		 *
+		 * @param address The device address of the first byte
+		 * @param buffer  The buffer to write from
+		 * @param offset  The offset in the buffer
+		 * @param length  The number of bytes to write
+		 * @return the number of bytes written
+		 */
+		int writeBlock(long address, @NotNull byte[] buffer, int offset, int length);
+		
+	}
+	
 	@Getter
 	public static abstract class AbstractDevice implements IDevice {
 		
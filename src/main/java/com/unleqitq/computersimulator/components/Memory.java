@@ -1,51 +1,226 @@
 package com.unleqitq.computersimulator.components;
 
+import com.unleqitq.computersimulator.ValueSize;
+import com.unleqitq.computersimulator.components.memory.MemoryBackend;
+import com.unleqitq.computersimulator.components.memory.SharedRegion;
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
+/**
+ * The memory of a computer, stored by a {@link MemoryBackend}.
+ * <p>
+ * Addresses are 64 bit, every access is checked against the size and an access outside of the
+ * memory throws an {@link IndexOutOfBoundsException}. Besides the storage the memory routes
+ * accesses to mapped devices and records which pages were written.
+ * </p>
+ * <p>
+ * The writes of the processor to a {@link MemoryBackend#readOnly() read-only} backend are passed
+ * to the {@link #writeTrap} like writes to shared regions, bulk writes throw.
+ * </p>
+ */
 @Getter
 public class Memory {
 	
+	/**
+	 * The size of a page for change tracking is {@code 1 << PAGE_SHIFT} bytes
+	 */
+	public static final int PAGE_SHIFT = 12;
+	
+	/**
+	 * The page stamps are stored in chunks of {@code 1 << STAMP_CHUNK_SHIFT} pages
+	 */
+	private static final int STAMP_CHUNK_SHIFT = 10;
+	
 	/**
 	 * The size of the memory in bytes
 	 */
-	private final int size;
+	private final long size;
 	
 	/**
 	 * The memory data
 	 */
-	private final byte[] data;
+	@NotNull
+	private final MemoryBackend backend;
+	
+	/**
+	 * Whether the backend is read-only, see {@link MemoryBackend#readOnly()}
+	 */
+	private final boolean readOnly;
+	
+	/**
+	 * The memory mapped regions, replaced as a whole so the views read a consistent mapping
+	 */
+	@Getter (AccessLevel.NONE)
+	@NotNull
+	private volatile Mapping mapping = Mapping.EMPTY;
+	
+	/**
+	 * Called on writes to shared regions and to a read-only backend, throws by default
+	 */
+	@Getter (AccessLevel.NONE)
+	@Setter
+	@NotNull
+	private WriteTrap writeTrap = (memory, address, size) -> {
+		throw new IllegalStateException("Write to a read-only region at 0x%X".formatted(address));
+	};
+	
+	/**
+	 * Translates the accesses of the processor (the single values read and written with a segment)
+	 * while paging is enabled, null while it is disabled.<br>
+	 * The accesses without a segment and the bulk accesses, used by the devices, the views and to
+	 * load programs, are physical
+	 */
+	@Nullable
+	private Mmu mmu;
+	
+	/**
+	 * Counts the hits and misses of the accesses of the processor in modelled caches,
+	 * null for none
+	 */
+	@Nullable
+	private CacheSimulator cache;
+	
+	/**
+	 * True while there is neither an {@link #mmu} nor a {@link #cache}, the accesses of the
+	 * processor then skip both with a single check
+	 */
+	@Getter (AccessLevel.NONE)
+	private boolean direct = true;
 	
 	/**
-	 * Creates a new memory with the given size
+	 * Incremented on every write, the stamp of the last write
+	 */
+	private long stamp = 0;
+	
+	/**
+	 * The stamp of the last write to each page, the chunks are allocated on the first write.<br>
+	 * Lets views find the changed parts of the memory without comparing the data
+	 */
+	@Getter (AccessLevel.NONE)
+	@NotNull
+	private final long[][] pageStamps;
+	
+	/**
+	 * The stamp of the last {@link #clear()}, which counts as a write to every page
+	 */
+	@Getter (AccessLevel.NONE)
+	private long clearStamp = 0;
+	
+	/**
+	 * Creates a new memory with the given size on the heap
 	 *
 	 * @param size The size of the memory in bytes
 	 */
-	public Memory(int size) {
-		this.size = size;
-		this.data = new byte[size];
+	public Memory(long size) {
+		this(MemoryBackend.Type.HEAP.create(size));
+	}
+	
+	/**
+	 * Creates a new memory stored by the backend
+	 */
+	public Memory(@NotNull MemoryBackend backend) {
+		this.backend = backend;
+		this.size = backend.size();
+		this.readOnly = backend.readOnly();
+		long pages = (size + (1L << PAGE_SHIFT) - 1) >>> PAGE_SHIFT;
+		this.pageStamps =
+			new long[(int) ((pages + (1 << STAMP_CHUNK_SHIFT) - 1) >>> STAMP_CHUNK_SHIFT)][];
+	}
+	
+	/**
+	 * Checks that an access lies within the memory
+	 *
+	 * @throws IndexOutOfBoundsException if it does not
+	 */
+	private void checkIndex(long index, int length) {
+		Objects.checkFromIndexSize(index, length, size);
 	}
 	
 	/**
-	 * Converts an address (qword) to an index (dword) in the memory
+	 * Marks the pages of a written range with a new stamp
+	 *
+	 * @param index  The index of the first written byte
+	 * @param length The number of written bytes
+	 */
+	private void markWritten(long index, long length) {
+		long stamp = ++this.stamp;
+		long last = (index + length - 1) >>> PAGE_SHIFT;
+		for (long page = index >>> PAGE_SHIFT; page <= last; page++) {
+			int chunkIndex = (int) (page >>> STAMP_CHUNK_SHIFT);
+			long[] chunk = pageStamps[chunkIndex];
+			if (chunk == null) {
+				chunk = new long[1 << STAMP_CHUNK_SHIFT];
+				pageStamps[chunkIndex] = chunk;
+			}
+			chunk[(int) page & ((1 << STAMP_CHUNK_SHIFT) - 1)] = stamp;
+		}
+	}
+	
+	/**
+	 * @param address The (linear) address of a byte in the page
+	 * @return the stamp of the last write to the page, 0 if it was never written or cleared
+	 */
+	public long getPageStamp(long address) {
+		long page = addressToIndex(address) >>> PAGE_SHIFT;
+		if ((page >>> STAMP_CHUNK_SHIFT) >= pageStamps.length) {
+			return 0;
+		}
+		long[] chunk = pageStamps[(int) (page >>> STAMP_CHUNK_SHIFT)];
+		return chunk == null ? clearStamp :
+			Math.max(clearStamp, chunk[(int) page & ((1 << STAMP_CHUNK_SHIFT) - 1)]);
+	}
+	
+	/**
+	 * Checks whether a range was written after a stamp (see {@link #getStamp()})
+	 *
+	 * @param address The (linear) address of the first byte
+	 * @param length  The length of the range
+	 * @param stamp   The stamp to compare to
+	 * @return true if a page overlapping the range was written after the stamp
+	 */
+	public boolean changedSince(long address, long length, long stamp) {
+		if (this.stamp <= stamp || length <= 0) {
+			return false;
+		}
+		long start = addressToIndex(address);
+		if (start < 0 || start >= size) {
+			return false;
+		}
+		long last = (Math.min(start + length, size) - 1) >>> PAGE_SHIFT;
+		for (long page = start >>> PAGE_SHIFT; page <= last; page++) {
+			if (getPageStamp(page << PAGE_SHIFT) > stamp) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Converts an address to an index in the memory
 	 *
 	 * @param address The address to convert
 	 * @return The index in the memory
 	 */
-	private static int addressToIndex(long address) {
-		return (int) (address & 0xFFFFFFFFL);
+	private static long addressToIndex(long address) {
+		return address;
 	}
 	
 	/**
-	 * Converts an address (qword) together with a segment (qword) to an index (dword) in the memory
+	 * Converts an address together with a segment to an index in the memory
 	 *
 	 * @param address The address to convert
 	 * @param segment The segment to convert
 	 * @return The index in the memory
 	 */
-	private static int addressToIndex(long address, long segment) {
-		return (int) ((address + (segment << 4)) & 0xFFFFFFFFL);
+	private static long addressToIndex(long address, long segment) {
+		return address + (segment << 4);
 	}
 	
 	public long readByte(long address) {
@@ -53,7 +228,8 @@ public class Memory {
 	}
 	
 	public long readByte(long address, long segment) {
-		return getByte(addressToIndex(address, segment));
+		long index = addressToIndex(address, segment);
+		return direct ? getByte(index) : readTranslated(index, ValueSize.BYTE, Mmu.READ);
 	}
 	
 	public void writeByte(long address, long value) {
@@ -61,7 +237,13 @@ public class Memory {
 	}
 	
 	public void writeByte(long address, long segment, long value) {
-		setByte(addressToIndex(address, segment), value);
+		long index = addressToIndex(address, segment);
+		if (direct) {
+			setByte(index, value);
+		}
+		else {
+			writeTranslated(index, ValueSize.BYTE, value);
+		}
 	}
 	
 	public long readWord(long address) {
@@ -69,7 +251,8 @@ public class Memory {
 	}
 	
 	public long readWord(long address, long segment) {
-		return getWord(addressToIndex(address, segment));
+		long index = addressToIndex(address, segment);
+		return direct ? getWord(index) : readTranslated(index, ValueSize.WORD, Mmu.READ);
 	}
 	
 	public void writeWord(long address, long value) {
@@ -77,7 +260,13 @@ public class Memory {
 	}
 	
 	public void writeWord(long address, long segment, long value) {
-		setWord(addressToIndex(address, segment), value);
+		long index = addressToIndex(address, segment);
+		if (direct) {
+			setWord(index, value);
+		}
+		else {
+			writeTranslated(index, ValueSize.WORD, value);
+		}
 	}
 	
 	public long readDword(long address) {
@@ -85,7 +274,8 @@ public class Memory {
 	}
 	
 	public long readDword(long address, long segment) {
-		return getDword(addressToIndex(address, segment));
+		long index = addressToIndex(address, segment);
+		return direct ? getDword(index) : readTranslated(index, ValueSize.DWORD, Mmu.READ);
 	}
 	
 	public void writeDword(long address, long value) {
@@ -93,7 +283,13 @@ public class Memory {
 	}
 	
 	public void writeDword(long address, long segment, long value) {
-		setDword(addressToIndex(address, segment), value);
+		long index = addressToIndex(address, segment);
+		if (direct) {
+			setDword(index, value);
+		}
+		else {
+			writeTranslated(index, ValueSize.DWORD, value);
+		}
 	}
 	
 	public long readQword(long address) {
@@ -101,7 +297,8 @@ public class Memory {
 	}
 	
 	public long readQword(long address, long segment) {
-		return getQword(addressToIndex(address, segment));
+		long index = addressToIndex(address, segment);
+		return direct ? getQword(index) : readTranslated(index, ValueSize.QWORD, Mmu.READ);
 	}
 	
 	public void writeQword(long address, long value) {
@@ -109,77 +306,747 @@ public class Memory {
 	}
 	
 	public void writeQword(long address, long segment, long value) {
-		setQword(addressToIndex(address, segment), value);
+		long index = addressToIndex(address, segment);
+		if (direct) {
+			setQword(index, value);
+		}
+		else {
+			writeTranslated(index, ValueSize.QWORD, value);
+		}
+	}
+	
+	/**
+	 * Reads the bytes of an instruction, like {@link #readByte(long, long)} but the pages have to
+	 * allow execution instead of reading
+	 */
+	public long fetchByte(long address, long segment) {
+		long index = addressToIndex(address, segment);
+		return direct ? getByte(index) : readTranslated(index, ValueSize.BYTE, Mmu.EXECUTE);
 	}
 	
-	private long getByte(int index) {
-		return data[index] & 0xFFL;
+	public long fetchWord(long address, long segment) {
+		long index = addressToIndex(address, segment);
+		return direct ? getWord(index) : readTranslated(index, ValueSize.WORD, Mmu.EXECUTE);
 	}
 	
-	private void setByte(int index, long value) {
-		data[index] = (byte) value;
+	public long fetchDword(long address, long segment) {
+		long index = addressToIndex(address, segment);
+		return direct ? getDword(index) : readTranslated(index, ValueSize.DWORD, Mmu.EXECUTE);
 	}
 	
-	private long getWord(int index) {
-		return (data[index] & 0xFFL) | ((data[index + 1] & 0xFFL) << 8);
+	public long fetchQword(long address, long segment) {
+		long index = addressToIndex(address, segment);
+		return direct ? getQword(index) : readTranslated(index, ValueSize.QWORD, Mmu.EXECUTE);
 	}
 	
-	private void setWord(int index, long value) {
-		data[index] = (byte) (value & 0xFFL);
-		data[index + 1] = (byte) ((value >> 8) & 0xFFL);
+	/**
+	 * Reads the bytes of an instruction for the views, like {@link #fetchByte(long, long)} but the
+	 * pages are looked up without the TLB and the caches are skipped, so the simulation is not
+	 * affected
+	 *
+	 * @throws Mmu.PageFault if the page does not allow execution
+	 */
+	public long peekByte(long address, long segment) {
+		return peek(addressToIndex(address, segment), ValueSize.BYTE);
+	}
+	
+	public long peekWord(long address, long segment) {
+		return peek(addressToIndex(address, segment), ValueSize.WORD);
+	}
+	
+	public long peekDword(long address, long segment) {
+		return peek(addressToIndex(address, segment), ValueSize.DWORD);
 	}
 	
-	private long getDword(int index) {
-		return (data[index] & 0xFFL) | ((data[index + 1] & 0xFFL) << 8) |
-			((data[index + 2] & 0xFFL) << 16) | ((data[index + 3] & 0xFFL) << 24);
+	public long peekQword(long address, long segment) {
+		return peek(addressToIndex(address, segment), ValueSize.QWORD);
 	}
 	
-	private void setDword(int index, long value) {
-		data[index] = (byte) (value & 0xFFL);
-		data[index + 1] = (byte) ((value >> 8) & 0xFFL);
-		data[index + 2] = (byte) ((value >> 16) & 0xFFL);
-		data[index + 3] = (byte) ((value >> 24) & 0xFFL);
+	public void setMmu(@Nullable Mmu mmu) {
+		this.mmu = mmu;
+		direct = mmu == null && cache == null;
 	}
 	
-	private long getQword(int index) {
-		return (data[index] & 0xFFL) | ((data[index + 1] & 0xFFL) << 8) |
-			((data[index + 2] & 0xFFL) << 16) | ((data[index + 3] & 0xFFL) << 24) |
-			((data[index + 4] & 0xFFL) << 32) | ((data[index + 5] & 0xFFL) << 40) |
-			((data[index + 6] & 0xFFL) << 48) | ((data[index + 7] & 0xFFL) << 56);
+	public void setCache(@Nullable CacheSimulator cache) {
+		this.cache = cache;
+		direct = mmu == null && cache == null;
 	}
 	
-	private void setQword(int index, long value) {
-		data[index] = (byte) (value & 0xFFL);
-		data[index + 1] = (byte) ((value >> 8) & 0xFFL);
-		data[index + 2] = (byte) ((value >> 16) & 0xFFL);
-		data[index + 3] = (byte) ((value >> 24) & 0xFFL);
-		data[index + 4] = (byte) ((value >> 32) & 0xFFL);
-		data[index + 5] = (byte) ((value >> 40) & 0xFFL);
-		data[index + 6] = (byte) ((value >> 48) & 0xFFL);
-		data[index + 7] = (byte) ((value >> 56) & 0xFFL);
+	/**
+	 * Reads a value through the {@link #mmu} and the {@link #cache}, either may be null.
+	 * A value crossing a page boundary is split between the two pages
+	 */
+	private long readTranslated(long address, @NotNull ValueSize size, long access) {
+		Mmu mmu = this.mmu;
+		int length = size.getSize();
+		if (mmu == null || Mmu.inPage(address, length)) {
+			long index = mmu == null ? address : mmu.translate(address, access);
+			cacheAccess(index, length, access);
+			return switch (size) {
+				case BYTE -> getByte(index);
+				case WORD -> getWord(index);
+				case DWORD -> getDword(index);
+				case QWORD -> getQword(index);
+			};
+		}
+		int split = (int) (Mmu.PAGE_SIZE - (address & Mmu.PAGE_MASK));
+		long first = mmu.translate(address, access);
+		long second = mmu.translate(address + split, access);
+		cacheAccess(first, split, access);
+		cacheAccess(second, length - split, access);
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			long index = i < split ? first + i : second + (i - split);
+			value |= getByte(index) << (i * 8);
+		}
+		return value;
+	}
+	
+	/**
+	 * Writes a value through the {@link #mmu} and the {@link #cache}, either may be null.
+	 * Both pages of a value crossing a page boundary are translated before writing, so a fault
+	 * leaves the memory unchanged
+	 */
+	private void writeTranslated(long address, @NotNull ValueSize size, long value) {
+		Mmu mmu = this.mmu;
+		int length = size.getSize();
+		if (mmu == null || Mmu.inPage(address, length)) {
+			long index = mmu == null ? address : mmu.translate(address, Mmu.WRITE);
+			cacheAccess(index, length, Mmu.WRITE);
+			switch (size) {
+				case BYTE -> setByte(index, value);
+				case WORD -> setWord(index, value);
+				case DWORD -> setDword(index, value);
+				case QWORD -> setQword(index, value);
+			}
+			return;
+		}
+		int split = (int) (Mmu.PAGE_SIZE - (address & Mmu.PAGE_MASK));
+		long first = mmu.translate(address, Mmu.WRITE);
+		long second = mmu.translate(address + split, Mmu.WRITE);
+		cacheAccess(first, split, Mmu.WRITE);
+		cacheAccess(second, length - split, Mmu.WRITE);
+		for (int i = 0; i < length; i++) {
+			long index = i < split ? first + i : second + (i - split);
+			setByte(index, value >>> (i * 8));
+		}
+	}
+	
+	/**
+	 * Reads a value to execute through {@link Mmu#lookup}, a value crossing a page boundary is
+	 * split between the two pages. Bytes of device regions read as 0
+	 */
+	private long peek(long address, @NotNull ValueSize size) {
+		Mmu mmu = this.mmu;
+		int length = size.getSize();
+		if (mmu == null || Mmu.inPage(address, length)) {
+			long index = mmu == null ? address : lookupExecutable(mmu, address);
+			if (mapping.overlapsDevice(index, length)) {
+				long value = 0;
+				for (int i = 0; i < length; i++) {
+					value |= peekByte(index + i) << (i * 8);
+				}
+				return value;
+			}
+			return switch (size) {
+				case BYTE -> getByte(index);
+				case WORD -> getWord(index);
+				case DWORD -> getDword(index);
+				case QWORD -> getQword(index);
+			};
+		}
+		int split = (int) (Mmu.PAGE_SIZE - (address & Mmu.PAGE_MASK));
+		long first = lookupExecutable(mmu, address);
+		long second = lookupExecutable(mmu, address + split);
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			long index = i < split ? first + i : second + (i - split);
+			value |= peekByte(index) << (i * 8);
+		}
+		return value;
+	}
+	
+	/**
+	 * Reads a byte for the views, a byte of a device region reads as 0 since reading it from the
+	 * device could have side effects
+	 */
+	private long peekByte(long index) {
+		return mapping.overlapsDevice(index, 1) ? 0 : getByte(index);
+	}
+	
+	private static long lookupExecutable(@NotNull Mmu mmu, long address) {
+		long index = mmu.lookup(address, Mmu.EXECUTE);
+		if (index == -1) {
+			throw new Mmu.PageFault(address, Mmu.EXECUTE);
+		}
+		return index;
+	}
+	
+	/**
+	 * Passes an access to the {@link #cache}, accesses to devices are not cached
+	 *
+	 * @param access {@link Mmu#READ}, {@link Mmu#WRITE} or {@link Mmu#EXECUTE}
+	 */
+	private void cacheAccess(long index, int length, long access) {
+		CacheSimulator cache = this.cache;
+		if (cache == null) {
+			return;
+		}
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + length > mapping.low()) {
+			MappedRegion region = mapping.find(index, length);
+			if (region != null && !(region.device() instanceof SharedMapping)) {
+				return;
+			}
+		}
+		cache.access(index, length, access == Mmu.WRITE ? CacheSimulator.Access.WRITE :
+			access == Mmu.EXECUTE ? CacheSimulator.Access.FETCH : CacheSimulator.Access.READ);
+	}
+	
+	/**
+	 * Maps a device into the memory, accesses to the range are routed to
+	 * {@link DeviceAccessor.IDevice#readMapped} and {@link DeviceAccessor.IDevice#writeMapped}
+	 * instead of the memory data.<br>
+	 * An access within the region is passed to the device, an access crossing a boundary of the
+	 * region is split into bytes
+	 *
+	 * @param address The (linear) start address of the region
+	 * @param length  The length of the region in bytes
+	 * @param device  The device handling the accesses
+	 * @throws IllegalArgumentException if the region is empty, out of bounds or overlaps another region
+	 */
+	public void mapDevice(long address, long length, @NotNull DeviceAccessor.IDevice device) {
+		if (length <= 0 || address < 0 || address + length > size) {
+			throw new IllegalArgumentException(
+				"Invalid region: 0x%X + 0x%X".formatted(address, length));
+		}
+		MappedRegion region = new MappedRegion(address, address + length, device);
+		int insertAt = 0;
+		MappedRegion[] mappedRegions = mapping.regions();
+		for (MappedRegion other : mappedRegions) {
+			if (region.start() < other.end() && other.start() < region.end()) {
+				throw new IllegalArgumentException(
+					"Region 0x%X - 0x%X overlaps the region of %s".formatted(region.start(), region.end(),
+						other.device().getDeviceName()));
+			}
+			if (other.start() < region.start()) {
+				insertAt++;
+			}
+		}
+		MappedRegion[] regions = new MappedRegion[mappedRegions.length + 1];
+		System.arraycopy(mappedRegions, 0, regions, 0, insertAt);
+		regions[insertAt] = region;
+		System.arraycopy(mappedRegions, insertAt, regions, insertAt + 1,
+			mappedRegions.length - insertAt);
+		setMappedRegions(regions);
+	}
+	
+	/**
+	 * Maps a shared read-only region into the memory, reads return the bytes of the region and
+	 * writes are passed to the {@link #writeTrap} instead.<br>
+	 * The bytes are not copied, the region can be mapped into any number of memories.
+	 * The writes are discarded, so only mapping and unmapping the region change the page stamps
+	 *
+	 * @param address The (linear) start address of the region
+	 * @param region  The region
+	 * @return the mapping, to unmap the region with {@link #unmapDevice}
+	 * @throws IllegalArgumentException if the region is out of bounds or overlaps another region
+	 */
+	@NotNull
+	public DeviceAccessor.IDevice mapShared(long address, @NotNull SharedRegion region) {
+		SharedMapping mapping = new SharedMapping(region, address);
+		mapDevice(address, region.size(), mapping);
+		return mapping;
+	}
+	
+	/**
+	 * Removes all regions the device is mapped to
+	 *
+	 * @param device The device to unmap
+	 * @return true if the device was mapped
+	 */
+	public boolean unmapDevice(@NotNull DeviceAccessor.IDevice device) {
+		MappedRegion[] mappedRegions = mapping.regions();
+		MappedRegion[] regions = Arrays.stream(mappedRegions)
+			.filter(region -> region.device() != device)
+			.toArray(MappedRegion[]::new);
+		if (regions.length == mappedRegions.length) {
+			return false;
+		}
+		setMappedRegions(regions);
+		return true;
+	}
+	
+	@NotNull
+	public List<MappedRegion> getMappedRegions() {
+		return List.of(mapping.regions());
+	}
+	
+	/**
+	 * Publishes new regions and marks the pages of the mapped and unmapped regions as written,
+	 * as their content changed for everything caching it
+	 */
+	private void setMappedRegions(@NotNull MappedRegion[] regions) {
+		List<MappedRegion> previous = List.of(mapping.regions());
+		List<MappedRegion> current = List.of(regions);
+		mapping = new Mapping(regions);
+		for (MappedRegion region : previous) {
+			if (!current.contains(region)) {
+				markWritten(region.start(), region.end() - region.start());
+			}
+		}
+		for (MappedRegion region : current) {
+			if (!previous.contains(region)) {
+				markWritten(region.start(), region.end() - region.start());
+			}
+		}
+	}
+	
+	private static long mask(@NotNull ValueSize size) {
+		return size == ValueSize.QWORD ? -1L : (1L << (size.getSize() * 8)) - 1;
+	}
+	
+	/**
+	 * Reads a value overlapping a region, a value crossing a boundary of the region is read byte by
+	 * byte from where each byte lies
+	 */
+	private long readMapped(@NotNull MappedRegion region, long index, @NotNull ValueSize size) {
+		int length = size.getSize();
+		if (index >= region.start() && index + length <= region.end()) {
+			return region.device().readMapped(index - region.start(), size) & mask(size);
+		}
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			value |= getByte(index + i) << (i * 8);
+		}
+		return value;
+	}
+	
+	/**
+	 * Writes a value overlapping a region, a value crossing a boundary of the region is written byte
+	 * by byte, unless it overlaps a shared region, then it is trapped as a whole and nothing is
+	 * written
+	 */
+	private void writeMapped(@NotNull MappedRegion region, long index, @NotNull ValueSize size,
+		long value) {
+		int length = size.getSize();
+		if (index >= region.start() && index + length <= region.end()) {
+			region.device().writeMapped(index - region.start(), size, value & mask(size));
+			return;
+		}
+		if (mapping.overlapsShared(index, length)) {
+			writeTrap.onWrite(this, index, size);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			setByte(index + i, value >>> (i * 8));
+		}
+	}
+	
+	private long getByte(long index) {
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + 1 > mapping.low()) {
+			MappedRegion region = mapping.find(index, 1);
+			if (region != null) {
+				return readMapped(region, index, ValueSize.BYTE);
+			}
+		}
+		checkIndex(index, 1);
+		return backend.getByte(index) & 0xFFL;
+	}
+	
+	private void setByte(long index, long value) {
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + 1 > mapping.low()) {
+			MappedRegion region = mapping.find(index, 1);
+			if (region != null) {
+				writeMapped(region, index, ValueSize.BYTE, value);
+				return;
+			}
+		}
+		checkIndex(index, 1);
+		if (readOnly) {
+			writeTrap.onWrite(this, index, ValueSize.BYTE);
+			return;
+		}
+		backend.setByte(index, (byte) value);
+		markWritten(index, 1);
+	}
+	
+	private long getWord(long index) {
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + 2 > mapping.low()) {
+			MappedRegion region = mapping.find(index, 2);
+			if (region != null) {
+				return readMapped(region, index, ValueSize.WORD);
+			}
+		}
+		checkIndex(index, 2);
+		return backend.getShort(index) & 0xFFFFL;
+	}
+	
+	private void setWord(long index, long value) {
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + 2 > mapping.low()) {
+			MappedRegion region = mapping.find(index, 2);
+			if (region != null) {
+				writeMapped(region, index, ValueSize.WORD, value);
+				return;
+			}
+		}
+		checkIndex(index, 2);
+		if (readOnly) {
+			writeTrap.onWrite(this, index, ValueSize.WORD);
+			return;
+		}
+		backend.setShort(index, (short) value);
+		markWritten(index, 2);
+	}
+	
+	private long getDword(long index) {
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + 4 > mapping.low()) {
+			MappedRegion region = mapping.find(index, 4);
+			if (region != null) {
+				return readMapped(region, index, ValueSize.DWORD);
+			}
+		}
+		checkIndex(index, 4);
+		return backend.getInt(index) & 0xFFFFFFFFL;
+	}
+	
+	private void setDword(long index, long value) {
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + 4 > mapping.low()) {
+			MappedRegion region = mapping.find(index, 4);
+			if (region != null) {
+				writeMapped(region, index, ValueSize.DWORD, value);
+				return;
+			}
+		}
+		checkIndex(index, 4);
+		if (readOnly) {
+			writeTrap.onWrite(this, index, ValueSize.DWORD);
+			return;
+		}
+		backend.setInt(index, (int) value);
+		markWritten(index, 4);
+	}
+	
+	private long getQword(long index) {
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + 8 > mapping.low()) {
+			MappedRegion region = mapping.find(index, 8);
+			if (region != null) {
+				return readMapped(region, index, ValueSize.QWORD);
+			}
+		}
+		checkIndex(index, 8);
+		return backend.getLong(index);
+	}
+	
+	private void setQword(long index, long value) {
+		Mapping mapping = this.mapping;
+		if (index < mapping.high() && index + 8 > mapping.low()) {
+			MappedRegion region = mapping.find(index, 8);
+			if (region != null) {
+				writeMapped(region, index, ValueSize.QWORD, value);
+				return;
+			}
+		}
+		checkIndex(index, 8);
+		if (readOnly) {
+			writeTrap.onWrite(this, index, ValueSize.QWORD);
+			return;
+		}
+		backend.setLong(index, value);
+		markWritten(index, 8);
 	}
 	
 	public void write(long address, long segment, byte[] data) {
-		int index = addressToIndex(address, segment);
-		System.arraycopy(data, 0, this.data, index, Math.min(data.length, this.data.length - index));
+		long index = addressToIndex(address, segment);
+		int length = available(index, data.length);
+		checkWritable(length);
+		if (overlapsMapped(index, length)) {
+			for (int i = 0; i < length; i++) {
+				setByte(index + i, data[i]);
+			}
+			return;
+		}
+		backend.write(index, data, 0, length);
+		if (length > 0) {
+			markWritten(index, length);
+		}
 	}
 	
 	public byte[] read(long address, long segment, int length) {
-		int index = addressToIndex(address, segment);
-		byte[] data = new byte[length];
-		System.arraycopy(this.data, index, data, 0, Math.min(length, this.data.length - index));
-		return data;
+		return readIndex(addressToIndex(address, segment), length);
 	}
 	
 	public byte[] read(long address, int length) {
-		int index = addressToIndex(address);
+		return readIndex(addressToIndex(address), length);
+	}
+	
+	private byte[] readIndex(long index, int length) {
 		byte[] data = new byte[length];
-		System.arraycopy(this.data, index, data, 0, Math.min(length, this.data.length - index));
+		int available = available(index, length);
+		if (overlapsMapped(index, available)) {
+			for (int i = 0; i < available; i++) {
+				data[i] = (byte) getByte(index + i);
+			}
+			return data;
+		}
+		backend.read(index, data, 0, available);
 		return data;
 	}
 	
+	/**
+	 * Reads bytes into an existing array, bytes outside the memory are left untouched
+	 *
+	 * @param address     The (linear) address of the first byte
+	 * @param destination The array to read into
+	 * @param offset      The index in the array of the first byte
+	 * @param length      The number of bytes to read
+	 * @return the number of bytes read
+	 */
+	public int read(long address, @NotNull byte[] destination, int offset, int length) {
+		long index = addressToIndex(address);
+		int available = available(index, length);
+		if (overlapsMapped(index, available)) {
+			for (int i = 0; i < available; i++) {
+				destination[offset + i] = (byte) getByte(index + i);
+			}
+			return available;
+		}
+		backend.read(index, destination, offset, available);
+		return available;
+	}
+	
+	/**
+	 * Reads bytes into an existing array for the views, like {@link #read(long, byte[], int, int)}
+	 * but bytes of device regions read as 0 and the devices are not accessed
+	 *
+	 * @param address     The (linear) address of the first byte
+	 * @param destination The array to read into
+	 * @param offset      The index in the array of the first byte
+	 * @param length      The number of bytes to read
+	 * @return the number of bytes read
+	 */
+	public int peek(long address, @NotNull byte[] destination, int offset, int length) {
+		long index = addressToIndex(address);
+		int available = available(index, length);
+		if (overlapsMapped(index, available)) {
+			for (int i = 0; i < available; i++) {
+				destination[offset + i] = (byte) peekByte(index + i);
+			}
+			return available;
+		}
+		backend.read(index, destination, offset, available);
+		return available;
+	}
+	
+	/**
+	 * Writes bytes from an array, bytes outside the memory are discarded
+	 *
+	 * @param address The (linear) address of the first byte
+	 * @param source  The array to write from
+	 * @param offset  The index in the array of the first byte
+	 * @param length  The number of bytes to write
+	 * @return the number of bytes written
+	 */
+	public int write(long address, @NotNull byte[] source, int offset, int length) {
+		long index = addressToIndex(address);
+		int available = available(index, length);
+		checkWritable(available);
+		if (overlapsMapped(index, available)) {
+			for (int i = 0; i < available; i++) {
+				setByte(index + i, source[offset + i]);
+			}
+			return available;
+		}
+		backend.write(index, source, offset, available);
+		if (available > 0) {
+			markWritten(index, available);
+		}
+		return available;
+	}
+	
+	/**
+	 * Reads consecutive (little endian) dwords into an int array in one bulk operation,
+	 * dwords outside the memory are left untouched
+	 *
+	 * @param address     The (linear) address of the first dword
+	 * @param destination The array to read into
+	 * @param offset      The index in the array of the first dword
+	 * @param length      The number of dwords to read
+	 */
+	public void readDwords(long address, @NotNull int[] destination, int offset, int length) {
+		long index = addressToIndex(address);
+		int available = available(index, length * 4L) / 4;
+		if (overlapsMapped(index, available * 4)) {
+			for (int i = 0; i < available; i++) {
+				destination[offset + i] = (int) getDword(index + i * 4L);
+			}
+			return;
+		}
+		backend.readInts(index, destination, offset, available);
+	}
+	
+	/**
+	 * @return the number of bytes of a range that lie within the memory
+	 */
+	private int available(long index, long length) {
+		if (index < 0 || index >= size || length <= 0) {
+			return 0;
+		}
+		return (int) Math.min(length, size - index);
+	}
+	
+	private boolean overlapsMapped(long index, int length) {
+		Mapping mapping = this.mapping;
+		return index < mapping.high() && index + length > mapping.low();
+	}
+	
+	/**
+	 * @throws IllegalStateException if bytes are written to a read-only backend
+	 */
+	private void checkWritable(int length) {
+		if (readOnly && length > 0) {
+			throw new IllegalStateException("The memory is a read-only image");
+		}
+	}
+	
+	/**
+	 * Sets all bytes to 0, the page stamps are reset instead of marking every page
+	 *
+	 * @throws IllegalStateException if the backend is read-only
+	 */
 	public void clear() {
-		Arrays.fill(data, (byte) 0);
+		checkWritable(1);
+		backend.clear();
+		clearStamp = ++stamp;
+		Arrays.fill(pageStamps, null);
+	}
+	
+	/**
+	 * Called on a write to a shared region or a read-only backend, the write is discarded
+	 */
+	@FunctionalInterface
+	public interface WriteTrap {
+		
+		/**
+		 * @param memory  The memory
+		 * @param address The (linear) address of the write
+		 * @param size    The size of the write
+		 */
+		void onWrite(@NotNull Memory memory, long address, @NotNull ValueSize size);
+		
+	}
+	
+	/**
+	 * A shared region mapped into this memory
+	 */
+	private final class SharedMapping extends DeviceAccessor.AbstractDevice {
+		
+		@NotNull
+		private final SharedRegion region;
+		
+		private final long start;
+		
+		private SharedMapping(@NotNull SharedRegion region, long start) {
+			super("ROM " + region.name());
+			this.region = region;
+			this.start = start;
+		}
+		
+		@Override
+		public long readMapped(long offset, @NotNull ValueSize size) {
+			return region.read(offset, size);
+		}
+		
+		@Override
+		public void writeMapped(long offset, @NotNull ValueSize size, long value) {
+			writeTrap.onWrite(Memory.this, start + offset, size);
+		}
+		
+	}
+	
+	/**
+	 * A region of the memory that is mapped to a device
+	 *
+	 * @param start  The start index of the region
+	 * @param end    The end index of the region (exclusive)
+	 * @param device The device handling accesses to the region
+	 */
+	public record MappedRegion(long start, long end, @NotNull DeviceAccessor.IDevice device) {}
+	
+	/**
+	 * The mapped regions together with the range they cover
+	 *
+	 * @param regions The regions, sorted by their start index
+	 * @param low     The lowest start index of all regions
+	 * @param high    The highest end index (exclusive) of all regions.
+	 *                Accesses outside of the range can skip the region lookup,
+	 *                when nothing is mapped the range is empty
+	 */
+	private record Mapping(@NotNull MappedRegion[] regions, long low, long high) {
+		
+		private static final Mapping EMPTY = new Mapping(new MappedRegion[0]);
+		
+		private Mapping(@NotNull MappedRegion[] regions) {
+			this(regions, regions.length == 0 ? Long.MAX_VALUE : regions[0].start(),
+				Arrays.stream(regions).mapToLong(MappedRegion::end).max().orElse(0));
+		}
+		
+		/**
+		 * @return the first region overlapping the range, or null
+		 */
+		@Nullable
+		private MappedRegion find(long index, int length) {
+			if (index >= high || index + length <= low) {
+				return null;
+			}
+			for (MappedRegion region : regions) {
+				if (index + length <= region.start()) {
+					return null;
+				}
+				if (index < region.end()) {
+					return region;
+				}
+			}
+			return null;
+		}
+		
+		private boolean overlapsShared(long index, int length) {
+			for (MappedRegion region : regions) {
+				if (index + length <= region.start()) {
+					return false;
+				}
+				if (index < region.end() && region.device() instanceof SharedMapping) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * @return whether the range overlaps a region of a device other than a shared region
+		 */
+		private boolean overlapsDevice(long index, int length) {
+			if (index >= high || index + length <= low) {
+				return false;
+			}
+			for (MappedRegion region : regions) {
+				if (index + length <= region.start()) {
+					return false;
+				}
+				if (index < region.end() && !(region.device() instanceof SharedMapping)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
 	}
 	
 }
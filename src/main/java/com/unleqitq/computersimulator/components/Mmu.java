@@ -0,0 +1,244 @@
+package com.unleqitq.computersimulator.components;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Translates the (linear) addresses of the processor to physical addresses through page tables
+ * in the memory.
+ * <p>
+ * The tables have two levels of 512 qword entries each, one table fills a page of
+ * {@code 1 << PAGE_SHIFT} bytes. Bits 21 - 29 of an address select the entry of the directory,
+ * bits 12 - 20 the entry of the table, so the address space is 1 GiB. An entry is the physical
+ * address of the next table or of the page, ORed with the {@code PRESENT} bit and, in the tables,
+ * the {@code READ}, {@code WRITE} and {@code EXECUTE} bits allowing the accesses.
+ * </p>
+ * <p>
+ * The translations are cached in a direct mapped TLB. Changes to the tables only take effect
+ * after the changed pages were invalidated or the TLB was flushed, like on real hardware.
+ * The TLB and the statistics belong to the simulation thread, the views use {@link #lookup}.
+ * </p>
+ * <p>
+ * Paging gives no isolation: any program can change the root or turn paging off through the
+ * system device, and the addresses of the devices (DMA, disk, console, keyboard batches, ...)
+ * stay physical. It is meant for programs experimenting with virtual memory, not to separate
+ * untrusted programs.
+ * </p>
+ */
+@Accessors (fluent = true)
+public class Mmu {
+	
+	public static final int PAGE_SHIFT = Memory.PAGE_SHIFT;
+	
+	public static final long PAGE_SIZE = 1L << PAGE_SHIFT;
+	
+	public static final long PAGE_MASK = PAGE_SIZE - 1;
+	
+	/**
+	 * The number of index bits of each level
+	 */
+	private static final int LEVEL_SHIFT = 9;
+	
+	private static final int LEVEL_MASK = (1 << LEVEL_SHIFT) - 1;
+	
+	/**
+	 * The number of bits of a virtual page number, addresses above fault
+	 */
+	private static final int PAGE_NUMBER_BITS = 2 * LEVEL_SHIFT;
+	
+	public static final long PRESENT = 1;
+	public static final long READ = 1 << 1;
+	public static final long WRITE = 1 << 2;
+	public static final long EXECUTE = 1 << 3;
+	
+	private static final long FLAGS = PRESENT | READ | WRITE | EXECUTE;
+	
+	/**
+	 * A TLB entry is {@code frame << FRAME_SHIFT | page << TAG_SHIFT | flags},
+	 * an empty entry is 0 and allows no access
+	 */
+	private static final int TAG_SHIFT = 4;
+	
+	private static final int FRAME_SHIFT = TAG_SHIFT + PAGE_NUMBER_BITS;
+	
+	private static final long TAG_MASK = (1L << PAGE_NUMBER_BITS) - 1;
+	
+	/**
+	 * Frames from this one on do not fit into a TLB entry, their translations are not cached.
+	 * They lie far beyond any memory, so the access fails anyway
+	 */
+	private static final long MAX_TLB_FRAME = 1L << (Long.SIZE - FRAME_SHIFT);
+	
+	@NotNull
+	private final Memory memory;
+	
+	@NotNull
+	private final long[] tlb;
+	
+	private final int tlbMask;
+	
+	/**
+	 * The physical address of the directory
+	 */
+	@Getter
+	private long root = 0;
+	
+	/**
+	 * Incremented whenever translations may have changed (the root changed, the TLB was flushed or
+	 * a page was invalidated), caches of translated addresses are valid while it stays the same
+	 */
+	@Getter
+	private volatile long generation = 0;
+	
+	@Getter
+	private long hits = 0;
+	
+	@Getter
+	private long misses = 0;
+	
+	/**
+	 * @param memory  The memory holding the tables
+	 * @param tlbSize The number of TLB entries, a power of two
+	 */
+	public Mmu(@NotNull Memory memory, int tlbSize) {
+		if (tlbSize <= 0 || Integer.bitCount(tlbSize) != 1) {
+			throw new IllegalArgumentException("The TLB size must be a power of two: " + tlbSize);
+		}
+		this.memory = memory;
+		this.tlb = new long[tlbSize];
+		this.tlbMask = tlbSize - 1;
+	}
+	
+	/**
+	 * Sets the physical address of the directory and flushes the TLB
+	 */
+	public void setRoot(long root) {
+		this.root = root & ~PAGE_MASK;
+		flush();
+	}
+	
+	public void flush() {
+		Arrays.fill(tlb, 0);
+		generation++;
+	}
+	
+	/**
+	 * Drops the translation of the page containing the address
+	 */
+	public void invalidate(long address) {
+		long page = address >>> PAGE_SHIFT;
+		int slot = (int) page & tlbMask;
+		if (((tlb[slot] >>> TAG_SHIFT) & TAG_MASK) == page) {
+			tlb[slot] = 0;
+		}
+		generation++;
+	}
+	
+	/**
+	 * @return whether a value of the length at the address lies within one page
+	 */
+	public static boolean inPage(long address, int length) {
+		return (address & PAGE_MASK) <= PAGE_SIZE - length;
+	}
+	
+	/**
+	 * Translates an address, the access must not cross a page boundary
+	 *
+	 * @param address The (linear) address
+	 * @param access  {@link #READ}, {@link #WRITE} or {@link #EXECUTE}
+	 * @return the physical address
+	 * @throws PageFault if the page is not present or does not allow the access
+	 */
+	public long translate(long address, long access) {
+		long page = address >>> PAGE_SHIFT;
+		long entry = tlb[(int) page & tlbMask];
+		if (((entry >>> TAG_SHIFT) & TAG_MASK) == page && (entry & access) != 0) {
+			hits++;
+			return (entry >>> FRAME_SHIFT) << PAGE_SHIFT | (address & PAGE_MASK);
+		}
+		misses++;
+		long pageEntry = walk(page);
+		if ((pageEntry & access) == 0) {
+			throw new PageFault(address, access);
+		}
+		long frame = pageEntry >>> PAGE_SHIFT;
+		if (frame < MAX_TLB_FRAME) {
+			tlb[(int) page & tlbMask] = frame << FRAME_SHIFT | page << TAG_SHIFT | (pageEntry & FLAGS);
+		}
+		return frame << PAGE_SHIFT | (address & PAGE_MASK);
+	}
+	
+	/**
+	 * Translates an address without the TLB, the statistics and without faulting, for the views
+	 *
+	 * @return the physical address or -1 if the access is not allowed
+	 */
+	public long lookup(long address, long access) {
+		long pageEntry = walk(address >>> PAGE_SHIFT);
+		return (pageEntry & access) == 0 ? -1 : pageEntry & ~PAGE_MASK | (address & PAGE_MASK);
+	}
+	
+	/**
+	 * Reads the entry of a page from the tables
+	 *
+	 * @return the entry or 0 if the page is not present
+	 */
+	private long walk(long page) {
+		if ((page >>> PAGE_NUMBER_BITS) != 0) {
+			return 0;
+		}
+		long directoryEntry = readEntry(root, (int) (page >>> LEVEL_SHIFT) & LEVEL_MASK);
+		if ((directoryEntry & PRESENT) == 0) {
+			return 0;
+		}
+		long pageEntry = readEntry(directoryEntry & ~PAGE_MASK, (int) page & LEVEL_MASK);
+		return (pageEntry & PRESENT) == 0 ? 0 : pageEntry;
+	}
+	
+	private long readEntry(long table, int index) {
+		long address = table + index * 8L;
+		if (address < 0 || address > memory.getSize() - 8) {
+			return 0;
+		}
+		return memory.readQword(address);
+	}
+	
+	public void resetStatistics() {
+		hits = 0;
+		misses = 0;
+	}
+	
+	/**
+	 * Thrown by an access the page tables do not allow, the simulator raises it as an interrupt.
+	 * Carries no stack trace, it is part of the normal control flow of a paging program
+	 */
+	@Getter
+	public static class PageFault extends RuntimeException {
+		
+		/**
+		 * The (linear) address of the access
+		 */
+		private final long address;
+		
+		/**
+		 * {@link #READ}, {@link #WRITE} or {@link #EXECUTE}
+		 */
+		private final long access;
+		
+		public PageFault(long address, long access) {
+			super(null, null, false, false);
+			this.address = address;
+			this.access = access;
+		}
+		
+		@Override
+		public String getMessage() {
+			return "Page fault at 0x%X (access %d)".formatted(address, access);
+		}
+		
+	}
+	
+}
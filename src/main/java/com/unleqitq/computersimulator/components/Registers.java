@@ -24,6 +24,20 @@ public class Registers {
 		registers[register.getValue()] = value;
 	}
 	
+	/**
+	 * Copies the values of all registers into the array
+	 */
+	public void save(@NotNull long[] destination) {
+		System.arraycopy(registers, 0, destination, 0, registers.length);
+	}
+	
+	/**
+	 * Sets all registers to the values saved by {@link #save}
+	 */
+	public void restore(@NotNull long[] source) {
+		System.arraycopy(source, 0, registers, 0, registers.length);
+	}
+	
 	public long readRegister(@NotNull Register register, @NotNull RegisterRegion region) {
 		if (!register.isRegionAllowed(region)) {
 			throw new IllegalArgumentException(
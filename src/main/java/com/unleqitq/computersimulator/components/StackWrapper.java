@@ -6,7 +6,8 @@ import lombok.experimental.Accessors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class StackWrapper {
@@ -55,29 +56,29 @@ public class StackWrapper {
 	
 	public void pushByte(long value) {
 		long nsp = getStackPointer() - 1;
-		setStackPointer(nsp);
 		memory.writeByte(nsp, getStackSegment(), value);
+		setStackPointer(nsp);
 		history.push(value, nsp, ValueSize.BYTE);
 	}
 	
 	public void pushWord(long value) {
 		long nsp = getStackPointer() - 2;
-		setStackPointer(nsp);
 		memory.writeWord(nsp, getStackSegment(), value);
+		setStackPointer(nsp);
 		history.push(value, nsp, ValueSize.WORD);
 	}
 	
 	public void pushDword(long value) {
 		long nsp = getStackPointer() - 4;
-		setStackPointer(nsp);
 		memory.writeDword(nsp, getStackSegment(), value);
+		setStackPointer(nsp);
 		history.push(value, nsp, ValueSize.DWORD);
 	}
 	
 	public void pushQword(long value) {
 		long nsp = getStackPointer() - 8;
-		setStackPointer(nsp);
 		memory.writeQword(nsp, getStackSegment(), value);
+		setStackPointer(nsp);
 		history.push(value, nsp, ValueSize.QWORD);
 	}
 	
@@ -90,24 +91,24 @@ public class StackWrapper {
 	
 	public long popWord() {
 		long sp = getStackPointer();
-		history.pop(sp);
 		long value = memory.readWord(sp, getStackSegment());
+		history.pop(sp);
 		setStackPointer(sp + 2);
 		return value;
 	}
 	
 	public long popDword() {
 		long sp = getStackPointer();
-		history.pop(sp);
 		long value = memory.readDword(sp, getStackSegment());
+		history.pop(sp);
 		setStackPointer(sp + 4);
 		return value;
 	}
 	
 	public long popQword() {
 		long sp = getStackPointer();
-		history.pop(sp);
 		long value = memory.readQword(sp, getStackSegment());
+		history.pop(sp);
 		setStackPointer(sp + 8);
 		return value;
 	}
@@ -137,23 +138,24 @@ public class StackWrapper {
 	}
 	
 	public void resetHistory() {
-		history.history.clear();
+		history.clear();
 	}
 	
 	@NotNull
 	public List<ResolvedStackEntry> resolveStack() {
 		long sp = getStackPointer();
 		long end = memory.getSize();
-		List<ResolvedStackEntry> entries = new LinkedList<>();
+		List<ResolvedStackEntry> entries = new ArrayList<>();
 		
-		List<StackHistory.StackEntry> history = new LinkedList<>(this.history.history);
+		int index = history.count;
 		while (sp < end - 1) {
-			StackHistory.StackEntry nextEntry = history.isEmpty() ? null : history.getLast();
-			if (nextEntry != null && nextEntry.address() < sp) {
-				continue;
+			// Skip entries below the stack pointer (left over from byte pops)
+			while (index > 0 && history.addresses[index - 1] < sp) {
+				index--;
 			}
+			StackHistory.StackEntry nextEntry = index == 0 ? null : history.get(index - 1);
 			if (nextEntry != null && nextEntry.address() == sp) {
-				history.removeLast();
+				index--;
 				entries.add(new ResolvedStackEntry(sp, sp + nextEntry.size().getSize() - 1, nextEntry));
 				sp += nextEntry.size().getSize();
 			}
@@ -184,48 +186,157 @@ public class StackWrapper {
 		long fromAddress, long toAddress, @Nullable StackHistory.StackEntry entry
 	) {}
 	
-	@Getter
+	/**
+	 * The pushed values, stored in parallel arrays so a push allocates nothing.
+	 * <p>
+	 * Index 0 is the oldest entry. Every push gets a new id, so a copy of the history can find the
+	 * entries it shares with the current history (see {@link #commonPrefix(long[], int)})
+	 * and only copy the rest.
+	 * </p>
+	 */
 	public static class StackHistory {
 		
 		@NotNull
-		private final WrappedLinkedList<StackEntry> history;
+		private long[] values = new long[64];
+		@NotNull
+		private long[] addresses = new long[64];
+		@NotNull
+		private ValueSize[] sizes = new ValueSize[64];
+		@NotNull
+		private long[] ids = new long[64];
+		
+		@Getter
+		private int count = 0;
+		
+		/**
+		 * Incremented on every change
+		 */
+		@Getter
+		private int modCount = 0;
+		
+		private long nextId = 0;
+		
+		/**
+		 * Whether pushes are recorded at all
+		 */
+		@Getter
+		private boolean enabled = true;
 		
-		public StackHistory() {
-			history = new WrappedLinkedList<>();
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+			if (!enabled) {
+				clear();
+			}
 		}
 		
 		public void push(long value, long address, @NotNull ValueSize size) {
-			history.add(new StackEntry(value, address, size));
+			if (!enabled) {
+				return;
+			}
+			if (count == values.length) {
+				int capacity = count * 2;
+				values = Arrays.copyOf(values, capacity);
+				addresses = Arrays.copyOf(addresses, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				ids = Arrays.copyOf(ids, capacity);
+			}
+			values[count] = value;
+			addresses[count] = address;
+			sizes[count] = size;
+			ids[count] = nextId++;
+			count++;
+			modCount++;
 		}
 		
 		public void pop(long address) {
-			if (history.isEmpty() || history.getLast().address() != address) {
+			if (!enabled) {
+				return;
+			}
+			if (count == 0 || addresses[count - 1] != address) {
 				System.err.println("Stack may be corrupted");
 			}
 			
 			// Pop until the new last entry's address is bigger than the current address
-			while (!history.isEmpty() && history.getLast().address() <= address) {
-				history.removeLast();
+			int newCount = count;
+			while (newCount > 0 && addresses[newCount - 1] <= address) {
+				newCount--;
 			}
+			truncate(newCount);
 		}
 		
 		public void dropBefore(long address) {
 			// Pop until the new last entry's address is bigger or equal to the current address
-			while (!history.isEmpty() && history.getLast().address() < address) {
-				history.removeLast();
+			int newCount = count;
+			while (newCount > 0 && addresses[newCount - 1] < address) {
+				newCount--;
 			}
+			truncate(newCount);
 		}
 		
-		public record StackEntry(long value, long address, @NotNull ValueSize size) {}
+		public void clear() {
+			truncate(0);
+		}
 		
-	}
-	
-	public static class WrappedLinkedList<E> extends LinkedList<E> {
+		private void truncate(int newCount) {
+			if (newCount == count) {
+				return;
+			}
+			// Release the references of the dropped entries
+			Arrays.fill(sizes, newCount, count, null);
+			count = newCount;
+			modCount++;
+		}
 		
-		public int getModCount() {
-			return modCount;
+		public long getValue(int index) {
+			return values[index];
 		}
 		
+		public long getAddress(int index) {
+			return addresses[index];
+		}
+		
+		@NotNull
+		public ValueSize getSize(int index) {
+			return sizes[index];
+		}
+		
+		public long getId(int index) {
+			return ids[index];
+		}
+		
+		@NotNull
+		public StackEntry get(int index) {
+			return new StackEntry(values[index], addresses[index], sizes[index]);
+		}
+		
+		/**
+		 * Finds how many of the oldest entries a copy of the history still shares with it
+		 * <p>
+		 * The ids grow from the oldest to the newest entry and a popped entry never comes back,
+		 * so once an id differs all following ones differ as well.
+		 * </p>
+		 *
+		 * @param ids   The ids of the copy, oldest first
+		 * @param count The number of entries in the copy
+		 * @return the number of shared entries
+		 */
+		public int commonPrefix(@NotNull long[] ids, int count) {
+			int low = 0;
+			int high = Math.min(count, this.count);
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (ids[mid] == this.ids[mid]) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+		
+		public record StackEntry(long value, long address, @NotNull ValueSize size) {}
+		
 	}
 	
 }
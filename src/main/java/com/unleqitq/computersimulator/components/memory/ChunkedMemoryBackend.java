@@ -0,0 +1,194 @@
+package com.unleqitq.computersimulator.components.memory;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Keeps the memory in byte buffers outside of the heap.
+ * <p>
+ * A buffer is limited to 2 GiB, so the memory is split into chunks of {@code 1 << CHUNK_SHIFT}
+ * bytes. Values within a chunk are single buffer accesses, the rare values crossing a chunk
+ * boundary are assembled from bytes.
+ * </p>
+ */
+public abstract class ChunkedMemoryBackend implements MemoryBackend {
+	
+	public static final int CHUNK_SHIFT = 30;
+	
+	protected static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+	
+	protected final long size;
+	
+	/**
+	 * The buffers of the chunks, all but the last {@link #CHUNK_SIZE} long, little endian
+	 */
+	@NotNull
+	protected final ByteBuffer[] chunks;
+	
+	protected ChunkedMemoryBackend(long size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Invalid size: " + size);
+		}
+		this.size = size;
+		this.chunks = new ByteBuffer[chunkCount(size)];
+	}
+	
+	protected static int chunkCount(long size) {
+		return (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+	}
+	
+	/**
+	 * @return the size of a chunk
+	 */
+	protected static int chunkSize(long size, int chunk) {
+		return (int) Math.min(CHUNK_SIZE, size - ((long) chunk << CHUNK_SHIFT));
+	}
+	
+	@Override
+	public long size() {
+		return size;
+	}
+	
+	@NotNull
+	private ByteBuffer chunk(long index) {
+		return chunks[(int) (index >>> CHUNK_SHIFT)];
+	}
+	
+	/**
+	 * @return whether a value of the length at the index lies within one chunk
+	 */
+	private static boolean inChunk(long index, int length) {
+		return ((int) index & CHUNK_MASK) <= CHUNK_SIZE - length;
+	}
+	
+	@Override
+	public byte getByte(long index) {
+		return chunk(index).get((int) index & CHUNK_MASK);
+	}
+	
+	@Override
+	public void setByte(long index, byte value) {
+		chunk(index).put((int) index & CHUNK_MASK, value);
+	}
+	
+	@Override
+	public short getShort(long index) {
+		if (inChunk(index, 2)) {
+			return chunk(index).getShort((int) index & CHUNK_MASK);
+		}
+		return (short) getSplit(index, 2);
+	}
+	
+	@Override
+	public void setShort(long index, short value) {
+		if (inChunk(index, 2)) {
+			chunk(index).putShort((int) index & CHUNK_MASK, value);
+			return;
+		}
+		setSplit(index, 2, value);
+	}
+	
+	@Override
+	public int getInt(long index) {
+		if (inChunk(index, 4)) {
+			return chunk(index).getInt((int) index & CHUNK_MASK);
+		}
+		return (int) getSplit(index, 4);
+	}
+	
+	@Override
+	public void setInt(long index, int value) {
+		if (inChunk(index, 4)) {
+			chunk(index).putInt((int) index & CHUNK_MASK, value);
+			return;
+		}
+		setSplit(index, 4, value);
+	}
+	
+	@Override
+	public long getLong(long index) {
+		if (inChunk(index, 8)) {
+			return chunk(index).getLong((int) index & CHUNK_MASK);
+		}
+		return getSplit(index, 8);
+	}
+	
+	@Override
+	public void setLong(long index, long value) {
+		if (inChunk(index, 8)) {
+			chunk(index).putLong((int) index & CHUNK_MASK, value);
+			return;
+		}
+		setSplit(index, 8, value);
+	}
+	
+	/**
+	 * Reads a value crossing a chunk boundary byte by byte
+	 */
+	private long getSplit(long index, int length) {
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			value |= (getByte(index + i) & 0xFFL) << (i * 8);
+		}
+		return value;
+	}
+	
+	private void setSplit(long index, int length, long value) {
+		for (int i = 0; i < length; i++) {
+			setByte(index + i, (byte) (value >>> (i * 8)));
+		}
+	}
+	
+	@Override
+	public void read(long index, @NotNull byte[] destination, int offset, int length) {
+		while (length > 0) {
+			int position = (int) index & CHUNK_MASK;
+			int count = (int) Math.min(length, CHUNK_SIZE - position);
+			chunk(index).get(position, destination, offset, count);
+			index += count;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void write(long index, @NotNull byte[] source, int offset, int length) {
+		while (length > 0) {
+			int position = (int) index & CHUNK_MASK;
+			int count = (int) Math.min(length, CHUNK_SIZE - position);
+			chunk(index).put(position, source, offset, count);
+			index += count;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void readInts(long index, @NotNull int[] destination, int offset, int length) {
+		if (inChunk(index, length * 4)) {
+			chunk(index).slice((int) index & CHUNK_MASK, length * 4)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.asIntBuffer()
+				.get(destination, offset, length);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			destination[offset + i] = getInt(index + i * 4L);
+		}
+	}
+	
+	@Override
+	public void clear() {
+		byte[] zeros = new byte[1 << 16];
+		for (ByteBuffer chunk : chunks) {
+			for (int position = 0; position < chunk.capacity(); position += zeros.length) {
+				chunk.put(position, zeros, 0, Math.min(zeros.length, chunk.capacity() - position));
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,22 @@
+package com.unleqitq.computersimulator.components.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Keeps the memory in direct (off-heap) buffers.
+ * <p>
+ * The buffers are not scanned or moved by the GC, they are freed by the GC once the memory is
+ * unreachable.
+ * </p>
+ */
+public class DirectMemoryBackend extends ChunkedMemoryBackend {
+	
+	public DirectMemoryBackend(long size) {
+		super(size);
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = ByteBuffer.allocateDirect(chunkSize(size, i)).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+	
+}
@@ -0,0 +1,112 @@
+package com.unleqitq.computersimulator.components.memory;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Keeps the memory in a single byte array on the heap.
+ * <p>
+ * Words, dwords and qwords are accessed through byte array views, which the JIT compiles to
+ * single (unaligned) loads and stores instead of one access per byte. The views check the
+ * bounds of the array like any array access.
+ * </p>
+ */
+public class HeapMemoryBackend implements MemoryBackend {
+	
+	/**
+	 * The largest array the JVM reliably allocates
+	 */
+	public static final long MAX_SIZE = Integer.MAX_VALUE - 8;
+	
+	private static final VarHandle SHORT =
+		MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT =
+		MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG =
+		MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	@NotNull
+	private final byte[] data;
+	
+	public HeapMemoryBackend(long size) {
+		if (size < 0 || size > MAX_SIZE) {
+			throw new IllegalArgumentException(
+				"Invalid size for a heap memory: " + size + " (use a direct memory above 2 GiB)");
+		}
+		this.data = new byte[(int) size];
+	}
+	
+	@Override
+	public long size() {
+		return data.length;
+	}
+	
+	@Override
+	public byte getByte(long index) {
+		return data[(int) index];
+	}
+	
+	@Override
+	public void setByte(long index, byte value) {
+		data[(int) index] = value;
+	}
+	
+	@Override
+	public short getShort(long index) {
+		return (short) SHORT.get(data, (int) index);
+	}
+	
+	@Override
+	public void setShort(long index, short value) {
+		SHORT.set(data, (int) index, value);
+	}
+	
+	@Override
+	public int getInt(long index) {
+		return (int) INT.get(data, (int) index);
+	}
+	
+	@Override
+	public void setInt(long index, int value) {
+		INT.set(data, (int) index, value);
+	}
+	
+	@Override
+	public long getLong(long index) {
+		return (long) LONG.get(data, (int) index);
+	}
+	
+	@Override
+	public void setLong(long index, long value) {
+		LONG.set(data, (int) index, value);
+	}
+	
+	@Override
+	public void read(long index, @NotNull byte[] destination, int offset, int length) {
+		System.arraycopy(data, (int) index, destination, offset, length);
+	}
+	
+	@Override
+	public void write(long index, @NotNull byte[] source, int offset, int length) {
+		System.arraycopy(source, offset, data, (int) index, length);
+	}
+	
+	@Override
+	public void readInts(long index, @NotNull int[] destination, int offset, int length) {
+		ByteBuffer.wrap(data, (int) index, length * 4)
+			.order(ByteOrder.LITTLE_ENDIAN)
+			.asIntBuffer()
+			.get(destination, offset, length);
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(data, (byte) 0);
+	}
+	
+}
@@ -0,0 +1,125 @@
+package com.unleqitq.computersimulator.components.memory;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Maps a file into the memory, the memory is the content of the file.
+ * <p>
+ * The operating system loads the pages of the file when they are accessed and keeps them in its
+ * page cache, so an image does not have to fit into the heap and loading it takes no time.
+ * See {@link Mode} for what happens to writes.
+ * The mapping stays valid until the memory is unreachable, {@link #close()} writes the changes
+ * of a {@link Mode#READ_WRITE} mapping to the file.
+ * </p>
+ */
+@Accessors (fluent = true)
+public class MappedFileMemoryBackend extends ChunkedMemoryBackend implements Closeable {
+	
+	@Getter
+	@NotNull
+	private final File file;
+	
+	@Getter
+	@NotNull
+	private final Mode mode;
+	
+	/**
+	 * Maps a file
+	 *
+	 * @param file The file, created if missing in {@link Mode#READ_WRITE}
+	 * @param size The size of the memory, 0 to use the size of the file.
+	 *             In {@link Mode#READ_WRITE} a smaller file is extended with zeros,
+	 *             the other modes need a file at least this large
+	 * @param mode What happens to writes
+	 */
+	public MappedFileMemoryBackend(@NotNull File file, long size, @NotNull Mode mode)
+		throws IOException {
+		super(size > 0 ? size : file.length());
+		this.file = file;
+		this.mode = mode;
+		if (mode != Mode.READ_WRITE && this.size > file.length()) {
+			throw new IllegalArgumentException(
+				"The file %s is smaller than the memory (%d < %d bytes)".formatted(file, file.length(),
+					this.size));
+		}
+		try (FileChannel channel = mode == Mode.READ_ONLY ?
+			FileChannel.open(file.toPath(), StandardOpenOption.READ) :
+			FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE)) {
+			for (int i = 0; i < chunks.length; i++) {
+				chunks[i] = channel.map(mode.mapMode, (long) i << CHUNK_SHIFT, chunkSize(this.size, i))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+	
+	/**
+	 * @throws ReadOnlyBufferException if the mapping is {@link Mode#READ_ONLY}
+	 */
+	@Override
+	public void clear() {
+		if (mode == Mode.READ_ONLY) {
+			throw new ReadOnlyBufferException();
+		}
+		super.clear();
+	}
+	
+	@Override
+	public boolean readOnly() {
+		return mode == Mode.READ_ONLY;
+	}
+	
+	/**
+	 * Writes the changes of a {@link Mode#READ_WRITE} mapping to the file
+	 */
+	public void flush() {
+		if (mode == Mode.READ_WRITE) {
+			for (ByteBuffer chunk : chunks) {
+				((MappedByteBuffer) chunk).force();
+			}
+		}
+	}
+	
+	@Override
+	public void close() {
+		flush();
+	}
+	
+	public enum Mode {
+		/**
+		 * The memory passes the writes of the processor to its write trap (a protection fault)
+		 * instead, for images shared by many instances. The image has to contain the program
+		 */
+		READ_ONLY(FileChannel.MapMode.READ_ONLY),
+		/**
+		 * Writes change the file, the memory persists across runs
+		 */
+		READ_WRITE(FileChannel.MapMode.READ_WRITE),
+		/**
+		 * Writes change a private copy of the written pages, the file is left untouched.
+		 * The file still has to be writable
+		 */
+		PRIVATE(FileChannel.MapMode.PRIVATE),
+		;
+		
+		@NotNull
+		private final FileChannel.MapMode mapMode;
+		
+		Mode(@NotNull FileChannel.MapMode mapMode) {
+			this.mapMode = mapMode;
+		}
+	}
+	
+}
@@ -0,0 +1,90 @@
+package com.unleqitq.computersimulator.components.memory;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The storage of a {@link com.unleqitq.computersimulator.components.Memory}.
+ * <p>
+ * Values are little endian, indices are 64 bit. The memory checks the bounds before every access,
+ * so a backend may assume {@code 0 <= index} and {@code index + length <= size()}.
+ * Multi-byte values do not have to be aligned.
+ * </p>
+ */
+public interface MemoryBackend {
+	
+	/**
+	 * @return the size in bytes
+	 */
+	long size();
+	
+	byte getByte(long index);
+	
+	void setByte(long index, byte value);
+	
+	short getShort(long index);
+	
+	void setShort(long index, short value);
+	
+	int getInt(long index);
+	
+	void setInt(long index, int value);
+	
+	long getLong(long index);
+	
+	void setLong(long index, long value);
+	
+	/**
+	 * Copies bytes to an array
+	 */
+	void read(long index, @NotNull byte[] destination, int offset, int length);
+	
+	/**
+	 * Copies bytes from an array
+	 */
+	void write(long index, @NotNull byte[] source, int offset, int length);
+	
+	/**
+	 * Copies consecutive dwords to an int array
+	 */
+	void readInts(long index, @NotNull int[] destination, int offset, int length);
+	
+	/**
+	 * Sets all bytes to 0
+	 */
+	void clear();
+	
+	/**
+	 * @return whether the data cannot be changed, writes to such a backend must not reach it
+	 */
+	default boolean readOnly() {
+		return false;
+	}
+	
+	enum Type {
+		/**
+		 * A byte array on the heap, the fastest for small memories, limited to below 2 GiB
+		 */
+		HEAP,
+		/**
+		 * Direct buffers outside of the heap, not scanned or copied by the GC and not limited in size
+		 * (but by {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size)
+		 */
+		DIRECT,
+		/**
+		 * Pages on the heap allocated on the first write, for large address spaces of which only a
+		 * small part is used
+		 */
+		SPARSE,
+		;
+		
+		@NotNull
+		public MemoryBackend create(long size) {
+			return switch (this) {
+				case HEAP -> new HeapMemoryBackend(size);
+				case DIRECT -> new DirectMemoryBackend(size);
+				case SPARSE -> new SparseMemoryBackend(size);
+			};
+		}
+	}
+	
+}
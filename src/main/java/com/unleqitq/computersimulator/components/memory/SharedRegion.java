@@ -0,0 +1,95 @@
+package com.unleqitq.computersimulator.components.memory;
+
+import com.unleqitq.computersimulator.ValueSize;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Read-only bytes (e.g. assembled code and libraries) shared by any number of memories.
+ * <p>
+ * The bytes are copied once on creation and never written afterwards, so a region can be mapped
+ * into the memories of many simulators on any thread without copying it again
+ * (see {@link com.unleqitq.computersimulator.components.Memory#mapShared}).
+ * Writes to a mapped region are trapped by the memory.
+ * </p>
+ */
+@Accessors (fluent = true)
+public final class SharedRegion {
+	
+	private static final VarHandle SHORT =
+		MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT =
+		MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG =
+		MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	/**
+	 * A name shown in the views, e.g. the file the bytes were assembled from
+	 */
+	@Getter
+	@NotNull
+	private final String name;
+	
+	@NotNull
+	private final byte[] data;
+	
+	private SharedRegion(@NotNull String name, @NotNull byte[] data) {
+		this.name = name;
+		this.data = data;
+	}
+	
+	/**
+	 * Creates a region from a copy of the bytes
+	 */
+	@NotNull
+	public static SharedRegion of(@NotNull String name, @NotNull byte[] data) {
+		return of(name, data, 0, data.length);
+	}
+	
+	@NotNull
+	public static SharedRegion of(@NotNull String name, @NotNull byte[] data, int offset,
+		int length) {
+		if (length <= 0) {
+			throw new IllegalArgumentException("Empty region: " + name);
+		}
+		return new SharedRegion(name, Arrays.copyOfRange(data, offset, offset + length));
+	}
+	
+	public int size() {
+		return data.length;
+	}
+	
+	/**
+	 * Reads a little endian value, parts beyond the end of the region read as 0
+	 *
+	 * @param offset The offset of the first byte in the region
+	 * @return the value, zero extended
+	 */
+	public long read(long offset, @NotNull ValueSize size) {
+		int length = size.getSize();
+		if (offset < 0 || offset > data.length - length) {
+			long value = 0;
+			for (int i = 0; i < length; i++) {
+				long index = offset + i;
+				if (index >= 0 && index < data.length) {
+					value |= (data[(int) index] & 0xFFL) << (i * 8);
+				}
+			}
+			return value;
+		}
+		int index = (int) offset;
+		return switch (size) {
+			case BYTE -> data[index] & 0xFFL;
+			case WORD -> (short) SHORT.get(data, index) & 0xFFFFL;
+			case DWORD -> (int) INT.get(data, index) & 0xFFFFFFFFL;
+			case QWORD -> (long) LONG.get(data, index);
+		};
+	}
+	
+}
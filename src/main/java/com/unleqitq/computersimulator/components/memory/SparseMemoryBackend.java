@@ -0,0 +1,245 @@
+package com.unleqitq.computersimulator.components.memory;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Allocates the memory page by page on the first write.
+ * <p>
+ * Reads of pages that were never written return 0 without allocating, clearing drops all pages.
+ * Creating and clearing a memory of many gigabytes is therefore cheap, only the pages a program
+ * touches take space on the heap.
+ * The pages are found through a directory of {@code 1 << DIRECTORY_SHIFT} pages per entry, the
+ * entries are allocated with their first page as well.
+ * </p>
+ */
+public class SparseMemoryBackend implements MemoryBackend {
+	
+	public static final int PAGE_SHIFT = 16;
+	
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	
+	private static final int DIRECTORY_SHIFT = 10;
+	
+	private static final int DIRECTORY_MASK = (1 << DIRECTORY_SHIFT) - 1;
+	
+	private static final VarHandle SHORT =
+		MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT =
+		MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG =
+		MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	private final long size;
+	
+	/**
+	 * The pages by their number, split into directory entries
+	 */
+	@NotNull
+	private byte[][][] directory;
+	
+	/**
+	 * The number of allocated pages
+	 */
+	private long allocatedPages = 0;
+	
+	public SparseMemoryBackend(long size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Invalid size: " + size);
+		}
+		this.size = size;
+		this.directory = newDirectory();
+	}
+	
+	@NotNull
+	private byte[][][] newDirectory() {
+		long pages = (size + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+		return new byte[(int) ((pages + DIRECTORY_MASK) >>> DIRECTORY_SHIFT)][][];
+	}
+	
+	@Override
+	public long size() {
+		return size;
+	}
+	
+	/**
+	 * @return the number of bytes allocated for pages
+	 */
+	public long allocatedBytes() {
+		return allocatedPages << PAGE_SHIFT;
+	}
+	
+	/**
+	 * @return the page containing the index, or null if it was never written
+	 */
+	@Nullable
+	private byte[] page(long index) {
+		long page = index >>> PAGE_SHIFT;
+		byte[][] entry = directory[(int) (page >>> DIRECTORY_SHIFT)];
+		return entry == null ? null : entry[(int) page & DIRECTORY_MASK];
+	}
+	
+	/**
+	 * @return the page containing the index, allocated if it was never written
+	 */
+	@NotNull
+	private byte[] writablePage(long index) {
+		long page = index >>> PAGE_SHIFT;
+		int entryIndex = (int) (page >>> DIRECTORY_SHIFT);
+		byte[][] entry = directory[entryIndex];
+		if (entry == null) {
+			entry = new byte[1 << DIRECTORY_SHIFT][];
+			directory[entryIndex] = entry;
+		}
+		byte[] data = entry[(int) page & DIRECTORY_MASK];
+		if (data == null) {
+			data = new byte[PAGE_SIZE];
+			entry[(int) page & DIRECTORY_MASK] = data;
+			allocatedPages++;
+		}
+		return data;
+	}
+	
+	/**
+	 * @return whether a value of the length at the index lies within one page
+	 */
+	private static boolean inPage(long index, int length) {
+		return ((int) index & PAGE_MASK) <= PAGE_SIZE - length;
+	}
+	
+	@Override
+	public byte getByte(long index) {
+		byte[] page = page(index);
+		return page == null ? 0 : page[(int) index & PAGE_MASK];
+	}
+	
+	@Override
+	public void setByte(long index, byte value) {
+		writablePage(index)[(int) index & PAGE_MASK] = value;
+	}
+	
+	@Override
+	public short getShort(long index) {
+		if (!inPage(index, 2)) {
+			return (short) getSplit(index, 2);
+		}
+		byte[] page = page(index);
+		return page == null ? 0 : (short) SHORT.get(page, (int) index & PAGE_MASK);
+	}
+	
+	@Override
+	public void setShort(long index, short value) {
+		if (!inPage(index, 2)) {
+			setSplit(index, 2, value);
+			return;
+		}
+		SHORT.set(writablePage(index), (int) index & PAGE_MASK, value);
+	}
+	
+	@Override
+	public int getInt(long index) {
+		if (!inPage(index, 4)) {
+			return (int) getSplit(index, 4);
+		}
+		byte[] page = page(index);
+		return page == null ? 0 : (int) INT.get(page, (int) index & PAGE_MASK);
+	}
+	
+	@Override
+	public void setInt(long index, int value) {
+		if (!inPage(index, 4)) {
+			setSplit(index, 4, value);
+			return;
+		}
+		INT.set(writablePage(index), (int) index & PAGE_MASK, value);
+	}
+	
+	@Override
+	public long getLong(long index) {
+		if (!inPage(index, 8)) {
+			return getSplit(index, 8);
+		}
+		byte[] page = page(index);
+		return page == null ? 0 : (long) LONG.get(page, (int) index & PAGE_MASK);
+	}
+	
+	@Override
+	public void setLong(long index, long value) {
+		if (!inPage(index, 8)) {
+			setSplit(index, 8, value);
+			return;
+		}
+		LONG.set(writablePage(index), (int) index & PAGE_MASK, value);
+	}
+	
+	/**
+	 * Reads a value crossing a page boundary byte by byte
+	 */
+	private long getSplit(long index, int length) {
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			value |= (getByte(index + i) & 0xFFL) << (i * 8);
+		}
+		return value;
+	}
+	
+	private void setSplit(long index, int length, long value) {
+		for (int i = 0; i < length; i++) {
+			setByte(index + i, (byte) (value >>> (i * 8)));
+		}
+	}
+	
+	@Override
+	public void read(long index, @NotNull byte[] destination, int offset, int length) {
+		while (length > 0) {
+			int position = (int) index & PAGE_MASK;
+			int count = Math.min(length, PAGE_SIZE - position);
+			byte[] page = page(index);
+			if (page == null) {
+				Arrays.fill(destination, offset, offset + count, (byte) 0);
+			}
+			else {
+				System.arraycopy(page, position, destination, offset, count);
+			}
+			index += count;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void write(long index, @NotNull byte[] source, int offset, int length) {
+		while (length > 0) {
+			int position = (int) index & PAGE_MASK;
+			int count = Math.min(length, PAGE_SIZE - position);
+			System.arraycopy(source, offset, writablePage(index), position, count);
+			index += count;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void readInts(long index, @NotNull int[] destination, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			destination[offset + i] = getInt(index + i * 4L);
+		}
+	}
+	
+	/**
+	 * Drops all pages
+	 */
+	@Override
+	public void clear() {
+		directory = newDirectory();
+		allocatedPages = 0;
+	}
+	
+}
@@ -0,0 +1,335 @@
+package com.unleqitq.computersimulator.devices;
+
+import com.unleqitq.computersimulator.components.DeviceAccessor;
+import com.unleqitq.computersimulator.components.Memory;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A 2D graphics coprocessor that executes batches of drawing commands directly on a pixel buffer.
+ * <p>
+ * The program writes command descriptors to a ring in the memory and rings the doorbell
+ * with its producer index, the device then executes all descriptors from its consumer index
+ * (the head) up to the producer index. Both indices are free running,
+ * the slot of an index is {@code index % ringSize}.
+ * </p>
+ * <p>
+ * A descriptor is {@value #DESCRIPTOR_SIZE} bytes long:
+ * <pre>
+ * 0x00 byte  command (see {@link Command})
+ * 0x02 word  x
+ * 0x04 word  y
+ * 0x06 word  width (x of the end point for lines)
+ * 0x08 word  height (y of the end point for lines)
+ * 0x0C dword color (0xRRGGBB), the transparent color for sprites
+ * 0x10 qword source address (linear, one dword per pixel, row by row)
+ * 0x18 dword source stride in pixels (0 to use the width)
+ * </pre>
+ * </p>
+ */
+public class BlitterDevice extends DeviceAccessor.AbstractDevice {
+	
+	public static final long DEFAULT_PORT = 0x8030L;
+	
+	public static final int DESCRIPTOR_SIZE = 0x20;
+	
+	@NotNull
+	private final Memory memory;
+	
+	@NotNull
+	private final Target target;
+	
+	/**
+	 * The (linear) address of the ring
+	 */
+	@Getter
+	private long ringAddress = 0;
+	
+	/**
+	 * The number of descriptors in the ring
+	 */
+	@Getter
+	private long ringSize = 0;
+	
+	/**
+	 * The index of the next descriptor to execute
+	 */
+	@Getter
+	private long head = 0;
+	
+	/**
+	 * The number of executed commands
+	 */
+	@Getter
+	private long executedCount = 0;
+	
+	/**
+	 * Buffer for a row of a sprite
+	 */
+	@NotNull
+	private int[] rowBuffer = new int[0];
+	
+	public BlitterDevice(@NotNull Memory memory, @NotNull Target target) {
+		super("Blitter");
+		this.memory = memory;
+		this.target = target;
+	}
+	
+	@Override
+	public long read(long address) {
+		InputAction action = InputAction.of(address);
+		if (action == null) {
+			return 0;
+		}
+		return switch (action) {
+			case HEAD -> head;
+			case EXECUTED_COUNT -> executedCount;
+		};
+	}
+	
+	@Override
+	public void write(long address, long data) {
+		OutputAction action = OutputAction.of(address);
+		if (action == null) {
+			return;
+		}
+		switch (action) {
+			case SET_RING_ADDRESS -> ringAddress = data;
+			case SET_RING_SIZE -> ringSize = data;
+			case DOORBELL -> execute(data & 0xFFFFFFFFL);
+			case RESET -> head = 0;
+		}
+	}
+	
+	/**
+	 * Executes all descriptors up to the producer index
+	 *
+	 * @param tail The producer index
+	 */
+	private void execute(long tail) {
+		if (ringSize <= 0) {
+			return;
+		}
+		if (((tail - head) & 0xFFFFFFFFL) > ringSize) {
+			System.err.println("Blitter: producer index " + tail + " is more than a ring ahead of " + head);
+			return;
+		}
+		int[] pixels = target.pixels();
+		int width = target.width();
+		int height = target.height();
+		while (head != tail) {
+			long descriptor = ringAddress + (head % ringSize) * DESCRIPTOR_SIZE;
+			executeDescriptor(descriptor, pixels, width, height);
+			head = (head + 1) & 0xFFFFFFFFL;
+			executedCount++;
+		}
+		target.changed();
+	}
+	
+	private void executeDescriptor(long descriptor, int[] pixels, int width, int height) {
+		Command command = Command.of(memory.readByte(descriptor));
+		if (command == null) {
+			return;
+		}
+		int x = (int) memory.readWord(descriptor + 0x2);
+		int y = (int) memory.readWord(descriptor + 0x4);
+		int w = (int) memory.readWord(descriptor + 0x6);
+		int h = (int) memory.readWord(descriptor + 0x8);
+		int color = (int) (memory.readDword(descriptor + 0xC) & 0xFFFFFF);
+		switch (command) {
+			case FILL_RECT -> {
+				fillRect(pixels, width, height, x, y, w, h, color);
+				target.dirty(x, y, w, h);
+			}
+			case COPY_RECT, DRAW_SPRITE -> {
+				long source = memory.readQword(descriptor + 0x10);
+				int stride = (int) memory.readDword(descriptor + 0x18);
+				if (stride <= 0) {
+					stride = w;
+				}
+				copyRect(pixels, width, height, x, y, w, h, source, stride,
+					command == Command.DRAW_SPRITE, color);
+				target.dirty(x, y, w, h);
+			}
+			case DRAW_LINE -> {
+				drawLine(pixels, width, height, x, y, w, h, color);
+				// The end point is stored in place of the size
+				target.dirty(Math.min(x, w), Math.min(y, h), Math.abs(w - x) + 1, Math.abs(h - y) + 1);
+			}
+		}
+	}
+	
+	private static void fillRect(int[] pixels, int width, int height, int x, int y, int w, int h,
+		int color) {
+		int x1 = Math.min(x + w, width);
+		int y1 = Math.min(y + h, height);
+		if (x >= x1) {
+			return;
+		}
+		for (int row = y; row < y1; row++) {
+			Arrays.fill(pixels, row * width + x, row * width + x1, color);
+		}
+	}
+	
+	private void copyRect(int[] pixels, int width, int height, int x, int y, int w, int h,
+		long source, int stride, boolean transparent, int transparentColor) {
+		int visibleWidth = Math.min(x + w, width) - x;
+		int y1 = Math.min(y + h, height);
+		if (visibleWidth <= 0) {
+			return;
+		}
+		if (transparent && rowBuffer.length < visibleWidth) {
+			rowBuffer = new int[visibleWidth];
+		}
+		for (int row = y; row < y1; row++) {
+			long rowAddress = source + (long) (row - y) * stride * 4;
+			if (!transparent) {
+				memory.readDwords(rowAddress, pixels, row * width + x, visibleWidth);
+				continue;
+			}
+			memory.readDwords(rowAddress, rowBuffer, 0, visibleWidth);
+			int offset = row * width + x;
+			for (int i = 0; i < visibleWidth; i++) {
+				int color = rowBuffer[i] & 0xFFFFFF;
+				if (color != transparentColor) {
+					pixels[offset + i] = color;
+				}
+			}
+		}
+	}
+	
+	private static void drawLine(int[] pixels, int width, int height, int x0, int y0, int x1, int y1,
+		int color) {
+		// Bresenham's line algorithm
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int sx = x0 < x1 ? 1 : -1;
+		int sy = y0 < y1 ? 1 : -1;
+		int error = dx + dy;
+		while (true) {
+			if (x0 < width && y0 < height) {
+				pixels[y0 * width + x0] = color;
+			}
+			if (x0 == x1 && y0 == y1) {
+				break;
+			}
+			int e2 = 2 * error;
+			if (e2 >= dy) {
+				error += dy;
+				x0 += sx;
+			}
+			if (e2 <= dx) {
+				error += dx;
+				y0 += sy;
+			}
+		}
+	}
+	
+	/**
+	 * The pixel buffer the commands are executed on
+	 */
+	public interface Target {
+		
+		/**
+		 * @return the pixels (0xRRGGBB), row by row
+		 */
+		@NotNull
+		int[] pixels();
+		
+		int width();
+		
+		int height();
+		
+		/**
+		 * Called after a batch of commands was executed
+		 */
+		default void changed() {
+			// Do nothing
+		}
+		
+		/**
+		 * Called after a command changed pixels within the rectangle
+		 */
+		default void dirty(int x, int y, int width, int height) {
+			// Do nothing
+		}
+		
+	}
+	
+	@Getter
+	public enum Command {
+		FILL_RECT(0x1),
+		COPY_RECT(0x2),
+		DRAW_LINE(0x3),
+		DRAW_SPRITE(0x4),
+		;
+		
+		private final long value;
+		
+		@NotNull
+		private static final Map<Long, Command> map = Arrays.stream(values())
+			.collect(Collectors.toMap(Command::getValue, Function.identity()));
+		
+		Command(long value) {
+			this.value = value;
+		}
+		
+		@Nullable
+		public static Command of(long value) {
+			return map.get(value);
+		}
+	}
+	
+	@Getter
+	public enum OutputAction {
+		SET_RING_ADDRESS(0x0L),
+		SET_RING_SIZE(0x1L),
+		DOORBELL(0x2L),
+		RESET(0x3L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, OutputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
+		
+		OutputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static OutputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+	@Getter
+	public enum InputAction {
+		HEAD(0x0L),
+		EXECUTED_COUNT(0x1L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, InputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
+		
+		InputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static InputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+}
@@ -0,0 +1,227 @@
+package com.unleqitq.computersimulator.devices;
+
+import com.unleqitq.computersimulator.components.DeviceAccessor;
+import com.unleqitq.computersimulator.components.Memory;
+import com.unleqitq.computersimulator.utils.MessageRingBuffer;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Sends and receives messages to and from the other nodes of a {@link ChannelNetwork}.
+ * <p>
+ * The program sets the address and length of the buffer (and the destination for sends),
+ * then sends or receives, the message is copied from or to the memory as a whole.
+ * Nothing blocks, a full queue or no waiting message is reported by the status.
+ * </p>
+ */
+public class ChannelDevice extends DeviceAccessor.AbstractDevice {
+	
+	public static final long DEFAULT_PORT = 0x8060L;
+	
+	@NotNull
+	private final Memory memory;
+	
+	@NotNull
+	private final ChannelNetwork network;
+	
+	@Getter
+	private final int node;
+	
+	@Getter
+	private long bufferAddress;
+	@Getter
+	private long bufferLength;
+	@Getter
+	private long destination;
+	
+	/**
+	 * The node the next receive checks first, so no sender is preferred
+	 */
+	private int nextSource = 0;
+	
+	@Getter
+	private long receivedLength;
+	@Getter
+	private long receivedSource;
+	
+	@Getter
+	@NotNull
+	private Status status = Status.IDLE;
+	
+	ChannelDevice(@NotNull Memory memory, @NotNull ChannelNetwork network, int node) {
+		super("Channel " + node);
+		this.memory = memory;
+		this.network = network;
+		this.node = node;
+	}
+	
+	@Override
+	public long read(long address) {
+		InputAction action = InputAction.of(address);
+		if (action == null) {
+			return 0;
+		}
+		return switch (action) {
+			case NODE -> node;
+			case NODE_COUNT -> network.nodeCount();
+			case STATUS -> status.getValue();
+			case RECEIVED_LENGTH -> receivedLength;
+			case RECEIVED_SOURCE -> receivedSource;
+			case PENDING -> pending();
+		};
+	}
+	
+	@Override
+	public void write(long address, long data) {
+		OutputAction action = OutputAction.of(address);
+		if (action == null) {
+			return;
+		}
+		switch (action) {
+			case SET_BUFFER_ADDRESS -> bufferAddress = data;
+			case SET_BUFFER_LENGTH -> bufferLength = data;
+			case SET_DESTINATION -> destination = data;
+			case SEND -> send();
+			case RECEIVE -> receive();
+		}
+	}
+	
+	private void send() {
+		if (destination < 0 || destination >= network.nodeCount() || destination == node ||
+			bufferLength < 0 || bufferLength > network.maxMessageSize()) {
+			status = Status.ERROR;
+			return;
+		}
+		MessageRingBuffer queue = network.queues()[node][(int) destination];
+		byte[] message = queue.claim();
+		if (message == null) {
+			status = Status.FULL;
+			return;
+		}
+		int length = (int) bufferLength;
+		int read = memory.read(bufferAddress, message, 0, length);
+		// The slot is reused, bytes outside the memory are sent as 0
+		Arrays.fill(message, read, length, (byte) 0);
+		queue.publish(length);
+		status = Status.DONE;
+	}
+	
+	private void receive() {
+		int count = network.nodeCount();
+		for (int i = 0; i < count; i++) {
+			int source = (nextSource + i) % count;
+			if (source == node) {
+				continue;
+			}
+			MessageRingBuffer queue = network.queues()[source][node];
+			int messageLength = queue.frontLength();
+			if (messageLength < 0) {
+				continue;
+			}
+			nextSource = (source + 1) % count;
+			// Longer messages are truncated to the buffer
+			int length = (int) Math.min(messageLength, Math.max(0, bufferLength));
+			memory.write(bufferAddress, queue.front(), 0, length);
+			queue.remove();
+			receivedLength = messageLength;
+			receivedSource = source;
+			status = Status.DONE;
+			return;
+		}
+		receivedLength = 0;
+		status = Status.EMPTY;
+	}
+	
+	/**
+	 * @return the number of messages waiting for this node
+	 */
+	private long pending() {
+		long pending = 0;
+		for (int source = 0; source < network.nodeCount(); source++) {
+			if (source != node) {
+				pending += network.queues()[source][node].size();
+			}
+		}
+		return pending;
+	}
+	
+	@Getter
+	public enum Status {
+		IDLE(0x0L),
+		DONE(0x1L),
+		ERROR(0x2L),
+		/**
+		 * The queue to the destination is full, the message was not sent
+		 */
+		FULL(0x3L),
+		/**
+		 * No message was waiting
+		 */
+		EMPTY(0x4L),
+		;
+		
+		private final long value;
+		
+		Status(long value) {
+			this.value = value;
+		}
+	}
+	
+	@Getter
+	public enum OutputAction {
+		SET_BUFFER_ADDRESS(0x0L),
+		SET_BUFFER_LENGTH(0x1L),
+		SET_DESTINATION(0x2L),
+		SEND(0x10L),
+		RECEIVE(0x11L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, OutputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
+		
+		OutputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static OutputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+	@Getter
+	public enum InputAction {
+		NODE(0x0L),
+		NODE_COUNT(0x1L),
+		STATUS(0x2L),
+		RECEIVED_LENGTH(0x3L),
+		RECEIVED_SOURCE(0x4L),
+		PENDING(0x5L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, InputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
+		
+		InputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static InputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+}
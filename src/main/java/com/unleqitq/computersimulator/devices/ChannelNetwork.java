@@ -0,0 +1,95 @@
+package com.unleqitq.computersimulator.devices;
+
+import com.unleqitq.computersimulator.ComputerSimulator;
+import com.unleqitq.computersimulator.utils.MessageRingBuffer;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Connects simulators in the same JVM, every simulator is a node with a {@link ChannelDevice}.
+ * <p>
+ * Each ordered pair of nodes has its own bounded queue, so every queue has exactly one sending
+ * and one receiving thread and no locks are needed while each simulator runs on its own thread.
+ * The messages are copied between the memories and buffers preallocated per slot of the queues.
+ * </p>
+ */
+@Accessors (fluent = true)
+@Getter
+public class ChannelNetwork {
+	
+	private final int nodeCount;
+	
+	/**
+	 * The maximum number of messages waiting in one queue
+	 */
+	private final int queueCapacity;
+	
+	/**
+	 * The maximum length of a message in bytes
+	 */
+	private final int maxMessageSize;
+	
+	/**
+	 * The queues from the first to the second node
+	 */
+	@NotNull
+	private final MessageRingBuffer[][] queues;
+	
+	@NotNull
+	private final ChannelDevice[] devices;
+	
+	public ChannelNetwork(int nodeCount, int queueCapacity, int maxMessageSize) {
+		this.nodeCount = nodeCount;
+		this.queueCapacity = queueCapacity;
+		this.maxMessageSize = maxMessageSize;
+		this.queues = new MessageRingBuffer[nodeCount][nodeCount];
+		for (int from = 0; from < nodeCount; from++) {
+			for (int to = 0; to < nodeCount; to++) {
+				if (from != to) {
+					queues[from][to] = new MessageRingBuffer(queueCapacity, maxMessageSize);
+				}
+			}
+		}
+		this.devices = new ChannelDevice[nodeCount];
+	}
+	
+	/**
+	 * Creates the device of a node and adds it to the simulator at {@link ChannelDevice#DEFAULT_PORT}
+	 *
+	 * @param computer The simulator of the node
+	 * @param node     The id of the node
+	 * @return the device
+	 */
+	@NotNull
+	public ChannelDevice connect(@NotNull ComputerSimulator computer, int node) {
+		if (node < 0 || node >= nodeCount) {
+			throw new IllegalArgumentException("Invalid node: " + node);
+		}
+		if (devices[node] != null) {
+			throw new IllegalStateException("Node " + node + " is already connected");
+		}
+		ChannelDevice device = new ChannelDevice(computer.memory(), this, node);
+		devices[node] = device;
+		computer.devices().addDevice(ChannelDevice.DEFAULT_PORT, device);
+		return device;
+	}
+	
+	/**
+	 * Starts a thread for every simulator running it until it exits
+	 *
+	 * @param computers The simulators
+	 * @return the started threads
+	 */
+	@NotNull
+	public static Thread[] start(@NotNull ComputerSimulator... computers) {
+		Thread[] threads = new Thread[computers.length];
+		for (int i = 0; i < computers.length; i++) {
+			ComputerSimulator computer = computers[i];
+			threads[i] = new Thread(computer::runUntilExit, "Simulator-" + i);
+			threads[i].start();
+		}
+		return threads;
+	}
+	
+}
@@ -0,0 +1,242 @@
+package com.unleqitq.computersimulator.devices;
+
+import com.unleqitq.computersimulator.components.DeviceAccessor;
+import com.unleqitq.computersimulator.components.Memory;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Text output device, the written bytes are collected in a buffer
+ * which is passed to the output stream on a newline, when it is full or on flush.
+ */
+public class ConsoleDevice extends DeviceAccessor.AbstractDevice
+	implements DeviceAccessor.IBulkDevice, Closeable {
+	
+	public static final long DEFAULT_PORT = 0x8040L;
+	
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 13;
+	
+	@NotNull
+	private final Memory memory;
+	
+	@NotNull
+	private final OutputStream output;
+	
+	/**
+	 * Whether the output stream is closed together with the device
+	 */
+	private final boolean ownsOutput;
+	
+	@NotNull
+	private final byte[] buffer;
+	
+	private int bufferSize = 0;
+	
+	/**
+	 * The (linear) address of the next block to write
+	 */
+	@Getter
+	private long blockAddress;
+	
+	/**
+	 * The number of bytes written
+	 */
+	@Getter
+	private long writtenCount;
+	
+	/**
+	 * @param memory     The memory blocks are written from
+	 * @param output     The stream to write to
+	 * @param ownsOutput Whether the stream is closed when the device is closed
+	 * @param bufferSize The size of the buffer, it is flushed when full
+	 */
+	public ConsoleDevice(@NotNull Memory memory, @NotNull OutputStream output, boolean ownsOutput,
+		int bufferSize) {
+		super("Console");
+		this.memory = memory;
+		this.output = output;
+		this.ownsOutput = ownsOutput;
+		this.buffer = new byte[bufferSize];
+	}
+	
+	public ConsoleDevice(@NotNull Memory memory) {
+		this(memory, System.out, false, DEFAULT_BUFFER_SIZE);
+	}
+	
+	@Override
+	public long read(long address) {
+		InputAction action = InputAction.of(address);
+		if (action == null) {
+			return 0;
+		}
+		return switch (action) {
+			case WRITTEN_COUNT -> writtenCount;
+		};
+	}
+	
+	@Override
+	public void write(long address, long data) {
+		OutputAction action = OutputAction.of(address);
+		if (action == null) {
+			return;
+		}
+		switch (action) {
+			case WRITE_CHAR -> writeByte((byte) data);
+			case SET_BLOCK_ADDRESS -> blockAddress = data;
+			case WRITE_BLOCK -> writeFromMemory(blockAddress, data);
+			case FLUSH -> flush();
+		}
+	}
+	
+	private void writeByte(byte value) {
+		buffer[bufferSize++] = value;
+		writtenCount++;
+		if (value == '\n' || bufferSize == buffer.length) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Writes a block of the memory, the memory is read directly into the buffer
+	 *
+	 * @param address The (linear) address of the first byte
+	 * @param length  The number of bytes
+	 */
+	private void writeFromMemory(long address, long length) {
+		boolean newline = false;
+		while (length > 0) {
+			int chunk = (int) Math.min(buffer.length - bufferSize, length);
+			int read = memory.read(address, buffer, bufferSize, chunk);
+			newline |= contains(buffer, bufferSize, read, (byte) '\n');
+			bufferSize += read;
+			writtenCount += read;
+			if (bufferSize == buffer.length) {
+				flush();
+			}
+			if (read < chunk) {
+				break;
+			}
+			address += read;
+			length -= read;
+		}
+		if (newline) {
+			flush();
+		}
+	}
+	
+	@Override
+	public int readBlock(long address, @NotNull byte[] buffer, int offset, int length) {
+		return 0;
+	}
+	
+	@Override
+	public int writeBlock(long address, @NotNull byte[] buffer, int offset, int length) {
+		boolean newline = false;
+		int remaining = length;
+		while (remaining > 0) {
+			int chunk = Math.min(this.buffer.length - bufferSize, remaining);
+			System.arraycopy(buffer, offset, this.buffer, bufferSize, chunk);
+			newline |= contains(this.buffer, bufferSize, chunk, (byte) '\n');
+			bufferSize += chunk;
+			if (bufferSize == this.buffer.length) {
+				flush();
+			}
+			offset += chunk;
+			remaining -= chunk;
+		}
+		writtenCount += length;
+		if (newline) {
+			flush();
+		}
+		return length;
+	}
+	
+	private static boolean contains(@NotNull byte[] array, int offset, int length, byte value) {
+		for (int i = offset; i < offset + length; i++) {
+			if (array[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Passes the buffered bytes to the output stream
+	 */
+	public void flush() {
+		try {
+			if (bufferSize > 0) {
+				output.write(buffer, 0, bufferSize);
+				bufferSize = 0;
+			}
+			output.flush();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		flush();
+		if (ownsOutput) {
+			output.close();
+		}
+	}
+	
+	@Getter
+	public enum OutputAction {
+		WRITE_CHAR(0x0L),
+		SET_BLOCK_ADDRESS(0x1L),
+		WRITE_BLOCK(0x2L),
+		FLUSH(0x3L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, OutputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
+		
+		OutputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static OutputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+	@Getter
+	public enum InputAction {
+		WRITTEN_COUNT(0x0L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, InputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
+		
+		InputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static InputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+}
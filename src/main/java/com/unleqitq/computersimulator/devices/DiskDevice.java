@@ -0,0 +1,268 @@
+package com.unleqitq.computersimulator.devices;
+
+import com.unleqitq.computersimulator.components.DeviceAccessor;
+import com.unleqitq.computersimulator.components.Memory;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Block storage backed by a host file, the file is mapped into the host memory
+ * and split into sectors of {@value #SECTOR_SIZE} bytes.
+ * <p>
+ * The program sets the first sector, the number of sectors and the memory address,
+ * then reads or writes. The transfer completes before the OUT returns.
+ * The device also supports DMA transfers, addressing the disk by byte offset.
+ * </p>
+ * <p>
+ * Transfers are not zero-copy: the bytes are copied between the mapping and a buffer and between
+ * the buffer and the memory, in chunks of {@value #CHUNK_SECTORS} sectors. The mapping only
+ * saves the system calls of reading and writing the file.
+ * </p>
+ */
+public class DiskDevice extends DeviceAccessor.AbstractDevice
+	implements DeviceAccessor.IBulkDevice, Closeable {
+	
+	public static final long DEFAULT_PORT = 0x8050L;
+	
+	public static final int SECTOR_SIZE = 512;
+	
+	/**
+	 * Number of sectors moved at once, longer transfers are split
+	 */
+	private static final int CHUNK_SECTORS = 128;
+	
+	@NotNull
+	private final Memory memory;
+	
+	@NotNull
+	private final FileChannel channel;
+	
+	@NotNull
+	private final MappedByteBuffer data;
+	
+	@NotNull
+	private final byte[] buffer = new byte[CHUNK_SECTORS * SECTOR_SIZE];
+	
+	@Getter
+	private final long sectorCount;
+	
+	@Getter
+	private long sector;
+	@Getter
+	private long count;
+	@Getter
+	private long memoryAddress;
+	
+	@Getter
+	@NotNull
+	private Status status = Status.IDLE;
+	
+	/**
+	 * Opens (or creates) a disk image
+	 *
+	 * @param memory The memory to transfer from and to
+	 * @param file   The image file
+	 * @param size   The size of the disk in bytes (rounded up to whole sectors),
+	 *               the file is extended if needed. 0 to use the size of the file
+	 * @throws IOException if the file could not be opened or mapped
+	 */
+	public DiskDevice(@NotNull Memory memory, @NotNull File file, long size) throws IOException {
+		super("Disk");
+		this.memory = memory;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+			StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (size <= 0) {
+			size = channel.size();
+		}
+		this.sectorCount = (size + SECTOR_SIZE - 1) / SECTOR_SIZE;
+		long bytes = sectorCount * SECTOR_SIZE;
+		if (bytes > Integer.MAX_VALUE) {
+			channel.close();
+			throw new IllegalArgumentException("Disk image too large: " + bytes + " bytes");
+		}
+		// Mapping a region beyond the end of the file extends it
+		this.data = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+	}
+	
+	public long getSize() {
+		return sectorCount * SECTOR_SIZE;
+	}
+	
+	@Override
+	public long read(long address) {
+		InputAction action = InputAction.of(address);
+		if (action == null) {
+			return 0;
+		}
+		return switch (action) {
+			case SECTOR_SIZE -> SECTOR_SIZE;
+			case SECTOR_COUNT -> sectorCount;
+			case STATUS -> status.getValue();
+		};
+	}
+	
+	@Override
+	public void write(long address, long data) {
+		OutputAction action = OutputAction.of(address);
+		if (action == null) {
+			return;
+		}
+		switch (action) {
+			case SET_SECTOR -> sector = data;
+			case SET_COUNT -> count = data;
+			case SET_MEMORY_ADDRESS -> memoryAddress = data;
+			case READ -> transfer(false);
+			case WRITE -> transfer(true);
+			case FLUSH -> {
+				this.data.force();
+				status = Status.DONE;
+			}
+		}
+	}
+	
+	/**
+	 * Moves the configured sectors between the disk and the memory
+	 *
+	 * @param toDisk true to write the memory to the disk, false to read the disk into the memory
+	 */
+	private void transfer(boolean toDisk) {
+		// Compared without adding, guest values near Long.MAX_VALUE must not overflow
+		if (sector < 0 || count < 0 || sector > sectorCount || count > sectorCount - sector) {
+			status = Status.ERROR;
+			return;
+		}
+		long offset = sector * SECTOR_SIZE;
+		long remaining = count * SECTOR_SIZE;
+		long address = memoryAddress;
+		while (remaining > 0) {
+			int chunk = (int) Math.min(buffer.length, remaining);
+			int moved;
+			if (toDisk) {
+				moved = memory.read(address, buffer, 0, chunk);
+				data.put((int) offset, buffer, 0, moved);
+			}
+			else {
+				data.get((int) offset, buffer, 0, chunk);
+				moved = memory.write(address, buffer, 0, chunk);
+			}
+			if (moved < chunk) {
+				// Reached the end of the memory
+				status = Status.ERROR;
+				return;
+			}
+			offset += chunk;
+			address += chunk;
+			remaining -= chunk;
+		}
+		status = Status.DONE;
+	}
+	
+	@Override
+	public int readBlock(long address, @NotNull byte[] buffer, int offset, int length) {
+		if (address < 0 || address >= getSize()) {
+			return 0;
+		}
+		int available = (int) Math.min(length, getSize() - address);
+		if (available > 0) {
+			data.get((int) address, buffer, offset, available);
+		}
+		return available;
+	}
+	
+	@Override
+	public int writeBlock(long address, @NotNull byte[] buffer, int offset, int length) {
+		if (address < 0 || address >= getSize()) {
+			return 0;
+		}
+		int available = (int) Math.min(length, getSize() - address);
+		if (available > 0) {
+			data.put((int) address, buffer, offset, available);
+		}
+		return available;
+	}
+	
+	/**
+	 * Writes all changes to the file and closes it
+	 */
+	@Override
+	public void close() throws IOException {
+		data.force();
+		channel.close();
+	}
+	
+	@Getter
+	public enum Status {
+		IDLE(0x0L),
+		DONE(0x1L),
+		ERROR(0x2L),
+		;
+		
+		private final long value;
+		
+		Status(long value) {
+			this.value = value;
+		}
+	}
+	
+	@Getter
+	public enum OutputAction {
+		SET_SECTOR(0x0L),
+		SET_COUNT(0x1L),
+		SET_MEMORY_ADDRESS(0x2L),
+		READ(0x10L),
+		WRITE(0x11L),
+		FLUSH(0x12L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, OutputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
+		
+		OutputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static OutputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+	@Getter
+	public enum InputAction {
+		SECTOR_SIZE(0x0L),
+		SECTOR_COUNT(0x1L),
+		STATUS(0x2L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, InputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
+		
+		InputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static InputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+}
@@ -0,0 +1,199 @@
+package com.unleqitq.computersimulator.devices;
+
+import com.unleqitq.computersimulator.ComputerSimulator;
+import com.unleqitq.computersimulator.components.DeviceAccessor;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * DMA controller, copies blocks of bytes between the memory and a device
+ * implementing {@link DeviceAccessor.IBulkDevice} without the program looping over IN/OUT.
+ * <p>
+ * The program sets up the memory address, the port and address of the device and the length,
+ * then starts the transfer. The transfer completes before the starting OUT returns,
+ * afterward the status can be polled and, if configured, an interrupt is triggered.
+ * </p>
+ */
+public class DmaDevice extends DeviceAccessor.AbstractDevice {
+	
+	public static final long DEFAULT_PORT = 0x8010L;
+	
+	/**
+	 * Size of the buffer used to move the data, longer transfers are split into chunks
+	 */
+	private static final int CHUNK_SIZE = 1 << 16;
+	
+	@NotNull
+	private final ComputerSimulator computer;
+	
+	@NotNull
+	private final byte[] buffer = new byte[CHUNK_SIZE];
+	
+	@Getter
+	private long memoryAddress;
+	@Getter
+	private long devicePort;
+	@Getter
+	private long deviceAddress;
+	@Getter
+	private long length;
+	
+	/**
+	 * The interrupt triggered when a transfer finished, 0 for none
+	 */
+	@Getter
+	private byte interruptCode;
+	
+	@Getter
+	@NotNull
+	private Status status = Status.IDLE;
+	
+	/**
+	 * The number of bytes moved by the last transfer
+	 */
+	@Getter
+	private long transferred;
+	
+	public DmaDevice(@NotNull ComputerSimulator computer) {
+		super("DMA");
+		this.computer = computer;
+	}
+	
+	@Override
+	public long read(long address) {
+		InputAction action = InputAction.of(address);
+		if (action == null) {
+			return 0;
+		}
+		return switch (action) {
+			case STATUS -> status.getValue();
+			case TRANSFERRED -> transferred;
+		};
+	}
+	
+	@Override
+	public void write(long address, long data) {
+		OutputAction action = OutputAction.of(address);
+		if (action == null) {
+			return;
+		}
+		switch (action) {
+			case SET_MEMORY_ADDRESS -> memoryAddress = data;
+			case SET_DEVICE_PORT -> devicePort = data;
+			case SET_DEVICE_ADDRESS -> deviceAddress = data;
+			case SET_LENGTH -> length = data;
+			case SET_INTERRUPT -> interruptCode = (byte) data;
+			case START_TO_DEVICE -> transfer(true);
+			case START_FROM_DEVICE -> transfer(false);
+		}
+	}
+	
+	/**
+	 * Runs a transfer with the current configuration
+	 *
+	 * @param toDevice true to copy from the memory to the device, false for the other direction
+	 */
+	public void transfer(boolean toDevice) {
+		transferred = 0;
+		if (!(computer.devices().getDevice(devicePort) instanceof DeviceAccessor.IBulkDevice device)) {
+			System.err.printf("DMA: no device supporting bulk transfers on port 0x%X%n", devicePort);
+			finish(Status.ERROR);
+			return;
+		}
+		while (transferred < length) {
+			int chunk = (int) Math.min(CHUNK_SIZE, length - transferred);
+			int moved;
+			if (toDevice) {
+				moved = computer.memory().read(memoryAddress + transferred, buffer, 0, chunk);
+				moved = device.writeBlock(deviceAddress + transferred, buffer, 0, moved);
+			}
+			else {
+				moved = device.readBlock(deviceAddress + transferred, buffer, 0, chunk);
+				moved = computer.memory().write(memoryAddress + transferred, buffer, 0, moved);
+			}
+			transferred += moved;
+			if (moved < chunk) {
+				// Reached the end of the memory or the device
+				break;
+			}
+		}
+		finish(transferred == length ? Status.DONE : Status.ERROR);
+	}
+	
+	private void finish(@NotNull Status status) {
+		this.status = status;
+		if (interruptCode != 0) {
+			computer.interrupted(interruptCode);
+		}
+	}
+	
+	@Getter
+	public enum Status {
+		IDLE(0x0L),
+		DONE(0x1L),
+		ERROR(0x2L),
+		;
+		
+		private final long value;
+		
+		Status(long value) {
+			this.value = value;
+		}
+	}
+	
+	@Getter
+	public enum OutputAction {
+		SET_MEMORY_ADDRESS(0x0L),
+		SET_DEVICE_PORT(0x1L),
+		SET_DEVICE_ADDRESS(0x2L),
+		SET_LENGTH(0x3L),
+		SET_INTERRUPT(0x4L),
+		START_TO_DEVICE(0x10L),
+		START_FROM_DEVICE(0x11L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, OutputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
+		
+		OutputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static OutputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+	@Getter
+	public enum InputAction {
+		STATUS(0x0L),
+		TRANSFERRED(0x1L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, InputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
+		
+		InputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static InputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+}
@@ -0,0 +1,232 @@
+package com.unleqitq.computersimulator.devices;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Captures the frames of a {@link ScreenDevice} without a display, e.g. to compare the output of
+ * regression runs.
+ * <p>
+ * Every {@link #interval}-th completed frame is written, {@link #capture()} writes the current
+ * pixels at any time. The frames are written on the simulation thread.
+ * </p>
+ * <p>
+ * Programs drawing pixel by pixel may never complete a frame, so with a {@link #stepInterval}
+ * the pixels are also captured every that many steps in which no frame was completed.
+ * </p>
+ */
+@Accessors (fluent = true)
+public class FrameRecorder implements ScreenDevice.FrameListener, Closeable {
+	
+	@NotNull
+	private final ScreenDevice screen;
+	
+	@Getter
+	@NotNull
+	private final Format format;
+	
+	/**
+	 * The directory of the PNG files or the file of the raw frames
+	 */
+	@Getter
+	@NotNull
+	private final File output;
+	
+	/**
+	 * The number of completed frames per captured frame
+	 */
+	@Getter
+	private final int interval;
+	
+	/**
+	 * The number of steps after which the pixels are captured if no frame was completed meanwhile,
+	 * 0 to capture completed frames only
+	 */
+	@Getter
+	private final long stepInterval;
+	
+	private long steps = 0;
+	
+	/**
+	 * Whether a frame was completed since the last step capture
+	 */
+	private boolean completedSinceStep = false;
+	
+	/**
+	 * The number of captured frames
+	 */
+	@Getter
+	private long captured = 0;
+	
+	private long skipped = 0;
+	
+	/**
+	 * The stream of the raw frames, null for PNG
+	 */
+	private DataOutputStream rawStream;
+	
+	private ByteBuffer rawBuffer = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+	
+	/**
+	 * Starts recording the frames of the screen
+	 *
+	 * @param screen   The screen
+	 * @param format   The format of the frames
+	 * @param output   The directory for PNG files (created if missing) or the file for raw frames
+	 * @param interval The number of completed frames per captured frame, 1 to capture all
+	 */
+	public FrameRecorder(@NotNull ScreenDevice screen, @NotNull Format format, @NotNull File output,
+		int interval) throws IOException {
+		this(screen, format, output, interval, 0);
+	}
+	
+	/**
+	 * Starts recording the frames of the screen
+	 *
+	 * @param screen       The screen
+	 * @param format       The format of the frames
+	 * @param output       The directory for PNG files (created if missing) or the file for raw frames
+	 * @param interval     The number of completed frames per captured frame, 1 to capture all
+	 * @param stepInterval The number of steps without a completed frame per captured frame,
+	 *                     0 to capture completed frames only, counted by {@link #stepped()}
+	 */
+	public FrameRecorder(@NotNull ScreenDevice screen, @NotNull Format format, @NotNull File output,
+		int interval, long stepInterval) throws IOException {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Invalid interval: " + interval);
+		}
+		if (stepInterval < 0) {
+			throw new IllegalArgumentException("Invalid step interval: " + stepInterval);
+		}
+		this.screen = screen;
+		this.format = format;
+		this.output = output;
+		this.interval = interval;
+		this.stepInterval = stepInterval;
+		switch (format) {
+			case PNG -> {
+				if (!output.isDirectory() && !output.mkdirs()) {
+					throw new IOException("Could not create directory: " + output);
+				}
+			}
+			case RAW -> rawStream =
+				new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+		}
+		screen.addFrameListener(this);
+	}
+	
+	@Override
+	public void frameCompleted(@NotNull ScreenDevice screen) {
+		completedSinceStep = true;
+		if (++skipped < interval) {
+			return;
+		}
+		skipped = 0;
+		captureUnchecked();
+	}
+	
+	/**
+	 * Counts a step of the simulation, called after every step when a step interval is set
+	 */
+	public void stepped() {
+		if (stepInterval == 0 || ++steps < stepInterval) {
+			return;
+		}
+		steps = 0;
+		if (completedSinceStep) {
+			completedSinceStep = false;
+			return;
+		}
+		captureUnchecked();
+	}
+	
+	private void captureUnchecked() {
+		try {
+			capture();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Could not write frame " + captured, e);
+		}
+	}
+	
+	/**
+	 * Writes the current pixels as the next frame
+	 */
+	public void capture() throws IOException {
+		int width = screen.width();
+		int height = screen.height();
+		int[] pixels = screen.pixels();
+		if (pixels.length != width * height) {
+			// Resized meanwhile
+			return;
+		}
+		switch (format) {
+			case PNG -> {
+				BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				image.setRGB(0, 0, width, height, pixels, 0, width);
+				ImageIO.write(image, "png", new File(output, "frame_%06d.png".formatted(captured)));
+			}
+			case RAW -> {
+				rawStream.writeInt(width);
+				rawStream.writeInt(height);
+				rawStream.writeLong(screen.getFrameCount());
+				int size = pixels.length * 4;
+				if (rawBuffer.capacity() < size) {
+					rawBuffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+				}
+				rawBuffer.clear();
+				rawBuffer.asIntBuffer().put(pixels);
+				rawStream.write(rawBuffer.array(), 0, size);
+				// A program that never exits is stopped by killing it, keep the frames complete
+				rawStream.flush();
+			}
+		}
+		captured++;
+	}
+	
+	/**
+	 * Stops recording and closes the raw file
+	 */
+	@Override
+	public void close() throws IOException {
+		screen.removeFrameListener(this);
+		if (rawStream != null) {
+			rawStream.close();
+		}
+	}
+	
+	public enum Format {
+		/**
+		 * One PNG file per frame ({@code frame_000000.png}, ...) in a directory
+		 */
+		PNG,
+		/**
+		 * All frames in one file, each frame is the width and height (int), the frame count (long)
+		 * in big endian followed by the pixels (4 little endian bytes 0xRRGGBB per pixel, row by row)
+		 */
+		RAW,
+		;
+		
+		/**
+		 * @return RAW for files ending in {@code .raw}, PNG otherwise
+		 */
+		@NotNull
+		public static Format of(@NotNull File output) {
+			return output.getName().endsWith(".raw") ? RAW : PNG;
+		}
+	}
+	
+}
@@ -0,0 +1,196 @@
+package com.unleqitq.computersimulator.devices;
+
+import com.unleqitq.computersimulator.components.DeviceAccessor;
+import com.unleqitq.computersimulator.components.Memory;
+import com.unleqitq.computersimulator.utils.LongRingBuffer;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Buffers key events until the computer reads them.
+ * <p>
+ * The events are offered by the window (or any other source) and polled by the computer,
+ * one at a time or in batches copied to the memory. See {@link #pack(int, boolean)} for the
+ * format of an event.
+ * </p>
+ */
+public class KeyboardDevice extends DeviceAccessor.AbstractDevice {
+	
+	public static final long DEFAULT_PORT = 0x8000L;
+	
+	public static final int DEFAULT_CAPACITY = 256;
+	
+	/**
+	 * The value returned by {@link InputAction#GET} if the buffer is empty
+	 */
+	public static final long EMPTY = -1;
+	
+	private static final long PRESSED_BIT = 1L << 31;
+	
+	@NotNull
+	private final Memory memory;
+	
+	/**
+	 * The key events, written by the source and read by the computer
+	 */
+	@Getter
+	@NotNull
+	private final LongRingBuffer inputBuffer;
+	
+	/**
+	 * The (linear) address batches are copied to
+	 */
+	private long batchAddress = 0;
+	
+	/**
+	 * The maximum number of events copied by one batch read
+	 */
+	private int batchCapacity = 0;
+	
+	@NotNull
+	private long[] batch = new long[0];
+	
+	@NotNull
+	private ByteBuffer batchBytes = ByteBuffer.allocate(0);
+	
+	public KeyboardDevice(@NotNull Memory memory) {
+		this(memory, DEFAULT_CAPACITY, LongRingBuffer.OverflowPolicy.DROP_NEWEST);
+	}
+	
+	public KeyboardDevice(@NotNull Memory memory, int capacity,
+		@NotNull LongRingBuffer.OverflowPolicy overflowPolicy) {
+		super("Keyboard");
+		this.memory = memory;
+		this.inputBuffer = new LongRingBuffer(capacity, overflowPolicy);
+	}
+	
+	/**
+	 * Adds a key event
+	 *
+	 * @return false if the event was dropped because the buffer is full
+	 */
+	public boolean offer(int scanCode, boolean pressed) {
+		return inputBuffer.offer(pack(scanCode, pressed));
+	}
+	
+	@Override
+	public long read(long address) {
+		InputAction action = InputAction.of(address);
+		if (action == null) {
+			return 0;
+		}
+		return switch (action) {
+			case GET -> inputBuffer.poll(EMPTY);
+			case SIZE -> Integer.toUnsignedLong(inputBuffer.size());
+			case READ_BATCH -> readBatch();
+		};
+	}
+	
+	/**
+	 * Copies up to {@link #batchCapacity} events as qwords to {@link #batchAddress}
+	 *
+	 * @return the number of copied events
+	 */
+	private int readBatch() {
+		if (batch.length < batchCapacity) {
+			batch = new long[batchCapacity];
+			batchBytes = ByteBuffer.allocate(batchCapacity * 8).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		int count = inputBuffer.drain(batch, 0, batchCapacity);
+		if (count == 0) {
+			return 0;
+		}
+		batchBytes.clear();
+		batchBytes.asLongBuffer().put(batch, 0, count);
+		memory.write(batchAddress, batchBytes.array(), 0, count * 8);
+		return count;
+	}
+	
+	@Override
+	public void write(long address, long data) {
+		OutputAction action = OutputAction.of(address);
+		if (action == null) {
+			return;
+		}
+		switch (action) {
+			case CLEAR -> inputBuffer.clear();
+			case SET_BATCH_ADDRESS -> batchAddress = data;
+			case SET_BATCH_CAPACITY -> batchCapacity = (int) Math.max(0, Math.min(data, 1 << 16));
+		}
+	}
+	
+	@Getter
+	public enum InputAction {
+		
+		GET(0x10),
+		SIZE(0x11),
+		READ_BATCH(0x12),
+		;
+		
+		public final long address;
+		
+		@NotNull
+		public static final Map<Long, InputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
+		
+		InputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static InputAction of(long address) {
+			return map.get(address);
+		}
+		
+	}
+	
+	@Getter
+	public enum OutputAction {
+		
+		CLEAR(0x10),
+		SET_BATCH_ADDRESS(0x11),
+		SET_BATCH_CAPACITY(0x12),
+		;
+		
+		public final long address;
+		
+		@NotNull
+		public static final Map<Long, OutputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
+		
+		OutputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static OutputAction of(long address) {
+			return map.get(address);
+		}
+		
+	}
+	
+	/**
+	 * Packs a key event as it is passed to the computer: the scan code in the lower 31 bits,
+	 * bit 31 set if the key was pressed
+	 */
+	public static long pack(int scanCode, boolean pressed) {
+		return (scanCode & (PRESSED_BIT - 1)) | (pressed ? PRESSED_BIT : 0);
+	}
+	
+	public static int scanCode(long event) {
+		return (int) (event & (PRESSED_BIT - 1));
+	}
+	
+	public static boolean isPressed(long event) {
+		return (event & PRESSED_BIT) != 0;
+	}
+	
+}
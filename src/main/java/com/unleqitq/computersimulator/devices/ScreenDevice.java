@@ -0,0 +1,400 @@
+package com.unleqitq.computersimulator.devices;
+
+import com.unleqitq.computersimulator.ValueSize;
+import com.unleqitq.computersimulator.components.DeviceAccessor;
+import com.unleqitq.computersimulator.components.Memory;
+import com.unleqitq.computersimulator.utils.DirtyRect;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The pixels of the screen (0xRRGGBB per pixel, row by row), independent of any window.
+ * <p>
+ * Bulk transfers address the pixels as bytes (4 little endian bytes per pixel),
+ * so a DMA transfer to address 0 replaces the whole screen.
+ * The device is also the target of the {@link BlitterDevice}.
+ * The pixels can be mapped into the memory with the same layout ({@link OutputAction#MAP_PIXELS}),
+ * so a program draws with plain memory writes.
+ * Every write marks the changed area for a view, a present or a blitter batch completes a frame
+ * and notifies the {@link FrameListener}s on the simulation thread.
+ * </p>
+ */
+public class ScreenDevice extends DeviceAccessor.AbstractDevice
+	implements DeviceAccessor.IBulkDevice, BlitterDevice.Target {
+	
+	public static final long DEFAULT_PORT = 0x8020;
+	
+	@NotNull
+	private final Memory memory;
+	
+	/**
+	 * Replaced by resizing
+	 */
+	@NotNull
+	private volatile int[] pixels;
+	
+	private volatile int width;
+	
+	private volatile int height;
+	
+	/**
+	 * The (linear) address of the framebuffer in the memory, or -1 if none is set.<br>
+	 * The framebuffer holds one dword (0xRRGGBB) per pixel, row by row
+	 */
+	@Getter
+	private long framebufferAddress = -1;
+	
+	/**
+	 * The (linear) address the pixels are mapped to in the memory, or -1 if they are not mapped
+	 */
+	@Getter
+	private long pixelsAddress = -1;
+	
+	/**
+	 * The number of completed frames
+	 */
+	@Getter
+	private long frameCount = 0;
+	
+	@NotNull
+	private final DirtyRect dirty = new DirtyRect();
+	
+	@NotNull
+	private final List<FrameListener> frameListeners = new CopyOnWriteArrayList<>();
+	
+	public ScreenDevice(@NotNull Memory memory, int width, int height) {
+		super("SCREEN");
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+		}
+		this.memory = memory;
+		this.width = width;
+		this.height = height;
+		this.pixels = new int[width * height];
+	}
+	
+	/**
+	 * @return the pixels (0xRRGGBB), row by row
+	 */
+	@NotNull
+	@Override
+	public int[] pixels() {
+		return pixels;
+	}
+	
+	@Override
+	public int width() {
+		return width;
+	}
+	
+	@Override
+	public int height() {
+		return height;
+	}
+	
+	@Override
+	public void dirty(int x, int y, int width, int height) {
+		dirty.mark(x, y, width, height);
+	}
+	
+	@Override
+	public void changed() {
+		frameCompleted();
+	}
+	
+	/**
+	 * Takes the area changed since the last call, used by a view to draw only that area
+	 *
+	 * @param bounds The rectangle to store the area in
+	 * @return false if nothing changed
+	 */
+	public boolean takeDirty(@NotNull Rectangle bounds) {
+		return dirty.take(bounds, width, height);
+	}
+	
+	public void markAllDirty() {
+		dirty.mark(0, 0, width, height);
+	}
+	
+	/**
+	 * Resizes the screen keeping the overlapping pixels, only called on the simulation thread
+	 */
+	public void resize(int width, int height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+		}
+		int[] oldPixels = pixels;
+		int oldWidth = this.width;
+		int[] newPixels = new int[width * height];
+		int copyWidth = Math.min(width, oldWidth);
+		int copyHeight = Math.min(height, this.height);
+		for (int y = 0; y < copyHeight; y++) {
+			System.arraycopy(oldPixels, y * oldWidth, newPixels, y * width, copyWidth);
+		}
+		// The pixels first, a reader seeing the new size also sees the new pixels
+		this.pixels = newPixels;
+		this.width = width;
+		this.height = height;
+		markAllDirty();
+		if (pixelsAddress != -1) {
+			mapPixels(pixelsAddress);
+		}
+	}
+	
+	public void clear() {
+		Arrays.fill(pixels, 0);
+		markAllDirty();
+	}
+	
+	/**
+	 * Maps the pixels into the memory, replacing a previous mapping.
+	 * If the pixels do not fit at the address they stay unmapped
+	 *
+	 * @param address The (linear) address to map the pixels to, or -1 to unmap them
+	 */
+	private void mapPixels(long address) {
+		memory.unmapDevice(this);
+		pixelsAddress = -1;
+		if (address == -1) {
+			return;
+		}
+		try {
+			memory.mapDevice(address, pixels.length * 4L, this);
+			pixelsAddress = address;
+		}
+		catch (IllegalArgumentException ignored) {
+			// Out of bounds or overlapping another region
+		}
+	}
+	
+	public void addFrameListener(@NotNull FrameListener listener) {
+		frameListeners.add(listener);
+	}
+	
+	public void removeFrameListener(@NotNull FrameListener listener) {
+		frameListeners.remove(listener);
+	}
+	
+	private void frameCompleted() {
+		frameCount++;
+		for (FrameListener listener : frameListeners) {
+			listener.frameCompleted(this);
+		}
+	}
+	
+	@Override
+	public void write(long address, long data) {
+		OutputAction action = OutputAction.of(address);
+		if (action == null) {
+			return;
+		}
+		switch (action) {
+			case DRAW -> {
+				int x = (int) (data & 0xFFFFL);
+				int y = (int) ((data >>> 16) & 0xFFFFL);
+				if (x < width && y < height) {
+					pixels[y * width + x] = (int) ((data >>> 32) & 0xFFFFFFL);
+					dirty.mark(x, y);
+				}
+			}
+			case CLEAR -> clear();
+			case SET_FRAMEBUFFER -> framebufferAddress = data;
+			case PRESENT -> {
+				if (framebufferAddress != -1) {
+					int[] pixels = this.pixels;
+					memory.readDwords(framebufferAddress, pixels, 0, pixels.length);
+					markAllDirty();
+				}
+				frameCompleted();
+			}
+			case MAP_PIXELS -> mapPixels(data);
+		}
+	}
+	
+	@Override
+	public long read(long address) {
+		InputAction action = InputAction.of(address);
+		if (action == null) {
+			return 0;
+		}
+		return switch (action) {
+			case SIZE -> Integer.toUnsignedLong(width) | (Integer.toUnsignedLong(height) << 16);
+			case FRAMEBUFFER -> framebufferAddress;
+			case PIXELS_ADDRESS -> pixelsAddress;
+		};
+	}
+	
+	@Override
+	public long readMapped(long offset, @NotNull ValueSize size) {
+		int[] pixels = this.pixels;
+		int length = size.getSize();
+		if (offset + length > pixels.length * 4L) {
+			return 0;
+		}
+		if (size == ValueSize.DWORD && (offset & 3) == 0) {
+			return Integer.toUnsignedLong(pixels[(int) (offset >>> 2)]);
+		}
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			value |= (pixelByte(pixels, offset + i) & 0xFFL) << (i * 8);
+		}
+		return value;
+	}
+	
+	@Override
+	public void writeMapped(long offset, @NotNull ValueSize size, long value) {
+		int[] pixels = this.pixels;
+		int length = size.getSize();
+		if (offset + length > pixels.length * 4L) {
+			return;
+		}
+		if (size == ValueSize.DWORD && (offset & 3) == 0) {
+			pixels[(int) (offset >>> 2)] = (int) value;
+		}
+		else {
+			for (int i = 0; i < length; i++) {
+				setPixelByte(pixels, offset + i, (byte) (value >>> (i * 8)));
+			}
+		}
+		int width = this.width;
+		for (long pixel = offset >>> 2; pixel <= (offset + length - 1) >>> 2; pixel++) {
+			dirty.mark((int) (pixel % width), (int) (pixel / width));
+		}
+	}
+	
+	@Override
+	public int readBlock(long address, @NotNull byte[] buffer, int offset, int length) {
+		int[] pixels = this.pixels;
+		if (address < 0 || address >= pixels.length * 4L) {
+			return 0;
+		}
+		int available = (int) Math.max(0, Math.min(length, pixels.length * 4L - address));
+		if (available == 0) {
+			return 0;
+		}
+		if ((address & 3) == 0) {
+			// Aligned, copy whole pixels at once
+			int count = available >>> 2;
+			ByteBuffer.wrap(buffer, offset, available).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+				.put(pixels, (int) (address >>> 2), count);
+			for (int i = count * 4; i < available; i++) {
+				buffer[offset + i] = pixelByte(pixels, address + i);
+			}
+			return available;
+		}
+		for (int i = 0; i < available; i++) {
+			buffer[offset + i] = pixelByte(pixels, address + i);
+		}
+		return available;
+	}
+	
+	@Override
+	public int writeBlock(long address, @NotNull byte[] buffer, int offset, int length) {
+		int[] pixels = this.pixels;
+		if (address < 0 || address >= pixels.length * 4L) {
+			return 0;
+		}
+		int available = (int) Math.max(0, Math.min(length, pixels.length * 4L - address));
+		if (available == 0) {
+			return 0;
+		}
+		if ((address & 3) == 0) {
+			int count = available >>> 2;
+			ByteBuffer.wrap(buffer, offset, available).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+				.get(pixels, (int) (address >>> 2), count);
+			for (int i = count * 4; i < available; i++) {
+				setPixelByte(pixels, address + i, buffer[offset + i]);
+			}
+		}
+		else {
+			for (int i = 0; i < available; i++) {
+				setPixelByte(pixels, address + i, buffer[offset + i]);
+			}
+		}
+		// Mark the rows written
+		int firstRow = (int) ((address >>> 2) / width);
+		int lastRow = (int) (((address + available - 1) >>> 2) / width);
+		dirty.mark(0, firstRow, width, lastRow - firstRow + 1);
+		return available;
+	}
+	
+	private static byte pixelByte(int[] pixels, long address) {
+		return (byte) (pixels[(int) (address >>> 2)] >>> ((address & 3) * 8));
+	}
+	
+	private static void setPixelByte(int[] pixels, long address, byte value) {
+		int index = (int) (address >>> 2);
+		int shift = (int) ((address & 3) * 8);
+		pixels[index] = (pixels[index] & ~(0xFF << shift)) | ((value & 0xFF) << shift);
+	}
+	
+	/**
+	 * Notified on the simulation thread after every present and blitter batch
+	 */
+	@FunctionalInterface
+	public interface FrameListener {
+		
+		void frameCompleted(@NotNull ScreenDevice screen);
+		
+	}
+	
+	@Getter
+	public enum OutputAction {
+		DRAW(0x0L),
+		CLEAR(0x1L),
+		SET_FRAMEBUFFER(0x2L),
+		PRESENT(0x3L),
+		MAP_PIXELS(0x4L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private final static Map<Long, OutputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
+		
+		OutputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static OutputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+	@Getter
+	public enum InputAction {
+		SIZE(0x0L),
+		FRAMEBUFFER(0x1L),
+		PIXELS_ADDRESS(0x2L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private final static Map<Long, InputAction> map = Arrays.stream(values())
+			.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
+		
+		InputAction(long address) {
+			this.address = address;
+		}
+		
+		@Nullable
+		public static InputAction of(long address) {
+			return map.get(address);
+		}
+	}
+	
+}
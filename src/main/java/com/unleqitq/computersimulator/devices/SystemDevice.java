@@ -37,7 +37,7 @@ public class SystemDevice extends DeviceAccessor.AbstractDevice {
 			return 0;
 		}
 		return switch (action) {
-			case GET_MEMORY_SIZE -> Integer.toUnsignedLong(computer.memory().getSize());
+			case GET_MEMORY_SIZE -> computer.memory().getSize();
 			case GET_HOUR -> Instant.now().get(ChronoField.HOUR_OF_DAY);
 			case GET_MINUTE -> Instant.now().get(ChronoField.MINUTE_OF_HOUR);
 			case GET_SECOND -> Instant.now().get(ChronoField.SECOND_OF_MINUTE);
@@ -45,9 +45,28 @@ public class SystemDevice extends DeviceAccessor.AbstractDevice {
 			case GET_MILLIS -> System.currentTimeMillis();
 			case GET_NANOS -> System.nanoTime();
 			case GET_RANDOM_QWORD -> random.nextLong();
+			case GET_FAULT_ADDRESS -> computer.faultAddress();
+			case GET_FAULT_ACCESS -> computer.faultAccess();
+			case GET_PAGE_TABLE -> computer.mmu() == null ? 0 : computer.mmu().root();
+			case GET_PAGING -> computer.isPaging() ? 1 : 0;
 		};
 	}
 	
+	@Override
+	public void write(long address, long data) {
+		OutputAction action = OutputAction.byAddress(address);
+		// Without an MMU paging stays disabled and the page table is ignored
+		if (action == null || computer.mmu() == null) {
+			return;
+		}
+		switch (action) {
+			case SET_PAGE_TABLE -> computer.mmu().setRoot(data);
+			case SET_PAGING -> computer.setPaging(data != 0);
+			case INVALIDATE_PAGE -> computer.mmu().invalidate(data);
+			case FLUSH_TLB -> computer.mmu().flush();
+		}
+	}
+	
 	/**
 	 * Addresses the program requests data from the device
 	 */
@@ -68,6 +87,14 @@ public class SystemDevice extends DeviceAccessor.AbstractDevice {
 		
 		// Random
 		GET_RANDOM_QWORD (0x1004L),
+		
+		// Faults
+		GET_FAULT_ADDRESS (0x2000L),
+		GET_FAULT_ACCESS (0x2001L),
+		
+		// Paging
+		GET_PAGE_TABLE (0x2010L),
+		GET_PAGING (0x2011L),
 		;
 		
 		private final long address;
@@ -86,4 +113,39 @@ public class SystemDevice extends DeviceAccessor.AbstractDevice {
 		}
 	}
 	
+	/**
+	 * Addresses the program sends data to the device
+	 */
+	@Accessors (fluent = false)
+	@Getter
+	public enum OutputAction {
+		// Paging
+		SET_PAGE_TABLE (0x2010L),
+		/**
+		 * Enables paging for any value but 0
+		 */
+		SET_PAGING (0x2011L),
+		/**
+		 * Drops the cached translation of the page containing the address
+		 */
+		INVALIDATE_PAGE (0x2012L),
+		FLUSH_TLB (0x2013L),
+		;
+		
+		private final long address;
+		
+		@NotNull
+		private static final Map<Long, OutputAction> ADDRESS_MAP = Arrays.stream(values())
+			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
+		
+		@Nullable
+		public static OutputAction byAddress(long address) {
+			return ADDRESS_MAP.get(address);
+		}
+		
+		OutputAction(long address) {
+			this.address = address;
+		}
+	}
+	
 }
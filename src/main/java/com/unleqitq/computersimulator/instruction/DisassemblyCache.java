@@ -0,0 +1,264 @@
+package com.unleqitq.computersimulator.instruction;
+
+import com.unleqitq.computersimulator.ComputerSimulator;
+import com.unleqitq.computersimulator.components.Memory;
+import com.unleqitq.computersimulator.components.Mmu;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Linear sweep disassembly from a base address, decoded lazily and kept until the code changes.
+ * <p>
+ * The entries are decoded in order, each one starts where the previous one ends.
+ * When a page covered by the entries is written, the sweep is cut off before the first entry on
+ * that page and decoded again on the next access, the entries in front of it stay cached.
+ * While paging is enabled the physical pages behind the addresses are checked, and a change of
+ * the translations drops all entries.
+ * </p>
+ */
+@Accessors (fluent = true)
+public class DisassemblyCache {
+	
+	@NotNull
+	private final ComputerSimulator computer;
+	
+	@Getter
+	private long baseAddress;
+	
+	@Getter
+	private long codeSegment;
+	
+	/**
+	 * The maximum number of entries
+	 */
+	@Getter
+	private int limit;
+	
+	@NotNull
+	private long[] addresses = new long[64];
+	@NotNull
+	private int[] lengths = new int[64];
+	@NotNull
+	private Instruction[] instructions = new Instruction[64];
+	@NotNull
+	private String[] texts = new String[64];
+	
+	/**
+	 * The number of decoded entries
+	 */
+	@Getter
+	private int count = 0;
+	
+	/**
+	 * The memory stamp at the last validation, all entries were valid at that time
+	 */
+	private long validStamp;
+	
+	/**
+	 * The MMU translating the addresses and its generation at the last validation
+	 */
+	@Nullable
+	private Mmu validMmu;
+	private long validGeneration;
+	
+	/**
+	 * The number of entries returned from the cache
+	 */
+	@Getter
+	private long hits = 0;
+	
+	/**
+	 * The number of entries that had to be decoded
+	 */
+	@Getter
+	private long misses = 0;
+	
+	public DisassemblyCache(@NotNull ComputerSimulator computer, long baseAddress, long codeSegment,
+		int limit) {
+		this.computer = computer;
+		this.baseAddress = baseAddress;
+		this.codeSegment = codeSegment;
+		this.limit = limit;
+		this.validStamp = computer.memory().getStamp();
+		this.validMmu = computer.memory().getMmu();
+		this.validGeneration = validMmu == null ? 0 : validMmu.generation();
+	}
+	
+	/**
+	 * Moves the sweep, the cache is only dropped if the base address or segment differ
+	 */
+	public void reset(long baseAddress, long codeSegment, int limit) {
+		if (baseAddress != this.baseAddress || codeSegment != this.codeSegment) {
+			clear();
+		}
+		this.baseAddress = baseAddress;
+		this.codeSegment = codeSegment;
+		this.limit = limit;
+		count = Math.min(count, limit);
+	}
+	
+	public void clear() {
+		Arrays.fill(instructions, 0, count, null);
+		Arrays.fill(texts, 0, count, null);
+		count = 0;
+		validStamp = computer.memory().getStamp();
+		validMmu = computer.memory().getMmu();
+		validGeneration = validMmu == null ? 0 : validMmu.generation();
+	}
+	
+	/**
+	 * Drops the entries on pages written since the last validation
+	 *
+	 * @return the index of the first dropped entry or -1 if all entries are still valid
+	 */
+	public int validate() {
+		Memory memory = computer.memory();
+		Mmu mmu = memory.getMmu();
+		if (mmu != validMmu || mmu != null && mmu.generation() != validGeneration) {
+			int dropped = count > 0 ? 0 : -1;
+			clear();
+			return dropped;
+		}
+		long stamp = memory.getStamp();
+		if (stamp <= validStamp) {
+			return -1;
+		}
+		int dropped = -1;
+		if (count > 0) {
+			long offset = codeSegment << 4;
+			long start = baseAddress + offset;
+			long end = addresses[count - 1] + lengths[count - 1] + offset;
+			long lastPage = (end - 1) >>> Memory.PAGE_SHIFT;
+			for (long page = start >>> Memory.PAGE_SHIFT; page <= lastPage; page++) {
+				long physical = mmu == null ? page << Memory.PAGE_SHIFT :
+					mmu.lookup(page << Memory.PAGE_SHIFT, Mmu.EXECUTE);
+				if (physical >= 0 && memory.getPageStamp(physical) > validStamp) {
+					dropped = firstEndingAfter(Math.max(page << Memory.PAGE_SHIFT, start) - offset);
+					Arrays.fill(instructions, dropped, count, null);
+					Arrays.fill(texts, dropped, count, null);
+					count = dropped;
+					break;
+				}
+			}
+		}
+		validStamp = stamp;
+		return dropped;
+	}
+	
+	/**
+	 * @return the index of the first entry extending past the address
+	 */
+	private int firstEndingAfter(long address) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (addresses[mid] + lengths[mid] <= address) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Decodes the entries up to the index if they are not cached yet
+	 *
+	 * @return false if the index is outside the limit
+	 */
+	private boolean ensure(int index) {
+		if (index < 0 || index >= limit) {
+			return false;
+		}
+		if (index < count) {
+			hits++;
+			return true;
+		}
+		if (index >= addresses.length) {
+			int capacity = Math.min(limit, Math.max(index + 1, addresses.length * 2));
+			addresses = Arrays.copyOf(addresses, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			instructions = Arrays.copyOf(instructions, capacity);
+			texts = Arrays.copyOf(texts, capacity);
+		}
+		long address = count == 0 ? baseAddress : addresses[count - 1] + lengths[count - 1];
+		while (count <= index) {
+			Instruction instruction;
+			try {
+				instruction = computer.peekInstruction(address, codeSegment);
+			}
+			catch (Exception e) {
+				instruction = null;
+			}
+			int length = instruction == null ? 1 : instruction.getLength();
+			addresses[count] = address;
+			lengths[count] = length;
+			instructions[count] = instruction;
+			count++;
+			misses++;
+			address += length;
+		}
+		return true;
+	}
+	
+	public long getAddress(int index) {
+		return ensure(index) ? addresses[index] : -1;
+	}
+	
+	/**
+	 * @return the instruction or null if the bytes are no valid instruction
+	 */
+	@Nullable
+	public Instruction getInstruction(int index) {
+		return ensure(index) ? instructions[index] : null;
+	}
+	
+	/**
+	 * @return the assembly of the instruction, formatted once per entry
+	 */
+	@NotNull
+	public String getText(int index) {
+		if (!ensure(index)) {
+			return "";
+		}
+		String text = texts[index];
+		if (text == null) {
+			Instruction instruction = instructions[index];
+			text = instruction == null ? "NOP" : instruction.toAssembly();
+			texts[index] = text;
+		}
+		return text;
+	}
+	
+	/**
+	 * Finds the entry starting at an address, decoding further entries if needed
+	 *
+	 * @return the index or -1 if no entry within the limit starts at the address
+	 */
+	public int indexOf(long address) {
+		if (address < baseAddress) {
+			return -1;
+		}
+		while (count < limit &&
+			(count == 0 || addresses[count - 1] + lengths[count - 1] <= address)) {
+			ensure(count);
+		}
+		int index = firstEndingAfter(address);
+		return index < count && addresses[index] == address ? index : -1;
+	}
+	
+	/**
+	 * @return the share of entries returned from the cache, 0 before the first access
+	 */
+	public double hitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+	
+}
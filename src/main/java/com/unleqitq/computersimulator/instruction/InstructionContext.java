@@ -22,6 +22,11 @@ public class InstructionContext {
 	private final long codeSegment;
 	private final byte opcode;
 	
+	/**
+	 * Whether the instruction is only decoded for the views, see {@link Memory#peekByte}
+	 */
+	private final boolean peek;
+	
 	private boolean jump;
 	private long jumpTarget;
 	private boolean jumpSegment;
@@ -32,7 +37,8 @@ public class InstructionContext {
 		this.instructionPointer = computer.registers().readRegister(Registers.Register.RIP);
 		this.codeSegment = computer.registers().readRegister(Registers.Register.CS);
 		this.instructionSize = 1;
-		this.opcode = (byte) (computer.memory().readByte(instructionPointer, codeSegment) & 0xFF);
+		this.peek = false;
+		this.opcode = (byte) (computer.memory().fetchByte(instructionPointer, codeSegment) & 0xFF);
 		this.jump = false;
 		this.jumpTarget = 0;
 		this.jumpSegment = false;
@@ -40,37 +46,61 @@ public class InstructionContext {
 	}
 	
 	public InstructionContext(@NotNull ComputerSimulator computer, long instructionPointer, long codeSegment) {
+		this(computer, instructionPointer, codeSegment, false);
+	}
+	
+	/**
+	 * @param peek Whether the instruction is only decoded for the views, the bytes are then read
+	 *             without affecting the TLB and the caches
+	 */
+	public InstructionContext(@NotNull ComputerSimulator computer, long instructionPointer,
+		long codeSegment, boolean peek) {
 		this.computer = computer;
 		this.instructionPointer = instructionPointer;
 		this.codeSegment = codeSegment;
 		this.instructionSize = 1;
-		this.opcode = (byte) (computer.memory().readByte(instructionPointer, codeSegment) & 0xFF);
+		this.peek = peek;
+		this.opcode = (byte) (fetchByte(instructionPointer) & 0xFF);
 		this.jump = false;
 		this.jumpTarget = 0;
 		this.jumpSegment = false;
 		this.jumpSegmentTarget = 0;
 	}
 	
+	private long fetchByte(long address) {
+		Memory memory = computer.memory();
+		return peek ? memory.peekByte(address, codeSegment) : memory.fetchByte(address, codeSegment);
+	}
+	
 	public long readInstructionByte() {
-		long value = computer.memory().readByte(instructionPointer + instructionSize, codeSegment);
+		long value = fetchByte(instructionPointer + instructionSize);
 		instructionSize++;
 		return value;
 	}
 	
 	public long readInstructionWord() {
-		long value = computer.memory().readWord(instructionPointer + instructionSize, codeSegment);
+		long address = instructionPointer + instructionSize;
+		Memory memory = computer.memory();
+		long value = peek ? memory.peekWord(address, codeSegment) :
+			memory.fetchWord(address, codeSegment);
 		instructionSize += 2;
 		return value;
 	}
 	
 	public long readInstructionDword() {
-		long value = computer.memory().readDword(instructionPointer + instructionSize, codeSegment);
+		long address = instructionPointer + instructionSize;
+		Memory memory = computer.memory();
+		long value = peek ? memory.peekDword(address, codeSegment) :
+			memory.fetchDword(address, codeSegment);
 		instructionSize += 4;
 		return value;
 	}
 	
 	public long readInstructionQword() {
-		long value = computer.memory().readQword(instructionPointer + instructionSize, codeSegment);
+		long address = instructionPointer + instructionSize;
+		Memory memory = computer.memory();
+		long value = peek ? memory.peekQword(address, codeSegment) :
+			memory.fetchQword(address, codeSegment);
 		instructionSize += 8;
 		return value;
 	}
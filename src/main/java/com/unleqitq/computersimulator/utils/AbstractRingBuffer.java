@@ -0,0 +1,64 @@
+package com.unleqitq.computersimulator.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The indices of a bounded lock-free ring buffer for one producer and one consumer thread,
+ * the subclasses hold the elements.
+ * <p>
+ * The capacity is rounded up to a power of two. Both indices are free running,
+ * the slot of an index is {@code index & mask}. The producer owns the tail, the consumer the head.
+ * </p>
+ */
+public abstract class AbstractRingBuffer {
+	
+	protected final int mask;
+	
+	/**
+	 * The index of the next element to read
+	 */
+	@NotNull
+	protected final AtomicLong head = new AtomicLong();
+	
+	/**
+	 * The index of the next element to write
+	 */
+	@NotNull
+	protected final AtomicLong tail = new AtomicLong();
+	
+	protected AbstractRingBuffer(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+	}
+	
+	/**
+	 * @return the number of slots, a power of two
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+	
+	public int size() {
+		return (int) Math.max(0, Math.min(tail.get() - head.get(), capacity()));
+	}
+	
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+	
+	/**
+	 * @return whether the producer can add an element, only called by the producer
+	 */
+	protected boolean hasSpace(long tail) {
+		return tail - head.get() < capacity();
+	}
+	
+}
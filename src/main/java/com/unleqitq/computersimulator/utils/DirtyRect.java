@@ -0,0 +1,60 @@
+package com.unleqitq.computersimulator.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+
+/**
+ * The bounding box of the changed area of an image, marked by one thread and taken by another.
+ * <p>
+ * Marking only grows the box, taking returns it and leaves it empty.
+ * Both are synchronized, the lock is only held for a few comparisons.
+ * </p>
+ */
+public class DirtyRect {
+	
+	private int minX = Integer.MAX_VALUE;
+	private int minY = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE;
+	private int maxY = Integer.MIN_VALUE;
+	
+	/**
+	 * Adds a rectangle to the box
+	 */
+	public synchronized void mark(int x, int y, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		maxX = Math.max(maxX, x + width);
+		maxY = Math.max(maxY, y + height);
+	}
+	
+	public void mark(int x, int y) {
+		mark(x, y, 1, 1);
+	}
+	
+	/**
+	 * Takes the box and clips it to the image
+	 *
+	 * @param bounds The rectangle to store the box in
+	 * @return false if nothing within the image changed
+	 */
+	public synchronized boolean take(@NotNull Rectangle bounds, int width, int height) {
+		int x0 = Math.max(minX, 0);
+		int y0 = Math.max(minY, 0);
+		int x1 = Math.min(maxX, width);
+		int y1 = Math.min(maxY, height);
+		minX = Integer.MAX_VALUE;
+		minY = Integer.MAX_VALUE;
+		maxX = Integer.MIN_VALUE;
+		maxY = Integer.MIN_VALUE;
+		if (x0 >= x1 || y0 >= y1) {
+			return false;
+		}
+		bounds.setBounds(x0, y0, x1 - x0, y1 - y0);
+		return true;
+	}
+	
+}
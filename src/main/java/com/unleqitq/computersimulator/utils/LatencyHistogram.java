@@ -0,0 +1,83 @@
+package com.unleqitq.computersimulator.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in power of two buckets, recorded by one thread and read by any other.
+ * <p>
+ * Bucket {@code i} holds the durations below {@code 2^i} nanoseconds (and at least half of that),
+ * so a percentile is accurate to a factor of two, which is enough to spot outliers.
+ * Recording is a few plain increments, readers copy the counters and compare them with an
+ * earlier copy to get the values of an interval.
+ * </p>
+ */
+public class LatencyHistogram {
+	
+	public static final int BUCKETS = 64;
+	
+	@NotNull
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	
+	@NotNull
+	private final AtomicLong totalNanos = new AtomicLong();
+	
+	/**
+	 * Records a duration, only called by the owning thread
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+		// Single writer, so no atomic increment is needed
+		counts.lazySet(bucket, counts.get(bucket) + 1);
+		totalNanos.lazySet(totalNanos.get() + nanos);
+	}
+	
+	/**
+	 * Copies the counters
+	 *
+	 * @param counts The array to copy the bucket counts to, {@link #BUCKETS} long
+	 * @return the sum of all recorded durations
+	 */
+	public long copy(@NotNull long[] counts) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = this.counts.get(i);
+		}
+		return totalNanos.get();
+	}
+	
+	/**
+	 * @return the number of durations in the bucket counts
+	 */
+	public static long count(@NotNull long[] counts) {
+		long count = 0;
+		for (long c : counts) {
+			count += c;
+		}
+		return count;
+	}
+	
+	/**
+	 * @param counts   The bucket counts (e.g. the difference of two copies)
+	 * @param fraction The share of durations below the result, e.g. 0.99
+	 * @return the upper bound of the bucket the percentile is in, 0 if nothing was recorded
+	 */
+	public static long percentile(@NotNull long[] counts, double fraction) {
+		long count = count(counts);
+		if (count == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= threshold) {
+				return i >= 63 ? Long.MAX_VALUE : 1L << i;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+	
+}
@@ -0,0 +1,145 @@
+package com.unleqitq.computersimulator.utils;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free ring buffer of longs for one producer and one consumer thread.
+ * <p>
+ * With {@link OverflowPolicy#DROP_OLDEST} the producer may also advance the head,
+ * so the head is only ever moved by compare-and-set.
+ * </p>
+ */
+public class LongRingBuffer extends AbstractRingBuffer {
+	
+	@NotNull
+	private final long[] buffer;
+	
+	@Getter
+	@NotNull
+	private final OverflowPolicy overflowPolicy;
+	
+	/**
+	 * The number of elements dropped because the buffer was full
+	 */
+	@NotNull
+	private final AtomicLong dropped = new AtomicLong();
+	
+	public LongRingBuffer(int capacity, @NotNull OverflowPolicy overflowPolicy) {
+		super(capacity);
+		this.buffer = new long[capacity()];
+		this.overflowPolicy = overflowPolicy;
+	}
+	
+	/**
+	 * Adds an element, only called by the producer
+	 *
+	 * @return false if the element was dropped
+	 */
+	public boolean offer(long value) {
+		long t = tail.get();
+		long h = head.get();
+		if (t - h >= capacity()) {
+			dropped.incrementAndGet();
+			if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+				return false;
+			}
+			// If the CAS fails the consumer took the oldest element, so there is space anyway
+			head.compareAndSet(h, h + 1);
+		}
+		buffer[(int) (t & mask)] = value;
+		// Publishes the element
+		tail.lazySet(t + 1);
+		return true;
+	}
+	
+	/**
+	 * Removes the oldest element, only called by the consumer
+	 *
+	 * @param emptyValue The value returned if the buffer is empty
+	 * @return the element or emptyValue
+	 */
+	public long poll(long emptyValue) {
+		while (true) {
+			long h = head.get();
+			if (h == tail.get()) {
+				return emptyValue;
+			}
+			long value = buffer[(int) (h & mask)];
+			// Fails if the producer dropped the element in the meantime
+			if (head.compareAndSet(h, h + 1)) {
+				return value;
+			}
+		}
+	}
+	
+	/**
+	 * Removes up to maxCount elements at once, only called by the consumer
+	 *
+	 * @param destination The array to copy the elements to
+	 * @param offset      The index of the first element in the array
+	 * @param maxCount    The maximum number of elements to remove
+	 * @return the number of removed elements
+	 */
+	public int drain(@NotNull long[] destination, int offset, int maxCount) {
+		while (true) {
+			long h = head.get();
+			int count = (int) Math.min(tail.get() - h, maxCount);
+			if (count <= 0) {
+				return 0;
+			}
+			for (int i = 0; i < count; i++) {
+				destination[offset + i] = buffer[(int) ((h + i) & mask)];
+			}
+			if (head.compareAndSet(h, h + count)) {
+				return count;
+			}
+		}
+	}
+	
+	/**
+	 * Copies the elements without removing them, the result may be outdated or,
+	 * if the producer is writing at the same time, inconsistent (only meant for displaying)
+	 *
+	 * @return the number of copied elements
+	 */
+	public int peek(@NotNull long[] destination) {
+		long h = head.get();
+		int count = (int) Math.min(Math.max(tail.get() - h, 0), destination.length);
+		for (int i = 0; i < count; i++) {
+			destination[i] = buffer[(int) ((h + i) & mask)];
+		}
+		return count;
+	}
+	
+	/**
+	 * Removes all elements
+	 */
+	public void clear() {
+		while (true) {
+			long h = head.get();
+			long t = tail.get();
+			if (h >= t || head.compareAndSet(h, t)) {
+				return;
+			}
+		}
+	}
+	
+	public long droppedCount() {
+		return dropped.get();
+	}
+	
+	public enum OverflowPolicy {
+		/**
+		 * New elements are dropped while the buffer is full
+		 */
+		DROP_NEWEST,
+		/**
+		 * The oldest element is dropped to make room for the new one
+		 */
+		DROP_OLDEST,
+	}
+	
+}
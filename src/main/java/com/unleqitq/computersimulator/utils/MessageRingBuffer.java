@@ -0,0 +1,98 @@
+package com.unleqitq.computersimulator.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded lock-free ring buffer of byte messages for one producer and one consumer thread.
+ * <p>
+ * Every slot owns a buffer of the maximum message size, allocated on its first use and reused
+ * afterwards. The producer writes a message directly into the slot returned by {@link #claim()}
+ * and publishes it with {@link #publish(int)}, the consumer reads it from {@link #front()} and
+ * frees the slot with {@link #remove()}, so passing a message allocates nothing.
+ * </p>
+ */
+public class MessageRingBuffer extends AbstractRingBuffer {
+	
+	@NotNull
+	private final byte[][] slots;
+	
+	/**
+	 * The length of the message in each slot
+	 */
+	@NotNull
+	private final int[] lengths;
+	
+	private final int maxMessageSize;
+	
+	public MessageRingBuffer(int capacity, int maxMessageSize) {
+		super(capacity);
+		if (maxMessageSize < 0) {
+			throw new IllegalArgumentException("Invalid message size: " + maxMessageSize);
+		}
+		this.slots = new byte[capacity()][];
+		this.lengths = new int[capacity()];
+		this.maxMessageSize = maxMessageSize;
+	}
+	
+	public int maxMessageSize() {
+		return maxMessageSize;
+	}
+	
+	/**
+	 * Returns the buffer for the next message, only called by the producer
+	 *
+	 * @return the buffer of {@link #maxMessageSize()} bytes or null if the ring is full
+	 */
+	@Nullable
+	public byte[] claim() {
+		long t = tail.get();
+		if (!hasSpace(t)) {
+			return null;
+		}
+		int slot = (int) (t & mask);
+		if (slots[slot] == null) {
+			slots[slot] = new byte[maxMessageSize];
+		}
+		return slots[slot];
+	}
+	
+	/**
+	 * Publishes the message written into the buffer of the last {@link #claim()},
+	 * only called by the producer
+	 *
+	 * @param length The length of the message
+	 */
+	public void publish(int length) {
+		long t = tail.get();
+		lengths[(int) (t & mask)] = length;
+		tail.lazySet(t + 1);
+	}
+	
+	/**
+	 * @return the length of the oldest message or -1 if there is none, only called by the consumer
+	 */
+	public int frontLength() {
+		long h = head.get();
+		return h == tail.get() ? -1 : lengths[(int) (h & mask)];
+	}
+	
+	/**
+	 * @return the buffer of the oldest message, only valid while {@link #frontLength()} is not -1,
+	 * only called by the consumer
+	 */
+	public byte[] front() {
+		return slots[(int) (head.get() & mask)];
+	}
+	
+	/**
+	 * Removes the oldest message, its buffer may be reused afterwards, only called by the consumer
+	 */
+	public void remove() {
+		long h = head.get();
+		if (h != tail.get()) {
+			head.lazySet(h + 1);
+		}
+	}
+	
+}
@@ -26,9 +26,9 @@ public final class ControlMenuBar {
 		addViewToggle("Instructions", computerWindow.instructionsView.internalFrame);
 		addViewToggle("Screen", computerWindow.screenView.internalFrame);
 		addViewToggle("Memory", computerWindow.memoryView.internalFrame);
-		addViewToggle("Program", computerWindow.programView.internalFrame);
+		addViewToggle("Program", computerWindow.programView);
 		addViewToggle("Stack", computerWindow.stackView.internalFrame);
-		addViewToggle("Keyboard input", computerWindow.keyboardInputView.internalFrame);
+		addViewToggle("Keyboard input", computerWindow.keyboardInputView);
 		addViewToggle("Info", computerWindow.infoView.internalFrame);
 		
 		viewMenu.addSeparator();
@@ -106,4 +106,13 @@ public final class ControlMenuBar {
 		viewMenu.add(item);
 	}
 	
+	/**
+	 * Adds a toggle for a view that is only created when it is first shown
+	 */
+	public void addViewToggle(@NotNull String name, @NotNull LazyView<?> view) {
+		JMenuItem item = new JMenuItem("Toggle " + name);
+		item.addActionListener(e -> view.toggle());
+		viewMenu.add(item);
+	}
+	
 }
@@ -1,11 +1,20 @@
 package com.unleqitq.computersimulator.window;
 
 import com.unleqitq.computersimulator.ComputerWindow;
+import com.unleqitq.computersimulator.SpeedGovernor;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 
 public final class ControlsBar {
+	
+	/**
+	 * The selectable speeds in instructions per second
+	 */
+	private static final long[] SPEEDS = {
+		1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, SpeedGovernor.UNLIMITED
+	};
+	
 	@NotNull
 	private final ComputerWindow computerWindow;
 	@NotNull
@@ -21,16 +30,13 @@ public final class ControlsBar {
 	public final JButton stopButton;
 	
 	@NotNull
-	public final JSlider tpsSlider;
-	
-	@NotNull
-	public final JLabel tpsLabel;
+	public final JComboBox<String> speedBox;
 	
+	/**
+	 * The measured speed
+	 */
 	@NotNull
-	public final JSlider sptSlider;
-	
-	@NotNull
-	public final JLabel sptLabel;
+	public final JLabel speedLabel;
 	
 	@NotNull
 	public final JButton resetButton;
@@ -41,12 +47,6 @@ public final class ControlsBar {
 	@NotNull
 	public final JButton resetInterruptButton;
 	
-	public boolean running = false;
-	
-	public int tps;
-	
-	public int spt;
-	
 	public ControlsBar(@NotNull ComputerWindow computerWindow) {
 		this.computerWindow = computerWindow;
 		toolBar = new JToolBar();
@@ -55,97 +55,65 @@ public final class ControlsBar {
 		stepButton = new JButton("Step");
 		runButton = new JButton("Run");
 		stopButton = new JButton("Stop");
-		tps = 100;
-		tpsSlider = new JSlider(0, 9, 6);
-		tpsLabel = new JLabel();
-		updateTpsLabel();
-		spt = 1;
-		sptSlider = new JSlider(0, 15, 0);
-		sptLabel = new JLabel();
-		updateSptLabel();
+		speedBox = new JComboBox<>();
+		for (long speed : SPEEDS) {
+			speedBox.addItem(speed == SpeedGovernor.UNLIMITED ? "Unlimited" : SpeedGovernor.format(speed));
+			if (speed == computerWindow.runner.governor().targetIps()) {
+				speedBox.setSelectedIndex(speedBox.getItemCount() - 1);
+			}
+		}
+		speedBox.setMaximumSize(speedBox.getPreferredSize());
+		speedLabel = new JLabel();
 		resetButton = new JButton("Reset");
 		clearMemoryButton = new JButton("Clear memory");
+		// A read-only memory image cannot be cleared
+		clearMemoryButton.setEnabled(!computerWindow.computer.memory().isReadOnly());
 		resetInterruptButton = new JButton("Not interrupted");
 		
 		toolBar.add(stepButton);
 		toolBar.add(runButton);
 		toolBar.add(stopButton);
 		toolBar.addSeparator();
-		toolBar.add(tpsSlider);
-		toolBar.add(tpsLabel);
+		toolBar.add(new JLabel("Speed: "));
+		toolBar.add(speedBox);
 		toolBar.addSeparator();
-		toolBar.add(sptSlider);
-		toolBar.add(sptLabel);
+		toolBar.add(speedLabel);
 		toolBar.addSeparator();
 		toolBar.add(resetButton);
 		toolBar.add(clearMemoryButton);
 		toolBar.add(resetInterruptButton);
 		
-		stepButton.addActionListener(e -> {
-			computerWindow.computer.step();
-			computerWindow.update();
-		});
+		stepButton.addActionListener(e -> computerWindow.runner.submit(computerWindow.computer::step));
 		
-		runButton.addActionListener(e -> running = true);
+		runButton.addActionListener(e -> computerWindow.runner.setRunning(true));
 		
-		stopButton.addActionListener(e -> running = false);
+		stopButton.addActionListener(e -> computerWindow.runner.setRunning(false));
 		
-		tpsSlider.addChangeListener(e -> {
-			tps = switch (tpsSlider.getValue() % 3) {
-				case 0 -> 1;
-				case 1 -> 2;
-				case 2 -> 5;
-				default -> throw new IllegalStateException();
-			} * (int) Math.pow(10, (int) (tpsSlider.getValue() / 3.));
-			updateTpsLabel();
-		});
+		speedBox.addActionListener(
+			e -> computerWindow.runner.setTargetIps(SPEEDS[speedBox.getSelectedIndex()]));
 		
-		sptSlider.addChangeListener(e -> {
-			spt = switch (sptSlider.getValue() % 3) {
-				case 0 -> 1;
-				case 1 -> 2;
-				case 2 -> 5;
-				default -> throw new IllegalStateException();
-			} * (int) Math.pow(10, (int) (sptSlider.getValue() / 3.));
-			updateSptLabel();
-		});
+		resetButton.addActionListener(
+			e -> computerWindow.runner.submit(computerWindow.computer::initialize));
 		
-		resetButton.addActionListener(e -> {
-			computerWindow.computer.initialize();
-			computerWindow.update();
-		});
-		
-		clearMemoryButton.addActionListener(e -> {
+		clearMemoryButton.addActionListener(e -> computerWindow.runner.submit(() -> {
 			computerWindow.computer.memory().clear();
-			computerWindow.update();
-			computerWindow.instructionsView.reload();
-		});
+			SwingUtilities.invokeLater(computerWindow.instructionsView::reload);
+		}));
 		
-		resetInterruptButton.addActionListener(e -> {
-			computerWindow.computer.resetInterrupt();
-			computerWindow.update();
-		});
+		resetInterruptButton.addActionListener(
+			e -> computerWindow.runner.submit(computerWindow.computer::resetInterrupt));
 	}
 	
 	public void update() {
-		if (computerWindow.computer.interrupted()) {
-			resetInterruptButton.setText("Interrupted: " + computerWindow.computer.interruptCode());
+		runButton.setEnabled(!computerWindow.state.running());
+		stopButton.setEnabled(computerWindow.state.running());
+		if (computerWindow.state.interrupted()) {
+			resetInterruptButton.setText("Interrupted: " + computerWindow.state.interruptCode());
 		}
 		else {
 			resetInterruptButton.setText("Not interrupted");
 		}
-	}
-	
-	public void updateTpsLabel() {
-		tpsLabel.setText(tps + " ticks/s");
-		if (tps == 1)
-			tpsLabel.setText("1 tick/s");
-	}
-	
-	public void updateSptLabel() {
-		sptLabel.setText(spt + " steps/tick");
-		if (spt == 1)
-			sptLabel.setText("1 step/tick");
+		speedLabel.setText(SpeedGovernor.format(computerWindow.runner.governor().measuredIps()));
 	}
 	
 }
@@ -1,13 +1,38 @@
 package com.unleqitq.computersimulator.window;
 
 import com.unleqitq.computersimulator.ComputerWindow;
+import com.unleqitq.computersimulator.SpeedGovernor;
+import com.unleqitq.computersimulator.components.CacheSimulator;
+import com.unleqitq.computersimulator.instruction.DisassemblyCache;
+import com.unleqitq.computersimulator.utils.LatencyHistogram;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 
+/**
+ * Shows the step count and how fast the simulation and the UI run.
+ * <p>
+ * The performance values are sampled every {@link #SAMPLE_INTERVAL} from counters kept by the
+ * simulation thread and the window, each sample shows the interval since the previous one.
+ * The load is the share of the interval the simulation thread spent in batches and the EDT spent
+ * refreshing the views, whichever is near 100 % is the bottleneck.
+ * The startup line shows the time from the start of the JVM to the start of the main method,
+ * to the window showing the program and to the first executed step.
+ * The cache line shows the hit rates of the modelled caches since the program was initialized.
+ * </p>
+ */
 public final class InfoView {
 	
+	/**
+	 * The interval between two samples of the performance values in nanoseconds
+	 */
+	public static final long SAMPLE_INTERVAL = 500_000_000L;
+	
 	@NotNull
 	public final ComputerWindow computerWindow;
 	
@@ -26,6 +51,58 @@ public final class InfoView {
 	@NotNull
 	public final JLabel stepCountLabel;
 	
+	@NotNull
+	public final JLabel speedLabel;
+	@NotNull
+	public final JLabel batchLabel;
+	@NotNull
+	public final JLabel frameLabel;
+	@NotNull
+	public final JLabel loadLabel;
+	@NotNull
+	public final JLabel allocationLabel;
+	@NotNull
+	public final JLabel gcLabel;
+	@NotNull
+	public final JLabel cacheLabel;
+	@NotNull
+	public final JLabel memoryCacheLabel;
+	@NotNull
+	public final JLabel startupLabel;
+	
+	/**
+	 * Only the HotSpot implementation can count allocated bytes
+	 */
+	@Nullable
+	private final com.sun.management.ThreadMXBean threadBean;
+	
+	/**
+	 * The time from the start of the JVM to the start of the main method in milliseconds
+	 */
+	private final long jvmStartMillis;
+	
+	// The histogram counts at the previous sample and of the last interval
+	@NotNull
+	private final long[] currentCounts = new long[LatencyHistogram.BUCKETS];
+	@NotNull
+	private final long[] batchCounts = new long[LatencyHistogram.BUCKETS];
+	@NotNull
+	private final long[] batchInterval = new long[LatencyHistogram.BUCKETS];
+	@NotNull
+	private final long[] frameCounts = new long[LatencyHistogram.BUCKETS];
+	@NotNull
+	private final long[] frameInterval = new long[LatencyHistogram.BUCKETS];
+	
+	// The values of the previous sample
+	private long sampleTime;
+	private long sampleStepCount;
+	private long sampleBatchNanos;
+	private long sampleFrameNanos;
+	private long sampleAllocated;
+	private long sampleSimulationAllocated;
+	private long sampleGcTime;
+	private long sampleCacheHits;
+	private long sampleCacheMisses;
 	
 	public InfoView(@NotNull ComputerWindow computerWindow) {
 		this.computerWindow = computerWindow;
@@ -36,7 +113,7 @@ public final class InfoView {
 		internalFrame.setIconifiable(true);
 		internalFrame.setMaximizable(true);
 		internalFrame.setClosable(true);
-		internalFrame.setSize(300, 150);
+		internalFrame.setSize(380, 300);
 		internalFrame.setLocation(700, 700);
 		internalFrame.show();
 		
@@ -53,10 +130,176 @@ public final class InfoView {
 		
 		stepCountLabel = new JLabel("Step Count: " + computerWindow.computer.stepCount());
 		panel.add(stepCountLabel);
+		
+		speedLabel = new JLabel();
+		batchLabel = new JLabel();
+		frameLabel = new JLabel();
+		loadLabel = new JLabel();
+		allocationLabel = new JLabel();
+		gcLabel = new JLabel();
+		cacheLabel = new JLabel();
+		memoryCacheLabel = new JLabel();
+		startupLabel = new JLabel();
+		Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+		for (JLabel label : new JLabel[] {
+			speedLabel, batchLabel, frameLabel, loadLabel, allocationLabel, gcLabel, cacheLabel,
+			memoryCacheLabel, startupLabel
+		}) {
+			label.setFont(font);
+			panel.add(label);
+		}
+		
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		threadBean = bean instanceof com.sun.management.ThreadMXBean sunBean &&
+			sunBean.isThreadAllocatedMemorySupported() ? sunBean : null;
+		if (threadBean != null) {
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		jvmStartMillis =
+			ComputerWindow.LAUNCH_MILLIS - ManagementFactory.getRuntimeMXBean().getStartTime();
+		sample(System.nanoTime(), false);
 	}
 	
 	public void update() {
-		stepCountLabel.setText("Step Count: " + computerWindow.computer.stepCount());
+		stepCountLabel.setText("Step Count: " + computerWindow.state.stepCount());
+		long now = System.nanoTime();
+		if (now - sampleTime >= SAMPLE_INTERVAL) {
+			sample(now, true);
+		}
+	}
+	
+	/**
+	 * Reads the counters and shows the values since the previous sample
+	 *
+	 * @param show Whether to show the values (false to only take the first sample)
+	 */
+	private void sample(long now, boolean show) {
+		double seconds = (now - sampleTime) / 1e9;
+		
+		long stepCount = computerWindow.state.stepCount();
+		long batchNanos = computerWindow.runner.batchLatency().copy(currentCounts);
+		interval(currentCounts, batchCounts, batchInterval);
+		long frameNanos = computerWindow.frameTimes.copy(currentCounts);
+		interval(currentCounts, frameCounts, frameInterval);
+		
+		long allocated = -1;
+		long simulationAllocated = -1;
+		if (threadBean != null) {
+			allocated = threadBean.getTotalThreadAllocatedBytes();
+			// -1 before the simulation thread started
+			simulationAllocated =
+				Math.max(0, threadBean.getThreadAllocatedBytes(computerWindow.runner.threadId()));
+		}
+		long gcTime = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTime += Math.max(0, gc.getCollectionTime());
+		}
+		DisassemblyCache cache = computerWindow.instructionsView.cache;
+		long cacheHits = cache.hits();
+		long cacheMisses = cache.misses();
+		
+		if (show) {
+			// The step count may have been reset
+			long steps = Math.max(0, stepCount - sampleStepCount);
+			speedLabel.setText("Speed:  %s (target %s)".formatted(SpeedGovernor.format(steps / seconds),
+				formatTarget(computerWindow.runner.governor().targetIps())));
+			
+			long batches = LatencyHistogram.count(batchInterval);
+			batchLabel.setText("Batch:  avg %s, p99 < %s".formatted(
+				formatNanos(batches == 0 ? 0 : (batchNanos - sampleBatchNanos) / batches),
+				formatNanos(LatencyHistogram.percentile(batchInterval, 0.99))));
+			
+			long frames = LatencyHistogram.count(frameInterval);
+			frameLabel.setText("Frame:  avg %s, p99 < %s".formatted(
+				formatNanos(frames == 0 ? 0 : (frameNanos - sampleFrameNanos) / frames),
+				formatNanos(LatencyHistogram.percentile(frameInterval, 0.99))));
+			
+			double interval = now - sampleTime;
+			loadLabel.setText("Load:   simulation %.0f %%, UI %.0f %%".formatted(
+				100 * (batchNanos - sampleBatchNanos) / interval,
+				100 * (frameNanos - sampleFrameNanos) / interval));
+			
+			if (threadBean != null && allocated >= 0 && sampleAllocated >= 0) {
+				allocationLabel.setText("Alloc:  %.1f MB/s (simulation %.1f MB/s)".formatted(
+					(allocated - sampleAllocated) / seconds / 1e6,
+					(simulationAllocated - sampleSimulationAllocated) / seconds / 1e6));
+			}
+			else {
+				allocationLabel.setText("Alloc:  not supported");
+			}
+			
+			gcLabel.setText("GC:     %d ms/s".formatted(Math.round((gcTime - sampleGcTime) / seconds)));
+			
+			long lookups = (cacheHits - sampleCacheHits) + (cacheMisses - sampleCacheMisses);
+			cacheLabel.setText(lookups == 0 ? "Disasm: no lookups" :
+				"Disasm: %.1f %% hits (%d lookups)".formatted(
+					100.0 * (cacheHits - sampleCacheHits) / lookups, lookups));
+			
+			memoryCacheLabel.setText(formatMemoryCache(computerWindow.computer.cache()));
+			
+			long started = computerWindow.startedNanos;
+			long firstStep = computerWindow.runner.firstStepNanos();
+			startupLabel.setText("Start:  JVM %s, window %s, first step %s".formatted(
+				formatNanos(jvmStartMillis * 1_000_000L),
+				started == 0 ? "-" : formatNanos(started - ComputerWindow.LAUNCH_NANOS),
+				firstStep == 0 ? "-" : formatNanos(firstStep - ComputerWindow.LAUNCH_NANOS)));
+		}
+		
+		sampleTime = now;
+		sampleStepCount = stepCount;
+		sampleBatchNanos = batchNanos;
+		sampleFrameNanos = frameNanos;
+		sampleAllocated = allocated;
+		sampleSimulationAllocated = simulationAllocated;
+		sampleGcTime = gcTime;
+		sampleCacheHits = cacheHits;
+		sampleCacheMisses = cacheMisses;
+	}
+	
+	/**
+	 * Computes the counts of an interval
+	 *
+	 * @param current  The current counts
+	 * @param previous The counts of the previous sample, replaced by the current counts
+	 * @param interval The array to store the counts of the interval in
+	 */
+	private static void interval(@NotNull long[] current, @NotNull long[] previous,
+		@NotNull long[] interval) {
+		for (int i = 0; i < current.length; i++) {
+			interval[i] = current[i] - previous[i];
+			previous[i] = current[i];
+		}
+	}
+	
+	@NotNull
+	private static String formatTarget(long targetIps) {
+		return targetIps == SpeedGovernor.UNLIMITED ? "unlimited" : SpeedGovernor.format(targetIps);
+	}
+	
+	/**
+	 * Formats the hit rates of the modelled caches since the start of the program
+	 */
+	@NotNull
+	private static String formatMemoryCache(@Nullable CacheSimulator cache) {
+		if (cache == null) {
+			return "Cache:  not modelled";
+		}
+		StringBuilder text = new StringBuilder("Cache: ");
+		for (CacheSimulator.Level level : cache.levels()) {
+			text.append(" %s %.1f %% of %d,".formatted(level.config().name(), 100 * level.hitRate(),
+				level.hits() + level.misses()));
+		}
+		return text.append(" memory %d lines".formatted(cache.memoryReads() + cache.memoryWrites()))
+			.toString();
+	}
+	
+	@NotNull
+	private static String formatNanos(long nanos) {
+		if (nanos == Long.MAX_VALUE) return "inf";
+		if (nanos >= 1_000_000_000L) return "%.2f s".formatted(nanos / 1e9);
+		if (nanos >= 1_000_000L) return "%.2f ms".formatted(nanos / 1e6);
+		if (nanos >= 1_000L) return "%.1f us".formatted(nanos / 1e3);
+		return nanos + " ns";
 	}
 	
 	public class SettingsBar {
@@ -75,10 +318,8 @@ public final class InfoView {
 			resetStepCountButton = new JButton("Reset Step Count");
 			toolBar.add(resetStepCountButton);
 			
-			resetStepCountButton.addActionListener(e -> {
-				computerWindow.computer.resetStepCount();
-				update();
-			});
+			resetStepCountButton.addActionListener(
+				e -> computerWindow.runner.submit(computerWindow.computer::resetStepCount));
 		}
 	}
 	
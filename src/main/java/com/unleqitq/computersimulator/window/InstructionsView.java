@@ -3,21 +3,23 @@ package com.unleqitq.computersimulator.window;
 import com.unleqitq.computersimulator.ComputerWindow;
 import com.unleqitq.computersimulator.ValueSize;
 import com.unleqitq.computersimulator.components.Registers;
-import com.unleqitq.computersimulator.instruction.Instruction;
+import com.unleqitq.computersimulator.instruction.DisassemblyCache;
 import com.unleqitq.computersimulator.utils.NumberUtils;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 public final class InstructionsView {
 	
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	
+	private static final Color INSTRUCTION_POINTER_COLOR = new Color(0x007700);
+	
 	@NotNull
 	private final ComputerWindow computerWindow;
 	@NotNull
@@ -26,27 +28,39 @@ public final class InstructionsView {
 	public final JPanel rootPanel;
 	@NotNull
 	public final JScrollPane scrollPane;
+	
+	/**
+	 * Only the visible lines are decoded and rendered
+	 */
 	@NotNull
-	public final JPanel panel;
+	public final JList<String> list;
+	
+	@NotNull
+	public final LineModel model;
+	
 	@NotNull
 	public final SettingsBar settingsBar;
 	
 	@NotNull
-	public final List<InstructionLine> instructionLines;
+	public final DisassemblyCache cache;
 	
 	public long baseInstructionPointer;
 	public long instructionPointer;
 	
-	public int instructionLineCount = 400;
+	/**
+	 * The index of the line at the instruction pointer, -1 if it is not in the list
+	 */
+	private int instructionPointerIndex = -1;
 	
-	private final ReentrantLock lock = new ReentrantLock();
+	public int instructionLineCount = 4096;
 	
 	@SneakyThrows
 	public InstructionsView(@NotNull ComputerWindow computerWindow) {
 		this.computerWindow = computerWindow;
-		baseInstructionPointer =
-			computerWindow.computer.registers().readRegister(Registers.Register.RIP);
-		instructionPointer = computerWindow.computer.registers().readRegister(Registers.Register.RIP);
+		baseInstructionPointer = computerWindow.state.register(Registers.Register.RIP);
+		instructionPointer = baseInstructionPointer;
+		cache = new DisassemblyCache(computerWindow.computer, baseInstructionPointer,
+			computerWindow.state.register(Registers.Register.CS), instructionLineCount);
 		internalFrame = new JInternalFrame("Instructions");
 		internalFrame.setDefaultCloseOperation(JInternalFrame.HIDE_ON_CLOSE);
 		internalFrame.setSize(400, 400);
@@ -63,153 +77,197 @@ public final class InstructionsView {
 		settingsBar = new SettingsBar();
 		rootPanel.add(settingsBar.toolBar, BorderLayout.NORTH);
 		
-		panel = new JPanel();
-		panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+		model = new LineModel();
+		list = new JList<>(model);
+		list.setFont(FONT);
+		list.setBackground(Color.BLACK);
+		list.setForeground(Color.WHITE);
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		// A fixed size keeps the list from decoding every line to measure it
+		FontMetrics metrics = list.getFontMetrics(FONT);
+		list.setFixedCellHeight(metrics.getHeight() + 2);
+		list.setFixedCellWidth(metrics.charWidth('0') * 54);
+		list.setCellRenderer(new LineRenderer());
+		list.setComponentPopupMenu(createPopupMenu());
+		list.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				// Select the line the popup menu is opened on
+				if (SwingUtilities.isRightMouseButton(e)) {
+					int index = list.locationToIndex(e.getPoint());
+					if (index >= 0) {
+						list.setSelectedIndex(index);
+					}
+				}
+			}
+		});
 		
-		scrollPane = new JScrollPane(panel);
+		scrollPane = new JScrollPane(list);
 		scrollPane.getVerticalScrollBar().setUnitIncrement(16);
 		rootPanel.add(scrollPane, BorderLayout.CENTER);
 		
 		internalFrame.setContentPane(rootPanel);
 		
-		instructionLines = new ArrayList<>();
-		
 		reload();
 	}
 	
-	public void reload() {
-		lock.lock();
-		instructionPointer = computerWindow.computer.registers().readRegister(Registers.Register.RIP);
-		instructionLines.clear();
-		panel.removeAll();
-		long address = baseInstructionPointer;
-		for (int i = 0; i < instructionLineCount; i++) {
-			Instruction instruction;
-			try {
-				instruction = computerWindow.computer.getInstruction(address);
-			}
-			catch (Exception e) {
-				instruction = null;
-			}
-			instructionLines.add(new InstructionLine(instruction, address));
-			panel.add(instructionLines.get(i).panel);
-			address += instruction == null ? 1 : instruction.getLength();
-		}
-		panel.repaint();
-		panel.revalidate();
+	@NotNull
+	private JPopupMenu createPopupMenu() {
+		JPopupMenu popupMenu = new JPopupMenu();
+		
+		JMenuItem copyAddressItem = new JMenuItem("Copy address");
+		copyAddressItem.addActionListener(e -> {
+			int index = list.getSelectedIndex();
+			if (index < 0) return;
+			Toolkit.getDefaultToolkit().getSystemClipboard().setContents(
+				new StringSelection(Long.toUnsignedString(cache.getAddress(index), 16)), null);
+		});
+		popupMenu.add(copyAddressItem);
+		
+		JMenuItem copyInstructionItem = new JMenuItem("Copy instruction");
+		copyInstructionItem.addActionListener(e -> {
+			int index = list.getSelectedIndex();
+			if (index < 0) return;
+			Toolkit.getDefaultToolkit().getSystemClipboard()
+				.setContents(new StringSelection(cache.getText(index)), null);
+		});
+		popupMenu.add(copyInstructionItem);
+		
+		JMenuItem openItem = new JMenuItem("Open in memory view");
+		openItem.addActionListener(e -> {
+			int index = list.getSelectedIndex();
+			if (index < 0) return;
+			computerWindow.memoryView.baseAddress = cache.getAddress(index);
+			computerWindow.memoryView.reload();
+			computerWindow.memoryView.internalFrame.show();
+		});
+		popupMenu.add(openItem);
 		
-		// Too many components can cause a delay in the GUI
-		internalFrame.setIconifiable(instructionLineCount <= 100);
-		lock.unlock();
+		return popupMenu;
+	}
+	
+	public void reload() {
+		instructionPointer = computerWindow.state.register(Registers.Register.RIP);
+		cache.reset(baseInstructionPointer, computerWindow.state.register(Registers.Register.CS),
+			instructionLineCount);
+		cache.validate();
+		model.reload();
+		instructionPointerIndex = cache.indexOf(instructionPointer);
 	}
 	
 	public void update() {
-		if (!lock.tryLock()) {
+		long codeSegment = computerWindow.state.register(Registers.Register.CS);
+		if (codeSegment != cache.codeSegment()) {
+			reload();
+		}
+		else {
+			int dropped = cache.validate();
+			if (dropped >= 0 && dropped < model.getSize()) {
+				model.linesChanged(dropped, model.getSize() - 1);
+			}
+		}
+		
+		long newInstructionPointer = computerWindow.state.register(Registers.Register.RIP);
+		if (newInstructionPointer == instructionPointer) {
 			return;
 		}
-		long newInstructionPointer =
-			computerWindow.computer.registers().readRegister(Registers.Register.RIP);
-		boolean changed = newInstructionPointer != instructionPointer;
-		boolean autoScroll = settingsBar.autoScrollButton.isSelected();
 		instructionPointer = newInstructionPointer;
-		if (changed && autoScroll) {
-			if (instructionPointer < instructionLines.getFirst().address) {
-				scrollPane.getVerticalScrollBar().setValue(scrollPane.getVerticalScrollBar().getMinimum());
-			}
-			else {
-				scrollPane.getVerticalScrollBar().setValue(scrollPane.getVerticalScrollBar().getMaximum());
-				for (int i = 0; i < instructionLineCount; i++) {
-					if (instructionLines.get(i).address >= instructionPointer) {
-						scrollPane.getVerticalScrollBar()
-							.setValue(scrollPane.getVerticalScrollBar().getMinimum() + Math.max(0,
-								i - scrollPane.getHeight() / instructionLines.get(i).panel.getHeight() / 2) *
-								(scrollPane.getVerticalScrollBar().getMaximum() -
-									scrollPane.getVerticalScrollBar().getMinimum()) / instructionLineCount);
-						break;
-					}
-				}
+		int oldIndex = instructionPointerIndex;
+		boolean autoScroll = settingsBar.autoScrollButton.isSelected();
+		int index = cache.indexOf(instructionPointer);
+		if (index < 0 && autoScroll) {
+			// Follow the instruction pointer out of the list by starting the sweep at it
+			baseInstructionPointer = instructionPointer;
+			reload();
+			index = instructionPointerIndex;
+		}
+		instructionPointerIndex = index;
+		if (oldIndex >= 0 && oldIndex < model.getSize()) {
+			model.linesChanged(oldIndex, oldIndex);
+		}
+		if (index >= 0) {
+			model.linesChanged(index, index);
+			if (autoScroll) {
+				scrollToCenter(index);
 			}
 		}
-		
-		for (InstructionLine line : instructionLines) {
-			line.update();
+	}
+	
+	/**
+	 * Scrolls so the line is in the middle of the view if it is not visible yet
+	 */
+	private void scrollToCenter(int index) {
+		if (index >= list.getFirstVisibleIndex() && index <= list.getLastVisibleIndex()) {
+			return;
 		}
-		
-		lock.unlock();
+		Rectangle bounds = list.getCellBounds(index, index);
+		if (bounds == null) {
+			return;
+		}
+		int height = scrollPane.getViewport().getExtentSize().height;
+		bounds.y = Math.max(0, bounds.y - (height - bounds.height) / 2);
+		bounds.height = height;
+		list.scrollRectToVisible(bounds);
 	}
 	
-	public final class InstructionLine {
+	/**
+	 * The lines of the disassembly, decoded on demand by the cache
+	 */
+	public final class LineModel extends AbstractListModel<String> {
 		
-		@Nullable
-		public final Instruction instruction;
 		@NotNull
-		public final JPanel panel;
-		@NotNull
-		public final JLabel addressLabel;
-		@NotNull
-		public final JLabel instructionLabel;
+		private final StringBuilder builder = new StringBuilder();
 		
-		public final long address;
+		private int lineCount = 0;
 		
-		public InstructionLine(@Nullable Instruction instruction, long address) {
-			this.instruction = instruction;
-			this.address = address;
-			this.panel = new JPanel();
-			panel.setMaximumSize(new Dimension(Short.MAX_VALUE, 20));
-			this.addressLabel = new JLabel();
-			this.instructionLabel = new JLabel();
-			Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
-			addressLabel.setFont(font);
-			addressLabel.setForeground(Color.WHITE);
-			instructionLabel.setFont(font);
-			instructionLabel.setForeground(Color.WHITE);
-			
-			panel.setLayout(new BoxLayout(panel, BoxLayout.X_AXIS));
-			panel.add(addressLabel);
-			panel.add(Box.createHorizontalStrut(10));
-			panel.add(instructionLabel);
-			addressLabel.setText(String.format("%10s", Long.toUnsignedString(address, 16).toUpperCase()));
-			instructionLabel.setText(
-				String.format("%-40s", instruction == null ? "NOP" : instruction.toAssembly()));
-			
-			{
-				JPopupMenu popupMenu = new JPopupMenu();
-				
-				JMenuItem copyAddressItem = new JMenuItem("Copy address");
-				copyAddressItem.addActionListener(e -> {
-					Toolkit.getDefaultToolkit().getSystemClipboard()
-						.setContents(new StringSelection(Long.toUnsignedString(address, 16)), null);
-				});
-				popupMenu.add(copyAddressItem);
-				
-				JMenuItem copyInstructionItem = new JMenuItem("Copy instruction");
-				copyInstructionItem.addActionListener(e -> {
-					Toolkit.getDefaultToolkit().getSystemClipboard().setContents(
-						new StringSelection(instruction == null ? "NOP" : instruction.toAssembly()), null);
-				});
-				popupMenu.add(copyInstructionItem);
-				
-				JMenuItem openItem = new JMenuItem("Open in memory view");
-				openItem.addActionListener(e -> {
-					computerWindow.memoryView.baseAddress = address;
-					computerWindow.memoryView.reload();
-					computerWindow.memoryView.internalFrame.show();
-				});
-				popupMenu.add(openItem);
-				
-				panel.setComponentPopupMenu(popupMenu);
+		@Override
+		public int getSize() {
+			return lineCount;
+		}
+		
+		@Override
+		public String getElementAt(int index) {
+			long address = cache.getAddress(index);
+			builder.setLength(0);
+			String addr = Long.toUnsignedString(address, 16).toUpperCase();
+			for (int i = addr.length(); i < 10; i++) {
+				builder.append(' ');
 			}
-			
-			update();
+			builder.append(addr).append("  ").append(cache.getText(index));
+			return builder.toString();
 		}
 		
-		public void update() {
-			if (instructionPointer == address) {
-				panel.setBackground(new Color(0x007700));
+		public void reload() {
+			int oldCount = lineCount;
+			lineCount = instructionLineCount;
+			if (oldCount > lineCount) {
+				fireIntervalRemoved(this, lineCount, oldCount - 1);
 			}
-			else {
-				panel.setBackground(Color.BLACK);
+			else if (oldCount < lineCount) {
+				fireIntervalAdded(this, oldCount, lineCount - 1);
+			}
+			if (lineCount > 0) {
+				fireContentsChanged(this, 0, lineCount - 1);
+			}
+		}
+		
+		void linesChanged(int first, int last) {
+			fireContentsChanged(this, first, last);
+		}
+		
+	}
+	
+	private final class LineRenderer extends DefaultListCellRenderer {
+		
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+			boolean isSelected, boolean cellHasFocus) {
+			super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+			if (index == instructionPointerIndex) {
+				setBackground(INSTRUCTION_POINTER_COLOR);
+				setForeground(Color.WHITE);
 			}
+			return this;
 		}
 		
 	}
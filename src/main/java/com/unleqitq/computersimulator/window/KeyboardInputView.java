@@ -1,31 +1,25 @@
 package com.unleqitq.computersimulator.window;
 
 import com.unleqitq.computersimulator.ComputerWindow;
-import com.unleqitq.computersimulator.components.DeviceAccessor;
-import lombok.Getter;
+import com.unleqitq.computersimulator.devices.KeyboardDevice;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.Arrays;
-import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
- * When this view is focused, the keyboard input is recorded and sent to the computer.
+ * When this view is focused, the keyboard input is sent to the {@link KeyboardDevice} of the
+ * computer.
  */
-public final class KeyboardInputView extends DeviceAccessor.AbstractDevice implements KeyListener {
-	
-	public static final long DEFAULT_PORT = 0x8000L;
+public final class KeyboardInputView implements KeyListener {
 	
 	@NotNull
 	private final ComputerWindow computerWindow;
 	@NotNull
+	private final KeyboardDevice keyboard;
+	@NotNull
 	public final JInternalFrame internalFrame;
 	
 	@NotNull
@@ -55,13 +49,16 @@ public final class KeyboardInputView extends DeviceAccessor.AbstractDevice imple
 	@NotNull
 	public final JLabel actionLabel;
 	
+	/**
+	 * Buffer for the events shown in the view
+	 */
 	@NotNull
-	public final ConcurrentLinkedQueue<KeyboardInput> inputBuffer;
+	private final long[] displayed;
 	
 	public KeyboardInputView(@NotNull ComputerWindow computerWindow) {
-		super("Keyboard");
 		this.computerWindow = computerWindow;
-		inputBuffer = new ConcurrentLinkedQueue<>();
+		this.keyboard = computerWindow.computer.keyboard();
+		displayed = new long[keyboard.getInputBuffer().capacity()];
 		
 		internalFrame = new JInternalFrame("Keyboard input");
 		internalFrame.setDefaultCloseOperation(JInternalFrame.HIDE_ON_CLOSE);
@@ -83,21 +80,31 @@ public final class KeyboardInputView extends DeviceAccessor.AbstractDevice imple
 		toolBar.add(clearButton);
 		toolBar.add(infoButton);
 		clearButton.addActionListener(e -> {
-			inputBuffer.clear();
+			keyboard.getInputBuffer().clear();
 			update();
 		});
 		infoButton.addActionListener(e -> {
 			String message = """
 				Default Port: 0x%X,
 				Bound Port: %s,
+				Capacity: %d (%s, %d dropped),
 				Input actions:
 				- Get: 0x%X
 				- Size: 0x%X
+				- Read batch: 0x%X
 				Output actions:
 				- Clear: 0x%X
-				""".formatted(DEFAULT_PORT, isBound() ? "0x%X".formatted(getBoundPort()) : "None",
-				InputAction.GET.getAddress(), InputAction.SIZE.getAddress(),
-				OutputAction.CLEAR.getAddress());
+				- Set batch address: 0x%X
+				- Set batch capacity: 0x%X
+				""".formatted(KeyboardDevice.DEFAULT_PORT,
+				keyboard.isBound() ? "0x%X".formatted(keyboard.getBoundPort()) : "None",
+				keyboard.getInputBuffer().capacity(), keyboard.getInputBuffer().getOverflowPolicy(),
+				keyboard.getInputBuffer().droppedCount(), KeyboardDevice.InputAction.GET.getAddress(),
+				KeyboardDevice.InputAction.SIZE.getAddress(),
+				KeyboardDevice.InputAction.READ_BATCH.getAddress(),
+				KeyboardDevice.OutputAction.CLEAR.getAddress(),
+				KeyboardDevice.OutputAction.SET_BATCH_ADDRESS.getAddress(),
+				KeyboardDevice.OutputAction.SET_BATCH_CAPACITY.getAddress());
 			JOptionPane.showMessageDialog(computerWindow.frame, message, "Keyboard info",
 				JOptionPane.INFORMATION_MESSAGE);
 		});
@@ -127,18 +134,18 @@ public final class KeyboardInputView extends DeviceAccessor.AbstractDevice imple
 		internalFrame.addKeyListener(this);
 		
 		internalFrame.setFocusable(true);
-		
-		computerWindow.computer.devices().addDevice(DEFAULT_PORT, this);
 	}
 	
 	public void update() {
 		StringBuilder scanCodeText = new StringBuilder("Scan code buffer: ");
 		StringBuilder nameText = new StringBuilder("Name buffer:      ");
 		StringBuilder actionText = new StringBuilder("Action buffer:    ");
-		for (KeyboardInput input : inputBuffer) {
-			String scanCode = Integer.toString(input.scanCode);
-			String name = KeyEvent.getKeyText(input.scanCode);
-			String action = input.pressed ? "DOWN" : "UP";
+		int count = keyboard.getInputBuffer().peek(displayed);
+		for (int i = 0; i < count; i++) {
+			int code = KeyboardDevice.scanCode(displayed[i]);
+			String scanCode = Integer.toString(code);
+			String name = KeyEvent.getKeyText(code);
+			String action = KeyboardDevice.isPressed(displayed[i]) ? "DOWN" : "UP";
 			int pad = Math.max(Math.max(scanCode.length(), name.length()), action.length());
 			scanCodeText.append(String.format("%" + pad + "s", scanCode)).append(" ");
 			nameText.append(String.format("%" + pad + "s", name)).append(" ");
@@ -149,98 +156,19 @@ public final class KeyboardInputView extends DeviceAccessor.AbstractDevice imple
 		actionLabel.setText(actionText.toString());
 	}
 	
-	@Override
-	public long read(long address) {
-		InputAction action = InputAction.of(address);
-		if (action == null) {
-			return 0;
-		}
-		return switch (action) {
-			case GET -> {
-				KeyboardInput input = inputBuffer.poll();
-				if (input == null) {
-					yield -1;
-				}
-				yield Integer.toUnsignedLong(input.scanCode) | (input.pressed ? 1L << 31 : 0);
-			}
-			case SIZE -> Integer.toUnsignedLong(inputBuffer.size());
-		};
-	}
-	
-	@Override
-	public void write(long address, long data) {
-		OutputAction action = OutputAction.of(address);
-		if (action == null) {
-			return;
-		}
-		//noinspection SwitchStatementWithTooFewBranches
-		switch (action) {
-			case CLEAR -> inputBuffer.clear();
-		}
-	}
-	
 	@Override
 	public void keyTyped(@NotNull KeyEvent e) {}
 	
 	@Override
 	public void keyPressed(@NotNull KeyEvent e) {
-		inputBuffer.add(new KeyboardInput(e.getKeyCode(), true));
+		keyboard.offer(e.getKeyCode(), true);
 		update();
 	}
 	
 	@Override
 	public void keyReleased(@NotNull KeyEvent e) {
-		inputBuffer.add(new KeyboardInput(e.getKeyCode(), false));
+		keyboard.offer(e.getKeyCode(), false);
 		update();
 	}
 	
-	@Getter
-	public enum InputAction {
-		
-		GET(0x10),
-		SIZE(0x11),
-		;
-		
-		public final long address;
-		
-		@NotNull
-		public static final Map<Long, InputAction> map = Arrays.stream(values())
-			.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
-		
-		InputAction(long address) {
-			this.address = address;
-		}
-		
-		@Nullable
-		public static InputAction of(long address) {
-			return map.get(address);
-		}
-		
-	}
-	
-	@Getter
-	public enum OutputAction {
-		
-		CLEAR(0x10),
-		;
-		
-		public final long address;
-		
-		@NotNull
-		public static final Map<Long, OutputAction> map = Arrays.stream(values())
-			.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
-		
-		OutputAction(long address) {
-			this.address = address;
-		}
-		
-		@Nullable
-		public static OutputAction of(long address) {
-			return map.get(address);
-		}
-		
-	}
-	
-	public record KeyboardInput(int scanCode, boolean pressed) {}
-	
 }
@@ -0,0 +1,108 @@
+package com.unleqitq.computersimulator.window;
+
+import com.unleqitq.computersimulator.ComputerWindow;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A view that is hidden at startup and only created when it is shown for the first time.
+ * <p>
+ * Until then it costs nothing, neither at startup nor on the refreshes of the window.
+ * Only used on the EDT.
+ * </p>
+ *
+ * @param <V> The type of the view
+ */
+public final class LazyView<V> {
+	
+	@NotNull
+	private final ComputerWindow computerWindow;
+	
+	@NotNull
+	private final Function<ComputerWindow, V> factory;
+	
+	@NotNull
+	private final Function<V, JInternalFrame> frame;
+	
+	@NotNull
+	private final Consumer<V> updater;
+	
+	@Nullable
+	private V view;
+	
+	/**
+	 * @param computerWindow The window the view is added to
+	 * @param factory        Creates the view
+	 * @param frame          The internal frame of a view
+	 * @param updater        Refreshes a view
+	 */
+	public LazyView(@NotNull ComputerWindow computerWindow,
+		@NotNull Function<ComputerWindow, V> factory, @NotNull Function<V, JInternalFrame> frame,
+		@NotNull Consumer<V> updater) {
+		this.computerWindow = computerWindow;
+		this.factory = factory;
+		this.frame = frame;
+		this.updater = updater;
+	}
+	
+	public boolean isCreated() {
+		return view != null;
+	}
+	
+	/**
+	 * @return the view, created and added to the desktop if it does not exist yet
+	 */
+	@NotNull
+	public V get() {
+		if (view == null) {
+			V view = factory.apply(computerWindow);
+			computerWindow.desktopPane.add(frame.apply(view));
+			updater.accept(view);
+			this.view = view;
+		}
+		return view;
+	}
+	
+	/**
+	 * @return the view, or null if it was not shown yet
+	 */
+	@Nullable
+	public V getIfCreated() {
+		return view;
+	}
+	
+	/**
+	 * Shows the view, creating it if needed
+	 */
+	public void show() {
+		JInternalFrame intf = frame.apply(get());
+		intf.show();
+		intf.toFront();
+	}
+	
+	/**
+	 * Hides the view if it is showing, shows it otherwise
+	 */
+	public void toggle() {
+		if (view != null && frame.apply(view).isShowing()) {
+			frame.apply(view).hide();
+		}
+		else {
+			show();
+		}
+	}
+	
+	/**
+	 * Refreshes the view if it is created and visible
+	 */
+	public void update() {
+		if (view != null && frame.apply(view).isVisible()) {
+			updater.accept(view);
+		}
+	}
+	
+}
@@ -2,22 +2,28 @@ package com.unleqitq.computersimulator.window;
 
 import com.unleqitq.computersimulator.ComputerWindow;
 import com.unleqitq.computersimulator.ValueSize;
+import com.unleqitq.computersimulator.components.Memory;
 import com.unleqitq.computersimulator.utils.NumberUtils;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Arrays;
 
 public final class MemoryView {
 	
 	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
 	
-	public int memoryRowCount = 100;
+	/**
+	 * The number of formatted rows kept in the cache, more than can be visible at once
+	 */
+	private static final int CACHE_SIZE = 1 << 10;
+	
+	/**
+	 * The number of rows shown, 0 to show all rows from the base address to the end of the memory
+	 */
+	public int memoryRowCount = 0;
 	
 	@NotNull
 	private final ComputerWindow computerWindow;
@@ -30,8 +36,14 @@ public final class MemoryView {
 	@NotNull
 	public final JScrollPane scrollPane;
 	
+	/**
+	 * Only the visible rows are rendered
+	 */
+	@NotNull
+	public final JList<String> list;
+	
 	@NotNull
-	public final JPanel panel;
+	public final RowModel model;
 	
 	@NotNull
 	public final JLabel headerLabel;
@@ -41,16 +53,14 @@ public final class MemoryView {
 	@NotNull
 	public final SettingsBar settingsBar;
 	
-	@NotNull
-	public final List<MemoryRow> memoryRows;
-	
-	@NotNull
-	public final ReentrantLock lock;
+	/**
+	 * The memory stamp of the last update, only rows changed after it are redrawn
+	 */
+	private long lastStamp = -1;
 	
 	@SneakyThrows
 	public MemoryView(@NotNull ComputerWindow computerWindow) {
 		this.computerWindow = computerWindow;
-		lock = new ReentrantLock();
 		internalFrame = new JInternalFrame("Memory");
 		internalFrame.setDefaultCloseOperation(JInternalFrame.HIDE_ON_CLOSE);
 		internalFrame.setSize(700, 500);
@@ -70,12 +80,15 @@ public final class MemoryView {
 		settingsBar = new SettingsBar();
 		rootPanel.add(settingsBar.toolBar, BorderLayout.NORTH);
 		
-		memoryRows = new ArrayList<>();
+		model = new RowModel();
+		list = new JList<>(model);
+		list.setFont(FONT);
+		// A fixed cell size keeps the list from measuring every row
+		list.setFixedCellHeight(list.getFontMetrics(FONT).getHeight());
+		list.setPrototypeCellValue("0".repeat(12 + 16 * 11));
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 		
-		panel = new JPanel();
-		panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
-		
-		scrollPane = new JScrollPane(panel);
+		scrollPane = new JScrollPane(list);
 		scrollPane.setColumnHeaderView(headerLabel);
 		scrollPane.getVerticalScrollBar().setUnitIncrement(16);
 		rootPanel.add(scrollPane, BorderLayout.CENTER);
@@ -86,11 +99,6 @@ public final class MemoryView {
 	}
 	
 	public void reload() {
-		lock.lock();
-		panel.removeAll();
-		memoryRows.clear();
-		long address = baseAddress;
-		
 		{
 			StringBuilder sb = new StringBuilder();
 			sb.append("%10s".formatted("Address")).append(" ".repeat(2));
@@ -104,68 +112,143 @@ public final class MemoryView {
 			headerLabel.setText(sb.toString());
 		}
 		
-		for (int i = 0; i < memoryRowCount; i++) {
-			MemoryRow row = new MemoryRow(address);
-			memoryRows.add(row);
-			panel.add(row.label);
-			address += 16;
-		}
-		panel.repaint();
-		panel.revalidate();
-		
-		// Too many components can cause a delay in the GUI
-		internalFrame.setIconifiable(memoryRowCount <= 100);
-		lock.unlock();
+		lastStamp = computerWindow.state.memoryStamp();
+		model.reload();
 	}
 	
+	/**
+	 * Redraws the visible rows whose memory changed since the last update
+	 */
 	public void update() {
-		try {
-			if (!lock.tryLock(100, TimeUnit.MILLISECONDS)) return;
-		}
-		catch (InterruptedException e) {
-			throw new RuntimeException(e);
+		long stamp = computerWindow.state.memoryStamp();
+		if (stamp == lastStamp) {
+			return;
 		}
-		for (MemoryRow row : memoryRows) {
-			row.update();
+		int first = list.getFirstVisibleIndex();
+		int last = list.getLastVisibleIndex();
+		if (first >= 0) {
+			Memory memory = computerWindow.computer.memory();
+			int rangeStart = -1;
+			for (int row = first; row <= last + 1; row++) {
+				boolean changed =
+					row <= last && memory.changedSince(model.rowAddress(row), 16, lastStamp);
+				if (changed && rangeStart < 0) {
+					rangeStart = row;
+				}
+				else if (!changed && rangeStart >= 0) {
+					model.rowsChanged(rangeStart, row - 1);
+					rangeStart = -1;
+				}
+			}
 		}
-		lock.unlock();
+		lastStamp = stamp;
 	}
 	
-	public final class MemoryRow {
+	/**
+	 * The rows of the list, formatted on demand and cached until their memory changes
+	 */
+	public final class RowModel extends AbstractListModel<String> {
+		
+		@NotNull
+		private final String[] cachedText = new String[CACHE_SIZE];
 		
 		@NotNull
-		public final JLabel label;
+		private final long[] cachedRow = new long[CACHE_SIZE];
 		
-		public final long address;
+		/**
+		 * The memory stamp when the row was formatted
+		 */
+		@NotNull
+		private final long[] cachedStamp = new long[CACHE_SIZE];
 		
-		public MemoryRow(long address) {
-			this.address = address;
-			this.label = new JLabel();
-			this.label.setFont(FONT);
-			
-			update();
+		@NotNull
+		private final byte[] rowData = new byte[16];
+		
+		@NotNull
+		private final StringBuilder builder = new StringBuilder();
+		
+		private int rowCount = 0;
+		
+		public long rowAddress(int row) {
+			return baseAddress + row * 16L;
 		}
 		
-		public void update() {
-			StringBuilder sb = new StringBuilder();
-			String addr = Long.toUnsignedString(address >>> 4, 16) + 'x';
-			sb.append("%10s".formatted(addr)).append(" ".repeat(2));
+		@Override
+		public int getSize() {
+			return rowCount;
+		}
+		
+		@Override
+		public String getElementAt(int row) {
+			int slot = row & (CACHE_SIZE - 1);
+			Memory memory = computerWindow.computer.memory();
+			String text = cachedText[slot];
+			if (text != null && cachedRow[slot] == row &&
+				!memory.changedSince(rowAddress(row), 16, cachedStamp[slot])) {
+				return text;
+			}
+			cachedStamp[slot] = memory.getStamp();
+			cachedRow[slot] = row;
+			text = format(rowAddress(row));
+			cachedText[slot] = text;
+			return text;
+		}
+		
+		@NotNull
+		private String format(long address) {
+			ComputerWindow.ValueView valueView = computerWindow.visualSettings.valueView;
+			int width = valueView.maxWidth(ValueSize.BYTE);
+			int available = computerWindow.computer.memory().peek(address, rowData, 0, 16);
 			
+			builder.setLength(0);
+			String addr = Long.toUnsignedString(address >>> 4, 16) + 'x';
+			pad(addr, 10);
+			builder.append(addr).append("  ");
 			for (int i = 0; i < 16; i++) {
-				try {
-					String v = computerWindow.visualSettings.valueView.format(ValueSize.BYTE,
-						computerWindow.computer.memory().readByte(address + i), true);
-					sb.append(
-						"%%%ds".formatted(computerWindow.visualSettings.valueView.maxWidth(ValueSize.BYTE))
-							.formatted(v));
-					if (i < 15) sb.append(' ');
+				if (i < available) {
+					String v = valueView.format(ValueSize.BYTE, rowData[i] & 0xFFL, true);
+					pad(v, width);
+					builder.append(v);
 				}
-				catch (ArrayIndexOutOfBoundsException e) {
-					sb.append("?".repeat(computerWindow.visualSettings.valueView.maxWidth(ValueSize.BYTE)));
-					if (i < 15) sb.append(' ');
+				else {
+					builder.append("?".repeat(width));
 				}
+				if (i < 15) builder.append(' ');
+			}
+			return builder.toString();
+		}
+		
+		private void pad(@NotNull String text, int width) {
+			for (int i = text.length(); i < width; i++) {
+				builder.append(' ');
 			}
-			label.setText(sb.toString());
+		}
+		
+		/**
+		 * Drops the cache and recomputes the number of rows
+		 */
+		public void reload() {
+			Arrays.fill(cachedText, null);
+			long size = computerWindow.computer.memory().getSize();
+			long rows = Math.max(0, (size - baseAddress + 15) / 16);
+			if (memoryRowCount > 0) {
+				rows = Math.min(rows, memoryRowCount);
+			}
+			int oldCount = rowCount;
+			rowCount = (int) Math.min(rows, Integer.MAX_VALUE);
+			if (oldCount > rowCount) {
+				fireIntervalRemoved(this, rowCount, oldCount - 1);
+			}
+			else if (oldCount < rowCount) {
+				fireIntervalAdded(this, oldCount, rowCount - 1);
+			}
+			if (rowCount > 0) {
+				fireContentsChanged(this, 0, rowCount - 1);
+			}
+		}
+		
+		void rowsChanged(int first, int last) {
+			fireContentsChanged(this, first, last);
 		}
 		
 	}
@@ -197,8 +280,8 @@ public final class MemoryView {
 			toolBar = new JToolBar();
 			toolBar.setFloatable(true);
 			
-			rowsLabel = new JLabel("Rows:");
-			rowsField = new JTextField("100");
+			rowsLabel = new JLabel("Rows (0 = all):");
+			rowsField = new JTextField("0");
 			rowsField.setColumns(10);
 			
 			baseAddressLabel = new JLabel("Address:");
@@ -225,7 +308,7 @@ public final class MemoryView {
 				try {
 					long v0 = NumberUtils.parseNumber(baseAddressField.getText());
 					int v1 = Integer.parseInt(rowsField.getText());
-					if (v1 < 2) {
+					if (v1 < 0) {
 						throw new NumberFormatException();
 					}
 					baseAddress = v0;
@@ -269,12 +352,12 @@ public final class MemoryView {
 					ValueSize.BYTE);
 			if (sizeIdx == JOptionPane.CLOSED_OPTION) return;
 			ValueSize size = ValueSize.values()[sizeIdx];
-			long prevValue = switch (size) {
-				case BYTE -> computerWindow.computer.memory().readByte(address);
-				case WORD -> computerWindow.computer.memory().readWord(address);
-				case DWORD -> computerWindow.computer.memory().readDword(address);
-				case QWORD -> computerWindow.computer.memory().readQword(address);
-			};
+			byte[] prevData = new byte[size.getSize()];
+			computerWindow.computer.memory().peek(address, prevData, 0, prevData.length);
+			long prevValue = 0;
+			for (int i = 0; i < prevData.length; i++) {
+				prevValue |= (prevData[i] & 0xFFL) << (i * 8);
+			}
 			String prevValueStr = computerWindow.visualSettings.valueView.format(size, prevValue);
 			String valueStr = JOptionPane.showInputDialog(computerWindow.frame,
 				"Enter new value (current: %s)".formatted(prevValueStr), prevValueStr);
@@ -288,13 +371,14 @@ public final class MemoryView {
 					JOptionPane.ERROR_MESSAGE);
 				return;
 			}
-			switch (size) {
-				case BYTE -> computerWindow.computer.memory().writeByte(address, value);
-				case WORD -> computerWindow.computer.memory().writeWord(address, value);
-				case DWORD -> computerWindow.computer.memory().writeDword(address, value);
-				case QWORD -> computerWindow.computer.memory().writeQword(address, value);
-			}
-			computerWindow.update();
+			computerWindow.runner.submit(() -> {
+				switch (size) {
+					case BYTE -> computerWindow.computer.memory().writeByte(address, value);
+					case WORD -> computerWindow.computer.memory().writeWord(address, value);
+					case DWORD -> computerWindow.computer.memory().writeDword(address, value);
+					case QWORD -> computerWindow.computer.memory().writeQword(address, value);
+				}
+			});
 		}
 		
 	}
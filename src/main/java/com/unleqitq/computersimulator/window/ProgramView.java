@@ -2,6 +2,7 @@ package com.unleqitq.computersimulator.window;
 
 import com.unleqitq.computersimulator.ComputerSimulator;
 import com.unleqitq.computersimulator.ComputerWindow;
+import com.unleqitq.computersimulator.components.Registers;
 import com.unleqitq.computersimulator.instruction.InstructionAssembler;
 import com.unleqitq.computersimulator.utils.NumberUtils;
 import lombok.SneakyThrows;
@@ -92,6 +93,8 @@ public final class ProgramView {
 		loadButton = new JButton("Load");
 		saveButton = new JButton("Save");
 		openButton = new JButton("Open");
+		// A read-only memory image has to contain the program already
+		loadButton.setEnabled(!computerWindow.computer.memory().isReadOnly());
 		changeBaseDirButton = new JButton("Change directory");
 		toolBar.add(loadButton);
 		toolBar.add(saveButton);
@@ -103,7 +106,7 @@ public final class ProgramView {
 					"Load program", JOptionPane.YES_NO_OPTION);
 			long address;
 			if (result1 == JOptionPane.YES_OPTION) {
-				address = computerWindow.computer.getInstructionPointer();
+				address = computerWindow.state.register(Registers.Register.RIP);
 			}
 			else if (result1 == JOptionPane.NO_OPTION) {
 				String result2;
@@ -138,8 +141,10 @@ public final class ProgramView {
 			
 			byte[] program = InstructionAssembler.assemble(code, address, baseDir,
 				ComputerSimulator.DEFAULT_INCLUDE_PATHS);
-			computerWindow.computer.loadProgram(address, program);
-			computerWindow.instructionsView.reload();
+			computerWindow.runner.submit(() -> {
+				computerWindow.computer.loadProgram(address, program);
+				SwingUtilities.invokeLater(computerWindow.instructionsView::reload);
+			});
 		});
 		saveButton.addActionListener(e -> {
 			String code = textArea.getText();
@@ -5,6 +5,7 @@ import com.unleqitq.computersimulator.ValueSize;
 import com.unleqitq.computersimulator.components.Registers;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
@@ -126,6 +127,14 @@ public final class RegistersView {
 		@NotNull
 		public final Color color;
 		
+		/**
+		 * The shown value and format, the field is only overwritten when they change,
+		 * so typing is not interrupted while the computer is stopped
+		 */
+		private long shownValue;
+		@Nullable
+		private ComputerWindow.ValueView shownValueView;
+		
 		public RegisterField(@NotNull String name, @NotNull Registers.Register register) {
 			color = switch (register) {
 				case RAX, RBX, RCX, RDX -> new Color(0x003399);
@@ -176,21 +185,28 @@ public final class RegistersView {
 			panel.add(Box.createRigidArea(new Dimension(0, 5)), gbc);
 			
 			setButton.addActionListener(e -> {
-				if (set()) {
-					update();
-				}
-				else {
+				if (!set()) {
 					JOptionPane.showMessageDialog(computerWindow.frame, "Invalid value", "Error",
 						JOptionPane.ERROR_MESSAGE);
 				}
 			});
 			
-			resetButton.addActionListener(e -> update());
+			resetButton.addActionListener(e -> update(true));
 		}
 		
 		public void update() {
-			field.setText(computerWindow.visualSettings.valueView.format(ValueSize.QWORD,
-				computerWindow.computer.registers().readRegister(register)));
+			update(false);
+		}
+		
+		public void update(boolean force) {
+			long value = computerWindow.state.register(register);
+			ComputerWindow.ValueView valueView = computerWindow.visualSettings.valueView;
+			if (!force && value == shownValue && valueView == shownValueView) {
+				return;
+			}
+			shownValue = value;
+			shownValueView = valueView;
+			field.setText(valueView.format(ValueSize.QWORD, value));
 		}
 		
 		public boolean set() {
@@ -211,7 +227,8 @@ public final class RegistersView {
 			else {
 				value = Long.parseUnsignedLong(text);
 			}
-			computerWindow.computer.registers().writeRegister(register, value);
+			computerWindow.runner.submit(
+				() -> computerWindow.computer.registers().writeRegister(register, value));
 			return true;
 		}
 		
@@ -267,13 +284,14 @@ public final class RegistersView {
 				checkBox = new JCheckBox(name);
 				
 				checkBox.addActionListener(e -> {
-					computerWindow.computer.registers().writeFlag(flag, checkBox.isSelected());
-					computerWindow.update();
+					boolean selected = checkBox.isSelected();
+					computerWindow.runner.submit(
+						() -> computerWindow.computer.registers().writeFlag(flag, selected));
 				});
 			}
 			
 			public void update() {
-				checkBox.setSelected(computerWindow.computer.registers().readFlag(flag));
+				checkBox.setSelected(computerWindow.state.flag(flag));
 			}
 			
 		}
@@ -1,8 +1,7 @@
 package com.unleqitq.computersimulator.window;
 
 import com.unleqitq.computersimulator.ComputerWindow;
-import com.unleqitq.computersimulator.components.DeviceAccessor;
-import lombok.Getter;
+import com.unleqitq.computersimulator.devices.ScreenDevice;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -10,16 +9,22 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.util.Arrays;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.VolatileImage;
+import java.awt.image.WritableRaster;
 
+/**
+ * Shows the pixels of the {@link ScreenDevice} of the simulator.
+ * <p>
+ * The devices write into the pixel array on the simulation thread and mark the changed area.
+ * The image shares that array, the timer of the window scales only the changed area into an
+ * accelerated back buffer and shows it, nothing is drawn while the screen does not change.
+ * </p>
+ */
 public final class ScreenView {
 	
-	public int width = 20;
-	public int height = 20;
-	
 	@NotNull
 	private final ComputerWindow computerWindow;
 	@NotNull
@@ -34,8 +39,23 @@ public final class ScreenView {
 	@NotNull
 	public final Canvas canvas;
 	
+	/**
+	 * The image backed by the pixels of the device, replaced when the device is resized
+	 */
+	@NotNull
+	private BufferedImage image;
+	
 	@NotNull
-	public BufferedImage image;
+	private int[] imagePixels;
+	
+	@NotNull
+	private final Rectangle dirtyBounds = new Rectangle();
+	
+	/**
+	 * The scaled image in video memory, only used on the event dispatch thread
+	 */
+	@Nullable
+	private VolatileImage backBuffer;
 	
 	@NotNull
 	public final ScreenDevice device;
@@ -44,8 +64,9 @@ public final class ScreenView {
 	public ScreenView(@NotNull ComputerWindow computerWindow) {
 		this.computerWindow = computerWindow;
 		
-		device = new ScreenDevice();
-		computerWindow.computer.devices().addDevice(ScreenDevice.DEFAULT_PORT, device);
+		device = computerWindow.computer.screen();
+		imagePixels = device.pixels();
+		image = wrap(imagePixels, device.width(), device.height());
 		
 		internalFrame = new JInternalFrame("Screen");
 		internalFrame.setDefaultCloseOperation(JInternalFrame.HIDE_ON_CLOSE);
@@ -68,34 +89,133 @@ public final class ScreenView {
 		canvas = new Canvas() {
 			@Override
 			public void paint(Graphics g) {
-				super.paint(g);
-				g.drawImage(image, 0, 0, this.getWidth(), this.getHeight(), null);
+				present(g, true);
+			}
+			
+			@Override
+			public void update(Graphics g) {
+				// The whole canvas is drawn, clearing it first would only flicker
+				paint(g);
 			}
 		};
 		
 		panel.add(canvas, BorderLayout.CENTER);
 		
-		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		
 		internalFrame.setContentPane(panel);
 	}
 	
-	public void resize(int width, int height) {
-		this.width = width;
-		this.height = height;
-		BufferedImage oldImage = image;
-		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		Graphics g = image.createGraphics();
-		g.drawImage(oldImage, 0, 0, null);
-		g.dispose();
-		oldImage.flush();
+	/**
+	 * Creates an image drawing directly from the pixels
+	 */
+	@NotNull
+	private static BufferedImage wrap(@NotNull int[] pixels, int width, int height) {
+		DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+		WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length),
+			width, height, width, colorModel.getMasks(), null);
+		return new BufferedImage(colorModel, raster, false, null);
+	}
+	
+	/**
+	 * @return the image of the current pixels of the device
+	 */
+	@NotNull
+	private BufferedImage currentImage() {
+		// The size first, the device replaces the pixels before the size
+		int width = device.width();
+		int height = device.height();
+		int[] pixels = device.pixels();
+		if (pixels != imagePixels && pixels.length == width * height) {
+			imagePixels = pixels;
+			image = wrap(pixels, width, height);
+		}
+		return image;
 	}
 	
+	/**
+	 * Shows the changed area, called by the timer of the window
+	 */
 	public void update() {
+		if (!canvas.isShowing()) {
+			return;
+		}
 		Graphics graphics = canvas.getGraphics();
-		if (graphics != null) {
-			graphics.drawImage(image, 0, 0, canvas.getWidth(), canvas.getHeight(), null);
+		if (graphics == null) {
+			return;
+		}
+		try {
+			present(graphics, false);
 		}
+		finally {
+			graphics.dispose();
+		}
+	}
+	
+	/**
+	 * Scales the changed area of the image into the back buffer and draws it to the canvas
+	 *
+	 * @param full Whether to draw everything, e.g. when the canvas was damaged
+	 */
+	private void present(@NotNull Graphics g, boolean full) {
+		int canvasWidth = canvas.getWidth();
+		int canvasHeight = canvas.getHeight();
+		if (canvasWidth <= 0 || canvasHeight <= 0) {
+			return;
+		}
+		BufferedImage image = currentImage();
+		int imageWidth = image.getWidth();
+		int imageHeight = image.getHeight();
+		boolean changed = device.takeDirty(dirtyBounds);
+		if (changed) {
+			// The device may have been resized after the image was taken
+			SwingUtilities.computeIntersection(0, 0, imageWidth, imageHeight, dirtyBounds);
+			changed = !dirtyBounds.isEmpty();
+		}
+		do {
+			int status;
+			if (backBuffer == null || backBuffer.getWidth() != canvasWidth ||
+				backBuffer.getHeight() != canvasHeight) {
+				status = VolatileImage.IMAGE_INCOMPATIBLE;
+			}
+			else {
+				status = backBuffer.validate(canvas.getGraphicsConfiguration());
+			}
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				if (backBuffer != null) {
+					backBuffer.flush();
+				}
+				backBuffer = canvas.createVolatileImage(canvasWidth, canvasHeight);
+				if (backBuffer == null) {
+					// Not displayable yet
+					device.markAllDirty();
+					return;
+				}
+			}
+			if (status != VolatileImage.IMAGE_OK) {
+				full = true;
+			}
+			if (full) {
+				dirtyBounds.setBounds(0, 0, imageWidth, imageHeight);
+			}
+			else if (!changed) {
+				return;
+			}
+			
+			// The destination of the area, rounded outwards
+			int x0 = (int) ((long) dirtyBounds.x * canvasWidth / imageWidth);
+			int y0 = (int) ((long) dirtyBounds.y * canvasHeight / imageHeight);
+			int x1 = (int) (((long) (dirtyBounds.x + dirtyBounds.width) * canvasWidth + imageWidth - 1) /
+				imageWidth);
+			int y1 = (int) (((long) (dirtyBounds.y + dirtyBounds.height) * canvasHeight + imageHeight -
+				1) / imageHeight);
+			Graphics2D bufferGraphics = backBuffer.createGraphics();
+			bufferGraphics.drawImage(image, x0, y0, x1, y1, dirtyBounds.x, dirtyBounds.y,
+				dirtyBounds.x + dirtyBounds.width, dirtyBounds.y + dirtyBounds.height, null);
+			bufferGraphics.dispose();
+			g.drawImage(backBuffer, x0, y0, x1, y1, x0, y0, x1, y1, null);
+			// Draw everything again if the video memory was lost meanwhile
+			full = true;
+		} while (backBuffer.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
 	}
 	
 	public final class SettingsBar {
@@ -127,9 +247,9 @@ public final class ScreenView {
 			infoButton = new JButton("Info");
 			clearButton = new JButton("Clear");
 			sizeLabel = new JLabel("Size:");
-			widthField = new JTextField(String.valueOf(width), 4);
+			widthField = new JTextField(String.valueOf(device.width()), 4);
 			xLabel = new JLabel("x");
-			heightField = new JTextField(String.valueOf(height), 4);
+			heightField = new JTextField(String.valueOf(device.height()), 4);
 			resizeButton = new JButton("Resize");
 			
 			toolBar.add(infoButton);
@@ -149,19 +269,26 @@ public final class ScreenView {
 					- Width: %d
 					- Height: %d
 					""".formatted(ScreenDevice.DEFAULT_PORT,
-					device.isBound() ? "0x%X".formatted(device.getBoundPort()) : "None", width, height);
+					device.isBound() ? "0x%X".formatted(device.getBoundPort()) : "None", device.width(),
+					device.height());
 				
 				String inputActions = """
 					Input actions:
 					- Get Size: 0x%X
-					""".formatted(ScreenDevice.InputAction.SIZE.getAddress());
+					- Get framebuffer: 0x%X
+					""".formatted(ScreenDevice.InputAction.SIZE.getAddress(),
+					ScreenDevice.InputAction.FRAMEBUFFER.getAddress());
 				
 				String outputActions = """
 					Output actions:
 					- Draw: 0x%X
 					- Clear: 0x%X
+					- Set framebuffer: 0x%X
+					- Present: 0x%X
 					""".formatted(ScreenDevice.OutputAction.DRAW.getAddress(),
-					ScreenDevice.OutputAction.CLEAR.getAddress());
+					ScreenDevice.OutputAction.CLEAR.getAddress(),
+					ScreenDevice.OutputAction.SET_FRAMEBUFFER.getAddress(),
+					ScreenDevice.OutputAction.PRESENT.getAddress());
 				
 				String message = "%s%n%n%s%n%n%s".formatted(info, inputActions, outputActions);
 				JOptionPane.showMessageDialog(null, message, "Screen Info",
@@ -169,11 +296,7 @@ public final class ScreenView {
 			});
 			
 			clearButton.addActionListener(e -> {
-				Graphics g = image.createGraphics();
-				g.setColor(Color.BLACK);
-				g.fillRect(0, 0, width, height);
-				g.dispose();
-				update();
+				computerWindow.runner.submit(device::clear);
 			});
 			
 			resizeButton.addActionListener(e -> {
@@ -185,8 +308,7 @@ public final class ScreenView {
 							JOptionPane.ERROR_MESSAGE);
 						return;
 					}
-					resize(newWidth, newHeight);
-					update();
+					computerWindow.runner.submit(() -> device.resize(newWidth, newHeight));
 				}
 				catch (NumberFormatException ex) {
 					JOptionPane.showMessageDialog(null, "Width and Height must be integers", "Error",
@@ -197,92 +319,4 @@ public final class ScreenView {
 		
 	}
 	
-	public final class ScreenDevice extends DeviceAccessor.AbstractDevice {
-		
-		public static final long DEFAULT_PORT = 0x8020;
-		
-		public ScreenDevice() {
-			super("SCREEN");
-		}
-		
-		@Override
-		public void write(long address, long data) {
-			OutputAction action = OutputAction.of(address);
-			if (action == null) {
-				return;
-			}
-			switch (action) {
-				case DRAW -> {
-					int x = (int) (data & 0xFFFFL);
-					int y = (int) ((data >>> 16) & 0xFFFFL);
-					if (x < image.getWidth() && y < image.getHeight()) {
-						int color = (int) ((data >>> 32) & 0xFFFFFFL);
-						image.setRGB(x, y, color);
-					}
-				}
-				case CLEAR -> {
-					Graphics g = image.createGraphics();
-					g.setColor(Color.BLACK);
-					g.fillRect(0, 0, width, height);
-					g.dispose();
-				}
-			}
-		}
-		
-		@Override
-		public long read(long address) {
-			InputAction action = InputAction.of(address);
-			if (action == null) {
-				return 0;
-			}
-			return switch (action) {
-				case SIZE -> Integer.toUnsignedLong(width) | (Integer.toUnsignedLong(height) << 16);
-			};
-		}
-		
-		@Getter
-		enum OutputAction {
-			DRAW(0x0L),
-			CLEAR(0x1L),
-			;
-			
-			private final long address;
-			
-			@NotNull
-			private final static Map<Long, OutputAction> map = Arrays.stream(values())
-				.collect(Collectors.toMap(OutputAction::getAddress, Function.identity()));
-			
-			OutputAction(long address) {
-				this.address = address;
-			}
-			
-			@Nullable
-			public static OutputAction of(long address) {
-				return map.get(address);
-			}
-		}
-		
-		@Getter
-		public enum InputAction {
-			SIZE(0x0L),
-			;
-			
-			private final long address;
-			
-			@NotNull
-			private final static Map<Long, InputAction> map = Arrays.stream(values())
-				.collect(Collectors.toMap(InputAction::getAddress, Function.identity()));
-			
-			InputAction(long address) {
-				this.address = address;
-			}
-			
-			@Nullable
-			public static InputAction of(long address) {
-				return map.get(address);
-			}
-		}
-		
-	}
-	
 }
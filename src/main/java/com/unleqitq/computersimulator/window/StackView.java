@@ -1,19 +1,36 @@
 package com.unleqitq.computersimulator.window;
 
 import com.unleqitq.computersimulator.ComputerWindow;
+import com.unleqitq.computersimulator.ValueSize;
+import com.unleqitq.computersimulator.components.Registers;
 import com.unleqitq.computersimulator.components.StackWrapper;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Arrays;
 
+/**
+ * Shows the stack from the stack pointer to the end of the memory.
+ * <p>
+ * The view keeps a copy of the stack history and only fetches the entries pushed since the last
+ * update, the rows of the older entries are kept, so deep stacks cost no more than shallow ones.
+ * </p>
+ */
 public final class StackView {
 	
 	private static final int SPACING = 20;
 	
+	/**
+	 * The maximum number of bytes shown as the value of a row
+	 */
+	private static final int MAX_VALUE_BYTES = 32;
+	
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	
 	@NotNull
 	private final ComputerWindow computerWindow;
 	
@@ -26,17 +43,67 @@ public final class StackView {
 	@NotNull
 	public final JScrollPane scrollPane;
 	
+	/**
+	 * Only the visible rows are rendered
+	 */
 	@NotNull
-	public final JPanel panel;
+	public final JList<String> list;
 	
 	@NotNull
-	public final List<StackRow> stackRows;
+	public final RowModel model;
 	
-	private long lastStackPointer = 0;
+	// The copy of the stack history, oldest entry first
+	@NotNull
+	private long[] entryIds = new long[64];
+	@NotNull
+	private long[] entryValues = new long[64];
+	@NotNull
+	private long[] entryAddresses = new long[64];
+	@NotNull
+	private ValueSize[] entrySizes = new ValueSize[64];
+	/**
+	 * The first row created for the entry (the frame data above it or the entry itself)
+	 */
+	@NotNull
+	private int[] entryFirstRow = new int[64];
+	/**
+	 * The lowest address covered by the rows before the entry
+	 */
+	@NotNull
+	private long[] entryBoundary = new long[64];
+	private int entryCount = 0;
+	
+	// The rows from the end of the memory downwards, the stack pointer is not taken into account
+	@NotNull
+	private long[] rowFrom = new long[64];
+	@NotNull
+	private long[] rowTo = new long[64];
+	/**
+	 * The index of the entry of the row, -1 for frame data
+	 */
+	@NotNull
+	private int[] rowEntry = new int[64];
+	private int rowCount = 0;
+	
+	/**
+	 * The lowest address covered by the rows
+	 */
+	private long boundary;
+	
+	private long stackPointer;
+	private long basePointer;
 	private int lastModCount = -1;
+	private long lastMemoryStamp = -1;
+	
+	/**
+	 * Whether new entries are being fetched on the simulation thread
+	 */
+	private boolean reloadPending = false;
 	
 	public StackView(@NotNull ComputerWindow computerWindow) {
 		this.computerWindow = computerWindow;
+		this.boundary = computerWindow.computer.memory().getSize();
+		this.stackPointer = boundary;
 		
 		internalFrame = new JInternalFrame("Stack");
 		internalFrame.setDefaultCloseOperation(JInternalFrame.HIDE_ON_CLOSE);
@@ -52,9 +119,30 @@ public final class StackView {
 		rootPanel.setLayout(new BorderLayout());
 		internalFrame.setContentPane(rootPanel);
 		
-		panel = new JPanel();
-		panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
-		scrollPane = new JScrollPane(panel);
+		model = new RowModel();
+		list = new JList<>(model);
+		list.setFont(FONT);
+		list.setBackground(Color.BLACK);
+		list.setForeground(Color.WHITE);
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		FontMetrics metrics = list.getFontMetrics(FONT);
+		list.setFixedCellHeight(metrics.getHeight() + 2);
+		list.setFixedCellWidth(metrics.charWidth('0') * (50 + MAX_VALUE_BYTES * 3));
+		list.setCellRenderer(new RowRenderer());
+		list.setComponentPopupMenu(createPopupMenu());
+		list.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				// Select the row the popup menu is opened on
+				if (SwingUtilities.isRightMouseButton(e)) {
+					int index = list.locationToIndex(e.getPoint());
+					if (index >= 0) {
+						list.setSelectedIndex(index);
+					}
+				}
+			}
+		});
+		scrollPane = new JScrollPane(list);
 		rootPanel.add(scrollPane, BorderLayout.CENTER);
 		
 		{
@@ -83,170 +171,314 @@ public final class StackView {
 			
 			rootPanel.add(header, BorderLayout.NORTH);
 		}
-		
-		stackRows = new ArrayList<>();
 	}
 	
-	private boolean changed() {
-		int modCount = computerWindow.computer.stack().history().getHistory().getModCount();
-		if (lastStackPointer != computerWindow.computer.stack().getStackPointer()) {
-			lastStackPointer = computerWindow.computer.stack().getStackPointer();
-			lastModCount = modCount;
-			return true;
-		}
-		if (lastModCount != modCount) {
-			lastModCount = modCount;
-			return true;
-		}
-		return false;
+	@NotNull
+	private JPopupMenu createPopupMenu() {
+		JPopupMenu popupMenu = new JPopupMenu();
+		
+		JMenuItem copyAddressItem = new JMenuItem("Copy address");
+		copyAddressItem.addActionListener(e -> {
+			int index = list.getSelectedIndex();
+			if (index < 0) return;
+			Toolkit.getDefaultToolkit().getSystemClipboard().setContents(
+				new StringSelection(String.format("0x%08X", model.fromAddress(index))), null);
+		});
+		popupMenu.add(copyAddressItem);
+		
+		JMenuItem copyValueItem = new JMenuItem("Copy value");
+		copyValueItem.addActionListener(e -> {
+			int index = list.getSelectedIndex();
+			if (index < 0) return;
+			Toolkit.getDefaultToolkit().getSystemClipboard().setContents(
+				new StringSelection(model.formatValue(index)), null);
+		});
+		popupMenu.add(copyValueItem);
+		
+		JMenuItem openItem = new JMenuItem("Open in memory view");
+		openItem.addActionListener(e -> {
+			int index = list.getSelectedIndex();
+			if (index < 0) return;
+			computerWindow.memoryView.baseAddress = model.fromAddress(index);
+			computerWindow.memoryView.reload();
+			computerWindow.memoryView.internalFrame.show();
+		});
+		popupMenu.add(openItem);
+		
+		return popupMenu;
 	}
 	
 	public void update() {
-		if (changed()) {
-			lastStackPointer = computerWindow.computer.stack().getStackPointer();
-			reload();
+		long newStackPointer = computerWindow.state.register(Registers.Register.RSP);
+		long newBasePointer = computerWindow.state.register(Registers.Register.RBP);
+		long memoryStamp = computerWindow.state.memoryStamp();
+		if (!reloadPending && computerWindow.state.stackModCount() != lastModCount) {
+			lastModCount = computerWindow.state.stackModCount();
+			fetch();
 		}
-		else {
-			for (StackRow row : stackRows) {
-				row.update();
-			}
+		else if (newStackPointer != stackPointer) {
+			// Only the frame data on top of the stack changes
+			int oldSize = model.getSize();
+			int stable = model.visibleRows();
+			stackPointer = newStackPointer;
+			stable = Math.min(stable, model.visibleRows());
+			model.rowsChanged(oldSize, stable);
+		}
+		if (newBasePointer != basePointer || memoryStamp != lastMemoryStamp) {
+			basePointer = newBasePointer;
+			lastMemoryStamp = memoryStamp;
+			list.repaint();
 		}
 	}
 	
+	/**
+	 * Drops the copy of the history and fetches it again
+	 */
 	public void reload() {
-		panel.removeAll();
-		stackRows.clear();
-		
-		List<StackWrapper.ResolvedStackEntry> stack = computerWindow.computer.stack().resolveStack();
+		int oldSize = model.getSize();
+		entryCount = 0;
+		rowCount = 0;
+		boundary = computerWindow.computer.memory().getSize();
+		model.rowsChanged(oldSize, 0);
+		fetch();
+	}
+	
+	/**
+	 * Fetches the entries pushed since the last fetch on the simulation thread
+	 * (the history is modified there) and adds them
+	 */
+	private void fetch() {
+		reloadPending = true;
+		long[] ids = entryIds;
+		int count = entryCount;
+		computerWindow.runner.submit(() -> {
+			StackWrapper.StackHistory history = computerWindow.computer.stack().history();
+			int prefix = history.commonPrefix(ids, count);
+			int length = history.getCount() - prefix;
+			Delta delta = new Delta(prefix, new long[length], new long[length], new long[length],
+				new ValueSize[length], computerWindow.computer.stack().getStackPointer());
+			for (int i = 0; i < length; i++) {
+				delta.ids[i] = history.getId(prefix + i);
+				delta.values[i] = history.getValue(prefix + i);
+				delta.addresses[i] = history.getAddress(prefix + i);
+				delta.sizes[i] = history.getSize(prefix + i);
+			}
+			SwingUtilities.invokeLater(() -> {
+				reloadPending = false;
+				apply(delta);
+			});
+		});
+	}
+	
+	private void apply(@NotNull Delta delta) {
+		if (delta.prefix > entryCount) {
+			// The copy was dropped while fetching
+			fetch();
+			return;
+		}
+		int oldSize = model.getSize();
+		int stable = model.visibleRows();
 		
-		for (StackWrapper.ResolvedStackEntry entry : stack) {
-			StackRow row = new StackRow(entry);
-			
-			stackRows.add(row);
-			panel.add(row.rowPanel);
+		if (delta.prefix < entryCount) {
+			rowCount = entryFirstRow[delta.prefix];
+			boundary = entryBoundary[delta.prefix];
+			entryCount = delta.prefix;
 		}
+		stable = Math.min(stable, rowCount);
 		
-		panel.revalidate();
-		panel.repaint();
+		int newCount = entryCount + delta.ids.length;
+		if (newCount > entryIds.length) {
+			int capacity = Math.max(newCount, entryIds.length * 2);
+			entryIds = Arrays.copyOf(entryIds, capacity);
+			entryValues = Arrays.copyOf(entryValues, capacity);
+			entryAddresses = Arrays.copyOf(entryAddresses, capacity);
+			entrySizes = Arrays.copyOf(entrySizes, capacity);
+			entryFirstRow = Arrays.copyOf(entryFirstRow, capacity);
+			entryBoundary = Arrays.copyOf(entryBoundary, capacity);
+		}
+		for (int i = 0; i < delta.ids.length; i++) {
+			int entry = entryCount++;
+			entryIds[entry] = delta.ids[i];
+			entryValues[entry] = delta.values[i];
+			entryAddresses[entry] = delta.addresses[i];
+			entrySizes[entry] = delta.sizes[i];
+			entryFirstRow[entry] = rowCount;
+			entryBoundary[entry] = boundary;
+			long address = delta.addresses[i];
+			long end = address + delta.sizes[i].getSize();
+			if (end > boundary) {
+				// Overlaps an older entry, the bytes are shown as frame data
+				continue;
+			}
+			if (end < boundary) {
+				addRow(end, boundary - 1, -1);
+			}
+			addRow(address, end - 1, entry);
+			boundary = address;
+		}
 		
-		// Too many components can cause a delay in the GUI
-		internalFrame.setIconifiable(stack.size() <= 120);
+		stackPointer = delta.stackPointer;
+		model.rowsChanged(oldSize, Math.min(stable, model.visibleRows()));
+	}
+	
+	private void addRow(long from, long to, int entry) {
+		if (rowCount == rowFrom.length) {
+			int capacity = rowCount * 2;
+			rowFrom = Arrays.copyOf(rowFrom, capacity);
+			rowTo = Arrays.copyOf(rowTo, capacity);
+			rowEntry = Arrays.copyOf(rowEntry, capacity);
+		}
+		rowFrom[rowCount] = from;
+		rowTo[rowCount] = to;
+		rowEntry[rowCount] = entry;
+		rowCount++;
 	}
 	
-	public class StackRow {
+	/**
+	 * The entries pushed since the last fetch
+	 *
+	 * @param prefix The number of entries of the copy that are still on the stack
+	 */
+	private record Delta(
+		int prefix, @NotNull long[] ids, @NotNull long[] values, @NotNull long[] addresses,
+		@NotNull ValueSize[] sizes, long stackPointer
+	) {}
+	
+	/**
+	 * The rows from the stack pointer upwards, the frame data between the stack pointer and the
+	 * first row is shown as an extra row on top
+	 */
+	public final class RowModel extends AbstractListModel<String> {
 		
 		@NotNull
-		private final JPanel rowPanel;
+		private final StringBuilder builder = new StringBuilder();
 		
-		@NotNull
-		private final StackWrapper.ResolvedStackEntry entry;
+		/**
+		 * @return the number of rows (from the end of the memory) at or above the stack pointer
+		 */
+		private int visibleRows() {
+			// The start addresses decrease from row to row
+			int low = 0;
+			int high = rowCount;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (rowFrom[mid] >= stackPointer) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
 		
-		@NotNull
-		private final JLabel addressLabel;
+		private long visibleBoundary(int visible) {
+			return visible == 0 ? computerWindow.computer.memory().getSize() : rowFrom[visible - 1];
+		}
 		
-		@NotNull
-		private final JLabel valueLabel;
+		private boolean hasTopRow(int visible) {
+			return stackPointer < visibleBoundary(visible);
+		}
 		
-		@NotNull
-		private final JLabel sizeLabel;
+		/**
+		 * @return the row index or -1 for the frame data on top
+		 */
+		private int row(int index) {
+			int visible = visibleRows();
+			int top = hasTopRow(visible) ? 1 : 0;
+			return index < top ? -1 : visible - 1 - (index - top);
+		}
 		
-		@NotNull
-		private final JLabel pushedValueLabel;
+		public long fromAddress(int index) {
+			int row = row(index);
+			return row < 0 ? stackPointer : rowFrom[row];
+		}
 		
-		public StackRow(@NotNull StackWrapper.ResolvedStackEntry entry) {
-			this.entry = entry;
-			
-			rowPanel = new JPanel();
-			rowPanel.setLayout(new BoxLayout(rowPanel, BoxLayout.X_AXIS));
-			rowPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 20));
-			
-			addressLabel =
-				new JLabel(String.format("0x%08X - 0x%08X", entry.fromAddress(), entry.toAddress()));
-			valueLabel = new JLabel();
-			StackWrapper.StackHistory.StackEntry matchedEntry = entry.entry();
-			if (matchedEntry != null) {
-				sizeLabel = new JLabel("%9s".formatted(matchedEntry.size()));
-				pushedValueLabel = new JLabel("%12s".formatted(
-					computerWindow.visualSettings.valueView.format(matchedEntry.size(),
-						matchedEntry.value())));
+		public long toAddress(int index) {
+			int row = row(index);
+			return row < 0 ? visibleBoundary(visibleRows()) - 1 : rowTo[row];
+		}
+		
+		@Override
+		public int getSize() {
+			int visible = visibleRows();
+			return visible + (hasTopRow(visible) ? 1 : 0);
+		}
+		
+		@Override
+		public String getElementAt(int index) {
+			int row = row(index);
+			long from = fromAddress(index);
+			long to = toAddress(index);
+			int entry = row < 0 ? -1 : rowEntry[row];
+			String size;
+			String pushedValue;
+			if (entry >= 0) {
+				size = entrySizes[entry].toString();
+				pushedValue = computerWindow.visualSettings.valueView.format(entrySizes[entry],
+					entryValues[entry]);
 			}
 			else {
-				sizeLabel = new JLabel(
-					"%9s".formatted("%d bytes".formatted(entry.toAddress() - entry.fromAddress() + 1)));
-				pushedValueLabel = new JLabel("%12s".formatted("N/A"));
+				size = "%d bytes".formatted(to - from + 1);
+				pushedValue = "N/A";
 			}
-			
-			Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
-			addressLabel.setFont(font);
-			valueLabel.setFont(font);
-			sizeLabel.setFont(font);
-			pushedValueLabel.setFont(font);
-			
-			rowPanel.add(addressLabel);
-			rowPanel.add(Box.createHorizontalStrut(SPACING));
-			rowPanel.add(sizeLabel);
-			rowPanel.add(Box.createHorizontalStrut(SPACING));
-			rowPanel.add(pushedValueLabel);
-			rowPanel.add(Box.createHorizontalStrut(SPACING));
-			rowPanel.add(valueLabel);
-			
-			{
-				JPopupMenu popupMenu = new JPopupMenu();
-				
-				JMenuItem copyAddressItem = new JMenuItem("Copy address");
-				copyAddressItem.addActionListener(e -> {
-					Toolkit.getDefaultToolkit().getSystemClipboard().setContents(
-						new StringSelection(String.format("0x%08X", entry.fromAddress())), null);
-				});
-				popupMenu.add(copyAddressItem);
-				
-				JMenuItem copyValueItem = new JMenuItem("Copy value");
-				copyValueItem.addActionListener(e -> {
-					Toolkit.getDefaultToolkit().getSystemClipboard().setContents(
-						new StringSelection(valueLabel.getText()), null);
-				});
-				popupMenu.add(copyValueItem);
-				
-				JMenuItem openItem = new JMenuItem("Open in memory view");
-				openItem.addActionListener(e -> {
-					computerWindow.memoryView.baseAddress = entry.fromAddress();
-					computerWindow.memoryView.reload();
-					computerWindow.memoryView.internalFrame.show();
-				});
-				popupMenu.add(openItem);
-				
-				rowPanel.setComponentPopupMenu(popupMenu);
+			String spacing = " ".repeat(SPACING / 4);
+			return String.format("0x%08X - 0x%08X", from, to) + spacing + "%9s".formatted(size) +
+				spacing + "%12s".formatted(pushedValue) + spacing + formatValue(index);
+		}
+		
+		@NotNull
+		public String formatValue(int index) {
+			long from = fromAddress(index);
+			long length = toAddress(index) - from + 1;
+			int size = (int) Math.min(length, MAX_VALUE_BYTES);
+			byte[] data = new byte[size];
+			computerWindow.computer.memory().peek(from, data, 0, size);
+			builder.setLength(0);
+			for (int i = 0; i < data.length; i++) {
+				builder.append(String.format("%02X", data[i]));
+				if (i < data.length - 1) builder.append(' ');
 			}
-			
-			update();
+			if (length > size) {
+				builder.append(" ...");
+			}
+			return builder.toString();
 		}
 		
-		public void update() {
-			long bp = computerWindow.computer.stack().getBasePointer();
-			Color fg, bg;
-			if (entry.fromAddress() <= bp && bp <= entry.toAddress()) {
-				bg = Color.LIGHT_GRAY;
-				fg = Color.BLACK;
+		/**
+		 * Notifies the list after the rows changed, the rows at the bottom stay the same
+		 *
+		 * @param oldSize The size before the change
+		 * @param stable  The number of rows (from the end of the memory) that did not change
+		 */
+		void rowsChanged(int oldSize, int stable) {
+			int oldTop = oldSize - stable;
+			int newTop = getSize() - stable;
+			if (newTop > oldTop) {
+				fireIntervalAdded(this, 0, newTop - oldTop - 1);
 			}
-			else {
-				bg = Color.BLACK;
-				fg = Color.WHITE;
+			else if (newTop < oldTop) {
+				fireIntervalRemoved(this, 0, oldTop - newTop - 1);
 			}
-			rowPanel.setBackground(bg);
-			addressLabel.setForeground(fg);
-			valueLabel.setForeground(fg);
-			sizeLabel.setForeground(fg);
-			pushedValueLabel.setForeground(fg);
-			
-			StringBuilder sb = new StringBuilder();
-			int size = (int) (entry.toAddress() - entry.fromAddress() + 1);
-			byte[] data = computerWindow.computer.memory().read(entry.fromAddress(), size);
-			for (int i = 0; i < data.length; i++) {
-				byte b = data[i];
-				sb.append(String.format("%02X", b));
-				if (i < data.length - 1) sb.append(" ");
+			if (Math.min(oldTop, newTop) > 0) {
+				fireContentsChanged(this, 0, newTop - 1);
+			}
+		}
+		
+	}
+	
+	private final class RowRenderer extends DefaultListCellRenderer {
+		
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+			boolean isSelected, boolean cellHasFocus) {
+			super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+			if (!isSelected && model.fromAddress(index) <= basePointer &&
+				basePointer <= model.toAddress(index)) {
+				setBackground(Color.LIGHT_GRAY);
+				setForeground(Color.BLACK);
 			}
-			valueLabel.setText(sb.toString());
+			return this;
 		}
 		
 	}
@@ -0,0 +1,41 @@
+@pragma once;
+
+// Blitter (2D graphics coprocessor)
+// default port: 0x8030
+// address:
+//  out - set ring address: 0x0
+//  out - set ring size: 0x1
+//  out - doorbell (producer index): 0x2
+//  out - reset head: 0x3
+//  in - head: 0x0
+//  in - executed commands: 0x1
+// descriptor (32 bytes):
+//  0x00 byte command (1: fill rect, 2: copy rect, 3: draw line, 4: draw sprite)
+//  0x02 word x, 0x04 word y
+//  0x06 word width, 0x08 word height (end point for lines)
+//  0x0c dword color (transparent color for sprites)
+//  0x10 qword source address, 0x18 dword source stride (in pixels, 0: width)
+
+// Method: blitter_set_ring
+// Param: address (qword), size (dword)
+$blitter_set_ring:
+  out qword 0x8030, qword 0x0, qword [rbp + 0x14];
+  out qword 0x8030, qword 0x1, dword [rbp + 0x10];
+  out qword 0x8030, qword 0x3, byte 0x0;
+  ret 12;
+
+// Method: blitter_doorbell
+// Param: producer index (dword)
+$blitter_doorbell:
+  out qword 0x8030, qword 0x2, dword [rbp + 0x10];
+  ret 4;
+
+// Method: blitter_execute
+// Param: descriptor address (qword)
+// Executes a single descriptor, using it as a ring of size 1
+$blitter_execute:
+  out qword 0x8030, qword 0x0, qword [rbp + 0x10];
+  out qword 0x8030, qword 0x1, byte 0x1;
+  out qword 0x8030, qword 0x3, byte 0x0;
+  out qword 0x8030, qword 0x2, byte 0x1;
+  ret 8;
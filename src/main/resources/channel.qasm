@@ -0,0 +1,38 @@
+@pragma once;
+
+// Channel to other simulators, default port: 0x8060
+// Status (0x2): 1 done, 2 error, 3 queue full, 4 no message
+
+// Method: channel_send
+// Param: address (qword), length (qword), destination node (qword)
+// Returns: status in rax
+$channel_send:
+  out qword 0x8060, qword 0x0, qword [rbp + 0x20];
+  out qword 0x8060, qword 0x1, qword [rbp + 0x18];
+  out qword 0x8060, qword 0x2, qword [rbp + 0x10];
+  // send: 0x10
+  out qword 0x8060, qword 0x10, byte 0x0;
+  in qword 0x8060, qword 0x2, rax;
+  // 3 qwords = 24 bytes
+  ret 24;
+
+// Method: channel_receive
+// Param: address (qword), buffer length (qword)
+// Returns: status in rax, message length in rbx, source node in rcx
+$channel_receive:
+  out qword 0x8060, qword 0x0, qword [rbp + 0x18];
+  out qword 0x8060, qword 0x1, qword [rbp + 0x10];
+  // receive: 0x11
+  out qword 0x8060, qword 0x11, byte 0x0;
+  in qword 0x8060, qword 0x2, rax;
+  in qword 0x8060, qword 0x3, rbx;
+  in qword 0x8060, qword 0x4, rcx;
+  // 2 qwords = 16 bytes
+  ret 16;
+
+// Method: channel_node
+// Param: none
+// Returns: id of this node in rax
+$channel_node:
+  in qword 0x8060, qword 0x0, rax;
+  ret;
@@ -6,55 +6,61 @@ jmp $main;
 /* main */
 
 $main:
-  /* allocate stack memory: duration [dword], start time [qword] */
-  sub rsp, qword 0xc;
+  /* allocate stack memory: duration [dword], start time [qword], framebuffer [20 * 20 dwords] */
+  sub rsp, qword 0x64c;
   /* set duration to 100 */
   mov dword [rsp + 0x8], dword 100;
+  /* the frames are built in the framebuffer and presented at once, one out per frame */
+  mov rax, rsp;
+  add rax, qword 0xc;
+  push rax;
+  call $screen_set_framebuffer;
 
   /* main loop: r8 */
-  /* x loop: r9 */
   /* y loop: r10 */
+  /* x loop: r9 */
+  /* pixel address: r11 */
   mov r8, qword 0;
   $loop_main:
     /* get start time */
     call $get_millis;
     mov qword [rsp], rdx;
 
-    mov r9, qword 0;
-    $loop_x:
-      mov r10, qword 0;
-      $loop_y:
-        /* draw */
-        /*x*/
-        mov rax, r9;
-        push ax;
-        /*y*/
-        mov rax, r10;
-        push ax;
-        /*red*/
-        mov rax, r9;
+    mov r11, rsp;
+    add r11, qword 0xc;
+    mov r10, qword 0;
+    $loop_y:
+      mov r9, qword 0;
+      $loop_x:
+        /* draw: 0xRRGGBB */
+        /*blue*/
+        mov rax, r8;
         mul rax, word 255;
-        div rax, word 19;
-        push al;
+        div rax, word 9;
+        mov rbx, qword 0;
+        mov bl, al;
         /*green*/
         mov rax, r10;
         mul rax, word 255;
         div rax, word 19;
-        push al;
-        /*blue*/
-        mov rax, r8;
+        shl rax, qword 8;
+        or rbx, rax;
+        /*red*/
+        mov rax, r9;
         mul rax, word 255;
-        div rax, word 9;
-        push al;
-        /*draw*/
-        call $screen_draw;
+        div rax, word 19;
+        shl rax, qword 16;
+        or rbx, rax;
+        mov dword [r11], ebx;
+        add r11, qword 4;
         /* end draw */
-        inc r10;
-        cmp r10, qword 20;
-        jl $loop_y;
-      inc r9;
-      cmp r9, qword 20;
-      jl $loop_x;
+        inc r9;
+        cmp r9, qword 20;
+        jl $loop_x;
+      inc r10;
+      cmp r10, qword 20;
+      jl $loop_y;
+    call $screen_present;
     inc r8;
 
     /* sleep duration */
@@ -0,0 +1,44 @@
+@pragma once;
+
+// Console, default port: 0x8040
+// Output is buffered and flushed on a newline, when the buffer is full or on console_flush
+
+// Method: console_write_char
+// Param: character (byte)
+$console_write_char:
+  // write char: 0x0
+  out qword 0x8040, qword 0x0, byte [rbp + 0x10];
+  ret 1;
+
+// Method: console_write
+// Param: address (qword), length (qword)
+$console_write:
+  // set block address: 0x1
+  out qword 0x8040, qword 0x1, qword [rbp + 0x18];
+  // write block: 0x2
+  out qword 0x8040, qword 0x2, qword [rbp + 0x10];
+  ret 16;
+
+// Method: console_print
+// Param: address of a zero terminated string (qword)
+$console_print:
+  pusha;
+  mov rax, qword [rbp + 0x10];
+  mov rbx, rax;
+  $console_print_loop:
+    cmp byte [rbx], byte 0;
+    jz $console_print_end;
+    inc rbx;
+    jmp $console_print_loop;
+  $console_print_end:
+  sub rbx, rax;
+  out qword 0x8040, qword 0x1, rax;
+  out qword 0x8040, qword 0x2, rbx;
+  popa;
+  ret 8;
+
+// Method: console_flush
+// Param: none
+$console_flush:
+  out qword 0x8040, qword 0x3, byte 0x0;
+  ret;
@@ -0,0 +1,45 @@
+@pragma once;
+
+// Disk, default port: 0x8050
+// Sectors are 512 bytes, transfers complete before the out returns,
+// the status (0x2) is 1 on success and 2 on error
+
+// Method: disk_read
+// Param: memory address (qword), first sector (qword), sector count (qword)
+// Returns: status in rax
+$disk_read:
+  out qword 0x8050, qword 0x2, qword [rbp + 0x20];
+  out qword 0x8050, qword 0x0, qword [rbp + 0x18];
+  out qword 0x8050, qword 0x1, qword [rbp + 0x10];
+  // read: 0x10
+  out qword 0x8050, qword 0x10, byte 0x0;
+  in qword 0x8050, qword 0x2, rax;
+  // 3 qwords = 24 bytes
+  ret 24;
+
+// Method: disk_write
+// Param: memory address (qword), first sector (qword), sector count (qword)
+// Returns: status in rax
+$disk_write:
+  out qword 0x8050, qword 0x2, qword [rbp + 0x20];
+  out qword 0x8050, qword 0x0, qword [rbp + 0x18];
+  out qword 0x8050, qword 0x1, qword [rbp + 0x10];
+  // write: 0x11
+  out qword 0x8050, qword 0x11, byte 0x0;
+  in qword 0x8050, qword 0x2, rax;
+  // 3 qwords = 24 bytes
+  ret 24;
+
+// Method: disk_flush
+// Param: none
+// Writes all changes to the image file
+$disk_flush:
+  out qword 0x8050, qword 0x12, byte 0x0;
+  ret;
+
+// Method: disk_sector_count
+// Param: none
+// Returns: number of sectors in rax
+$disk_sector_count:
+  in qword 0x8050, qword 0x1, rax;
+  ret;
@@ -0,0 +1,39 @@
+@pragma once;
+
+// DMA controller, default port: 0x8010
+// Transfers complete before the starting out returns,
+// the status (0x0) is 1 on success and 2 on error
+
+// Method: dma_transfer_to_device
+// Param: memory address (qword), device port (qword), device address (qword), length (qword)
+// Returns: number of transferred bytes in rax
+$dma_transfer_to_device:
+  out qword 0x8010, qword 0x0, qword [rbp + 0x28];
+  out qword 0x8010, qword 0x1, qword [rbp + 0x20];
+  out qword 0x8010, qword 0x2, qword [rbp + 0x18];
+  out qword 0x8010, qword 0x3, qword [rbp + 0x10];
+  // start to device: 0x10
+  out qword 0x8010, qword 0x10, byte 0x0;
+  in qword 0x8010, qword 0x1, rax;
+  // 4 qwords = 32 bytes
+  ret 32;
+
+// Method: dma_transfer_from_device
+// Param: memory address (qword), device port (qword), device address (qword), length (qword)
+// Returns: number of transferred bytes in rax
+$dma_transfer_from_device:
+  out qword 0x8010, qword 0x0, qword [rbp + 0x28];
+  out qword 0x8010, qword 0x1, qword [rbp + 0x20];
+  out qword 0x8010, qword 0x2, qword [rbp + 0x18];
+  out qword 0x8010, qword 0x3, qword [rbp + 0x10];
+  // start from device: 0x11
+  out qword 0x8010, qword 0x11, byte 0x0;
+  in qword 0x8010, qword 0x1, rax;
+  // 4 qwords = 32 bytes
+  ret 32;
+
+// Method: dma_set_interrupt
+// Param: interrupt code (byte), 0 to disable
+$dma_set_interrupt:
+  out qword 0x8010, qword 0x4, byte [rbp + 0x10];
+  ret 1;
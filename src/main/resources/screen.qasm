@@ -47,3 +47,31 @@ $screen_clear:
   // default port: 0x8020, clear address: 0x1
   out qword 0x8020, qword 0x1, byte 0x0;
   ret;
+
+// Method: screen_set_framebuffer
+// Param: address (qword)
+// The framebuffer holds one dword (0xRRGGBB) per pixel, row by row (width * height dwords)
+$screen_set_framebuffer:
+  // send to screen
+  // default port: 0x8020, set framebuffer address: 0x2
+  out qword 0x8020, qword 0x2, qword [rbp + 0x10];
+  ret 8;
+
+// Method: screen_present
+// Param: none
+// Copies the framebuffer to the screen
+$screen_present:
+  // send to screen
+  // default port: 0x8020, present address: 0x3
+  out qword 0x8020, qword 0x3, byte 0x0;
+  ret;
+
+// Method: screen_map_pixels
+// Param: address (qword), -1 to unmap
+// Maps the pixels (one dword 0xRRGGBB per pixel, row by row) into the memory at the address,
+// writes to the region change the screen directly
+$screen_map_pixels:
+  // send to screen
+  // default port: 0x8020, map pixels address: 0x4
+  out qword 0x8020, qword 0x4, qword [rbp + 0x10];
+  ret 8;
@@ -3,62 +3,73 @@ jmp $main;
 @include <screen>;
 @include <time>;
 @include <random>;
+@include <blitter>;
 
 // Method: handle_input
 // Param: address (r15)
 // left: 37, up: 38, right: 39, down: 40
 // keyboard port: 0x8000
 // address:
-//  in - get: 0x10
-//  in - buffer size: 0x11
-//  out - clear: 0x10
+//  in - read batch: 0x12
+//  out - set batch address: 0x11
+//  out - set batch capacity: 0x12
+// The events are read in batches of up to 16 into a buffer on the stack
 $handle_input:
   pusha;
-  in qword 0x8000, qword 0x11, r8;
-  $handle_input_loop:
+  // allocate the batch buffer: 16 qwords
+  sub rsp, qword 0x80;
+  out qword 0x8000, qword 0x11, rsp;
+  out qword 0x8000, qword 0x12, qword 16;
+  $handle_input_batch:
+    in qword 0x8000, qword 0x12, r8;
     cmp r8, byte 0;
     jz $handle_input_end;
-    dec r8;
-    in qword 0x8000, qword 0x10, r10;
-    mov rax, r10;
-    mov rbx, qword 0;
-    not rbx;
-    shl rbx, qword 31;
-    not rbx;
-    and rax, rbx;
-    mov r9, rax;
-    mov rax, r10;
-    shr rax, qword 31;
-    // if 1 then key down
-    test rax, qword 1;
-    jz $handle_input_loop;
-    cmp r9, byte 37;
-    jz $handle_input_left;
-    cmp r9, byte 38;
-    jz $handle_input_up;
-    cmp r9, byte 39;
-    jz $handle_input_right;
-    cmp r9, byte 40;
-    jz $handle_input_down;
-    jmp $handle_input_loop;
-    $handle_input_left:
-    mov al, byte 3;
-    call $set_direction;
-    jmp $handle_input_loop;
-    $handle_input_up:
-    mov al, byte 0;
-    call $set_direction;
-    jmp $handle_input_loop;
-    $handle_input_right:
-    mov al, byte 1;
-    call $set_direction;
-    jmp $handle_input_loop;
-    $handle_input_down:
-    mov al, byte 2;
-    call $set_direction;
-    jmp $handle_input_loop;
+    mov r11, rsp;
+    $handle_input_loop:
+      cmp r8, byte 0;
+      jz $handle_input_batch;
+      dec r8;
+      mov r10, qword [r11];
+      add r11, qword 8;
+      mov rax, r10;
+      mov rbx, qword 0;
+      not rbx;
+      shl rbx, qword 31;
+      not rbx;
+      and rax, rbx;
+      mov r9, rax;
+      mov rax, r10;
+      shr rax, qword 31;
+      // if 1 then key down
+      test rax, qword 1;
+      jz $handle_input_loop;
+      cmp r9, byte 37;
+      jz $handle_input_left;
+      cmp r9, byte 38;
+      jz $handle_input_up;
+      cmp r9, byte 39;
+      jz $handle_input_right;
+      cmp r9, byte 40;
+      jz $handle_input_down;
+      jmp $handle_input_loop;
+      $handle_input_left:
+      mov al, byte 3;
+      call $set_direction;
+      jmp $handle_input_loop;
+      $handle_input_up:
+      mov al, byte 0;
+      call $set_direction;
+      jmp $handle_input_loop;
+      $handle_input_right:
+      mov al, byte 1;
+      call $set_direction;
+      jmp $handle_input_loop;
+      $handle_input_down:
+      mov al, byte 2;
+      call $set_direction;
+      jmp $handle_input_loop;
   $handle_input_end:
-  out qword 0x8000, qword 0x10, byte 0;
+  add rsp, qword 0x80;
   popa;
   ret;
 
@@ -420,34 +431,21 @@ $fill_red:
   pusha;
   // get size
   call $get_size;
-  // loop x
-  mov cl, qword 0;
-  $fill_red_loop_x:
-    cmp cl, al;
-    jae $fill_red_loop_x_end;
-    // loop y
-    mov dl, qword 0;
-    $fill_red_loop_y:
-      cmp dl, ah;
-      jae $fill_red_loop_y_end;
-      // draw
-      mov rbx, qword 0;
-      mov bl, cl;
-      push bx;
-      mov bl, dl;
-      push bx;
-      push byte 0xff;
-      push byte 0x0;
-      push byte 0x0;
-      call $screen_draw;
-      // next y
-      inc dl;
-      jmp $fill_red_loop_y;
-    $fill_red_loop_y_end:
-    // next x
-    inc cl;
-    jmp $fill_red_loop_x;
-  $fill_red_loop_x_end:
+  // fill rect descriptor
+  sub rsp, qword 0x20;
+  mov byte [rsp + 0x0], byte 1;
+  mov word [rsp + 0x2], word 0;
+  mov word [rsp + 0x4], word 0;
+  mov rbx, qword 0;
+  mov bl, al;
+  mov word [rsp + 0x6], bx;
+  mov bl, ah;
+  mov word [rsp + 0x8], bx;
+  mov dword [rsp + 0xc], dword 0xff0000;
+  // draw
+  push rsp;
+  call $blitter_execute;
+  add rsp, qword 0x20;
   popa;
   ret;
 